@@ -79,7 +79,12 @@ public enum WebServiceActionType implements SubEngineActionType {
     /**
      * The ActionType to execute a http DELETE request.
      */
-    DELETE("send a http DELETE request");
+    DELETE("send a http DELETE request"),
+    
+    /**
+     * The ActionType to execute a batch of http requests concurrently.
+     */
+    BATCH("send a batch of http requests");
     
     private String description;
 
@@ -29,6 +29,12 @@ public interface WsConstants {
      */
     public static final String URL = "URL";
     
+    /**
+     * This constant defines the Property-ID for the PropertyList of target URLs a SOAP call is sent
+     * to concurrently.
+     */
+    public static final String URLS = "URLS";
+    
     /**
      * This constant defines the Property-ID for the username.
      */
@@ -39,6 +45,93 @@ public interface WsConstants {
      */
     public static final String PASSWORD = "PASSWORD";
     
+    /**
+     * This constant defines the Property-ID for the compression (NONE, GZIP or DEFLATE) of the
+     * webservice call.
+     */
+    public static final String COMPRESSION = "COMPRESSION";
+    
+    /**
+     * This constant defines the Property-ID for the SOAP client implementation (AXIS or STAX).
+     */
+    public static final String SOAP_TRANSPORT = "SOAP_TRANSPORT";
+    
+    /**
+     * This constant defines the Property-ID for the flag sending attachments as MTOM/XOP package
+     * instead of SOAP with attachments.
+     */
+    public static final String MTOM = "MTOM";
+    
+    /**
+     * This constant defines the Property-ID for the PropertyList of received attachments.
+     */
+    public static final String ATTACHMENTS = "ATTACHMENTS";
+    
+    /**
+     * This constant defines the Property-ID for the maximum number of attempts of a webservice call.
+     */
+    public static final String RETRY_ATTEMPTS = "RETRY_ATTEMPTS";
+    
+    /**
+     * This constant defines the Property-ID for the backoff in milliseconds before the first retry.
+     */
+    public static final String RETRY_BACKOFF = "RETRY_BACKOFF";
+    
+    /**
+     * This constant defines the Property-ID for the connect timeout in milliseconds of a webservice
+     * call.
+     */
+    public static final String CONNECT_TIMEOUT = "CONNECT_TIMEOUT";
+    
+    /**
+     * This constant defines the Property-ID for the read timeout in milliseconds of a webservice
+     * call.
+     */
+    public static final String READ_TIMEOUT = "READ_TIMEOUT";
+    
+    /**
+     * This constant defines the Property-ID for the multiple of the 99th percentile latency of the
+     * endpoint used as adaptive read timeout.
+     */
+    public static final String ADAPTIVE_TIMEOUT = "ADAPTIVE_TIMEOUT";
+    
+    /**
+     * This constant defines the Property-ID for the flag enabling hedged requests.
+     */
+    public static final String HEDGING = "HEDGING";
+    
+    /**
+     * This constant defines the Property-ID for the flag marking a webservice call as idempotent.
+     */
+    public static final String IDEMPOTENT = "IDEMPOTENT";
+    
+    /**
+     * This constant defines the Property-ID for the number of iterations of an action in load mode.
+     */
+    public static final String LOAD_ITERATIONS = "LOAD_ITERATIONS";
+    
+    /**
+     * This constant defines the Property-ID for the duration in milliseconds of an action in load
+     * mode.
+     */
+    public static final String LOAD_DURATION = "LOAD_DURATION";
+    
+    /**
+     * This constant defines the Property-ID for the number of concurrent executions in load mode.
+     */
+    public static final String LOAD_CONCURRENCY = "LOAD_CONCURRENCY";
+    
+    /**
+     * This constant defines the Property-ID for the target rate of executions per second in load
+     * mode.
+     */
+    public static final String LOAD_RATE = "LOAD_RATE";
+    
+    /**
+     * This constant defines the Property-ID for the PropertyList of load statistics.
+     */
+    public static final String LOAD = "LOAD";
+    
     /**
      * This constant defines the default protocol for the webservice call.
      */
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+/**
+ * CacheableResponseHandler
+ * <p>
+ * A {@link WebServiceResponseHandler} whose results may be cached together with the response body.
+ * When the body has not changed, the cached result of a handler with the same cache key is served
+ * without handling the body again.
+ * 
+ * @param <T>
+ *            the type of the handled response
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public interface CacheableResponseHandler<T> extends WebServiceResponseHandler<T> {
+
+    /**
+     * Gets the key identifying the mapping of a response body to a result. Handlers with equal keys
+     * must create equal results for equal bodies.
+     * 
+     * @return the cache key
+     */
+    public String getCacheKey();
+
+    /**
+     * Creates an independent copy of the given result, so that the cached result is not modified by
+     * the caller.
+     * 
+     * @param response
+     *            the result to copy, may be null
+     * @return the copy
+     */
+    public T copy(T response);
+
+}
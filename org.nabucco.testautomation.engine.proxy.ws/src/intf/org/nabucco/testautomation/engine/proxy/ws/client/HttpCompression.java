@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HttpCompression
+ * <p>
+ * The content codings supported for compressed HTTP bodies. Bodies are compressed and
+ * decompressed while streaming.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public enum HttpCompression {
+
+    /**
+     * Bodies are sent uncompressed.
+     */
+    NONE(null),
+
+    /**
+     * Bodies are compressed with gzip.
+     */
+    GZIP("gzip"),
+
+    /**
+     * Bodies are compressed with deflate (zlib format).
+     */
+    DEFLATE("deflate");
+
+    /**
+     * Name of the HTTP header announcing the accepted content codings.
+     */
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    /**
+     * Name of the HTTP header declaring the content coding of a body.
+     */
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+
+    /**
+     * The value of the Accept-Encoding header for all supported content codings.
+     */
+    public static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    private static final String X_GZIP = "x-gzip";
+
+    private static final String IDENTITY = "identity";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private String contentCoding;
+
+    private HttpCompression(String contentCoding) {
+        this.contentCoding = contentCoding;
+    }
+
+    /**
+     * Gets the content coding used in the Content-Encoding header.
+     * 
+     * @return the content coding, or null for {@link #NONE}
+     */
+    public String getContentCoding() {
+        return this.contentCoding;
+    }
+
+    /**
+     * Wraps the given stream, so that all data written is compressed. The returned stream must be
+     * closed to write the trailer of the compressed data.
+     * 
+     * @param out
+     *            the stream to wrap
+     * @return the compressing stream
+     * @throws IOException
+     *             thrown, if the stream cannot be created
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+
+        switch (this) {
+        case GZIP:
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        case DEFLATE:
+            return new DeflaterOutputStream(out);
+        default:
+            return out;
+        }
+    }
+
+    /**
+     * Wraps the given stream, so that all data read is decompressed.
+     * 
+     * @param in
+     *            the stream to wrap
+     * @return the decompressing stream
+     * @throws IOException
+     *             thrown, if the stream cannot be created
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+
+        switch (this) {
+        case GZIP:
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        case DEFLATE:
+            return new InflaterInputStream(in);
+        default:
+            return in;
+        }
+    }
+
+    /**
+     * Gets the compression matching the given name, e.g. GZIP or gzip.
+     * 
+     * @param value
+     *            the name of the compression
+     * @return the compression, or null if the value is unknown
+     */
+    public static HttpCompression getCompression(String value) {
+
+        if (value == null) {
+            return null;
+        }
+
+        String name = value.trim();
+
+        for (HttpCompression compression : values()) {
+            if (compression.name().equalsIgnoreCase(name) || name.equalsIgnoreCase(compression.contentCoding)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the compression of a body declared by the given Content-Encoding header.
+     * 
+     * @param contentEncoding
+     *            the value of the Content-Encoding header, may be null
+     * @return the compression, or null if the content coding is not supported
+     */
+    public static HttpCompression forContentEncoding(String contentEncoding) {
+
+        if (contentEncoding == null) {
+            return NONE;
+        }
+
+        String coding = contentEncoding.trim();
+
+        if (coding.length() == 0 || IDENTITY.equalsIgnoreCase(coding)) {
+            return NONE;
+        }
+        if (X_GZIP.equalsIgnoreCase(coding)) {
+            return GZIP;
+        }
+        for (HttpCompression compression : values()) {
+            if (coding.equalsIgnoreCase(compression.contentCoding)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the preferred supported compression accepted by the given Accept-Encoding header.
+     * gzip is preferred over deflate, codings with a quality of 0 are not accepted.
+     * 
+     * @param acceptEncoding
+     *            the value of the Accept-Encoding header, may be null
+     * @return the selected compression, {@link #NONE} if no supported coding is accepted
+     */
+    public static HttpCompression negotiate(String acceptEncoding) {
+
+        if (acceptEncoding == null) {
+            return NONE;
+        }
+
+        boolean gzip = false;
+        boolean deflate = false;
+
+        for (String entry : acceptEncoding.split(",")) {
+            String[] params = entry.split(";");
+            String coding = params[0].trim();
+
+            if (params.length > 1 && isRejected(params[1])) {
+                continue;
+            }
+
+            if (GZIP.contentCoding.equalsIgnoreCase(coding) || X_GZIP.equalsIgnoreCase(coding)) {
+                gzip = true;
+            } else if (DEFLATE.contentCoding.equalsIgnoreCase(coding)) {
+                deflate = true;
+            }
+        }
+
+        if (gzip) {
+            return GZIP;
+        }
+        return deflate ? DEFLATE : NONE;
+    }
+
+    private static boolean isRejected(String qualityParam) {
+
+        String param = qualityParam.trim();
+
+        if (!param.startsWith("q=")) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(param.substring(2).trim()) <= 0;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * RequestBody
+ * <p>
+ * Writes the body of a webservice request directly into the stream of the connection. Bodies of
+ * known length are sent with a Content-Length, all others chunked.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public interface RequestBody {
+
+    /**
+     * The charset of textual request bodies.
+     */
+    public static final String CHARSET = "UTF-8";
+
+    /**
+     * Gets the length of the body in bytes.
+     * 
+     * @return the content length, or -1 if not known in advance
+     */
+    public long getContentLength();
+
+    /**
+     * Writes the body into the given stream. May be called once per attempt of a call. The stream
+     * is closed by the client.
+     * 
+     * @param out
+     *            the stream of the request
+     * @throws IOException
+     *             thrown, if the body cannot be written
+     * @throws WebServiceException
+     *             thrown, if the body cannot be created
+     */
+    public void writeTo(OutputStream out) throws IOException, WebServiceException;
+
+    /**
+     * Gets a textual representation of the body for the action trace. Only called if tracing is
+     * enabled.
+     * 
+     * @return the body as text
+     * @throws WebServiceException
+     *             thrown, if the body cannot be created
+     */
+    public String toTraceString() throws WebServiceException;
+
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RequestSpec
+ * <p>
+ * Immutable settings of the requests of a {@link WebServiceClient}: header attributes and
+ * elements, credentials, timeouts, compression, caching, retries, attachments and listeners. A spec is created
+ * by its {@link Builder} and bound to a client by {@link WebServiceClient#forRequest(RequestSpec)}.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class RequestSpec {
+
+    /**
+     * The spec without headers, credentials and listeners.
+     */
+    public static final RequestSpec DEFAULT = new Builder().build();
+
+    private final Map<String, String> headerAttributes;
+
+    private final Map<String, String> headerElements;
+
+    private final String username;
+
+    private final String password;
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    private final double adaptiveTimeoutFactor;
+
+    private final HttpCompression compression;
+
+    private final boolean cachingEnabled;
+
+    private final boolean tracingEnabled;
+
+    private final RetryPolicy retryPolicy;
+
+    private final List<SoapAttachment> attachments;
+
+    private final boolean mtomEnabled;
+
+    private final boolean requestReused;
+
+    private final List<WebServiceListener> listeners;
+
+    private RequestSpec(Builder builder) {
+        this.headerAttributes = Collections.unmodifiableMap(new LinkedHashMap<String, String>(
+                builder.headerAttributes));
+        this.headerElements = Collections.unmodifiableMap(new LinkedHashMap<String, String>(builder.headerElements));
+        this.username = builder.username;
+        this.password = builder.password;
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.adaptiveTimeoutFactor = builder.adaptiveTimeoutFactor;
+        this.compression = builder.compression;
+        this.cachingEnabled = builder.cachingEnabled;
+        this.tracingEnabled = builder.tracingEnabled;
+        this.retryPolicy = builder.retryPolicy;
+        this.attachments = Collections.unmodifiableList(new ArrayList<SoapAttachment>(builder.attachments));
+        this.mtomEnabled = builder.mtomEnabled;
+        this.requestReused = builder.requestReused;
+        this.listeners = Collections.unmodifiableList(new ArrayList<WebServiceListener>(builder.listeners));
+    }
+
+    /**
+     * Creates a builder of a new spec.
+     * 
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a builder initialized with the settings of this spec.
+     * 
+     * @return the builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * @return the unmodifiable HTTP header attributes
+     */
+    public Map<String, String> getHeaderAttributes() {
+        return this.headerAttributes;
+    }
+
+    /**
+     * @return the unmodifiable SOAP header elements
+     */
+    public Map<String, String> getHeaderElements() {
+        return this.headerElements;
+    }
+
+    /**
+     * @return the username for basic authentication, or null
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * @return the password for basic authentication, or null
+     */
+    public String getPassword() {
+        return this.password;
+    }
+
+    /**
+     * @return the connect timeout in milliseconds, 0 for the default of the client
+     */
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * @return the read timeout in milliseconds, 0 for the default of the client
+     */
+    public int getReadTimeout() {
+        return this.readTimeout;
+    }
+
+    /**
+     * @return the multiple of the 99th percentile latency of the endpoint used as read timeout, 0
+     *         if the read timeout is not adaptive
+     */
+    public double getAdaptiveTimeoutFactor() {
+        return this.adaptiveTimeoutFactor;
+    }
+
+    /**
+     * @return the compression of the requests, never null
+     */
+    public HttpCompression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * @return true, if responses are cached
+     */
+    public boolean isCachingEnabled() {
+        return this.cachingEnabled;
+    }
+
+    /**
+     * @return true, if request and response messages are traced
+     */
+    public boolean isTracingEnabled() {
+        return this.tracingEnabled;
+    }
+
+    /**
+     * @return the retry policy, never null
+     */
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    /**
+     * @return the unmodifiable binary attachments of SOAP requests
+     */
+    public List<SoapAttachment> getAttachments() {
+        return this.attachments;
+    }
+
+    /**
+     * @return true, if attachments are sent as MTOM/XOP package instead of SOAP with attachments
+     */
+    public boolean isMtomEnabled() {
+        return this.mtomEnabled;
+    }
+
+    /**
+     * @return true, if the same request payload is sent several times, e.g. to several endpoints
+     */
+    public boolean isRequestReused() {
+        return this.requestReused;
+    }
+
+    /**
+     * @return the unmodifiable listeners notified about the requests
+     */
+    public List<WebServiceListener> getListeners() {
+        return this.listeners;
+    }
+
+    /**
+     * Builder of a {@link RequestSpec}. Not thread-safe.
+     */
+    public static final class Builder {
+
+        private final Map<String, String> headerAttributes = new LinkedHashMap<String, String>();
+
+        private final Map<String, String> headerElements = new LinkedHashMap<String, String>();
+
+        private String username;
+
+        private String password;
+
+        private int connectTimeout;
+
+        private int readTimeout;
+
+        private double adaptiveTimeoutFactor;
+
+        private HttpCompression compression = HttpCompression.NONE;
+
+        private boolean cachingEnabled = false;
+
+        private boolean tracingEnabled = true;
+
+        private RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+        private final List<SoapAttachment> attachments = new ArrayList<SoapAttachment>();
+
+        private boolean mtomEnabled = false;
+
+        private boolean requestReused = false;
+
+        private final List<WebServiceListener> listeners = new ArrayList<WebServiceListener>();
+
+        private Builder() {
+        }
+
+        private Builder(RequestSpec spec) {
+            this.headerAttributes.putAll(spec.headerAttributes);
+            this.headerElements.putAll(spec.headerElements);
+            this.username = spec.username;
+            this.password = spec.password;
+            this.connectTimeout = spec.connectTimeout;
+            this.readTimeout = spec.readTimeout;
+            this.adaptiveTimeoutFactor = spec.adaptiveTimeoutFactor;
+            this.compression = spec.compression;
+            this.cachingEnabled = spec.cachingEnabled;
+            this.tracingEnabled = spec.tracingEnabled;
+            this.retryPolicy = spec.retryPolicy;
+            this.attachments.addAll(spec.attachments);
+            this.mtomEnabled = spec.mtomEnabled;
+            this.requestReused = spec.requestReused;
+            this.listeners.addAll(spec.listeners);
+        }
+
+        /**
+         * Adds a HTTP header attribute.
+         */
+        public Builder headerAttribute(String name, String value) {
+            this.headerAttributes.put(name, value);
+            return this;
+        }
+
+        /**
+         * Adds a SOAP header element. A qualified element is named <code>{ns}prefix:local</code>,
+         * nested elements are separated by '/', e.g. <code>{ns}a:ReplyTo/{ns}a:Address</code>.
+         */
+        public Builder headerElement(String name, String value) {
+            this.headerElements.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sets the username for basic authentication.
+         */
+        public Builder username(String username) {
+            this.username = username;
+            return this;
+        }
+
+        /**
+         * Sets the password for basic authentication.
+         */
+        public Builder password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout in milliseconds, 0 for the default of the client.
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = Math.max(0, connectTimeout);
+            return this;
+        }
+
+        /**
+         * Sets the read timeout in milliseconds, 0 for the default of the client.
+         */
+        public Builder readTimeout(int readTimeout) {
+            this.readTimeout = Math.max(0, readTimeout);
+            return this;
+        }
+
+        /**
+         * Sets the multiple of the 99th percentile latency of the endpoint used as read timeout, 0
+         * for a fixed read timeout. The read timeout remains the upper bound.
+         */
+        public Builder adaptiveTimeoutFactor(double adaptiveTimeoutFactor) {
+            this.adaptiveTimeoutFactor = Math.max(0, adaptiveTimeoutFactor);
+            return this;
+        }
+
+        /**
+         * Sets the compression of the requests.
+         */
+        public Builder compression(HttpCompression compression) {
+            this.compression = compression != null ? compression : HttpCompression.NONE;
+            return this;
+        }
+
+        /**
+         * Enables or disables the response cache.
+         */
+        public Builder cachingEnabled(boolean cachingEnabled) {
+            this.cachingEnabled = cachingEnabled;
+            return this;
+        }
+
+        /**
+         * Enables or disables the tracing of request and response messages.
+         */
+        public Builder tracingEnabled(boolean tracingEnabled) {
+            this.tracingEnabled = tracingEnabled;
+            return this;
+        }
+
+        /**
+         * Sets the policy for retrying and hedging requests.
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.NONE;
+            return this;
+        }
+
+        /**
+         * Adds a binary attachment of SOAP requests.
+         */
+        public Builder attachment(SoapAttachment attachment) {
+
+            if (attachment != null) {
+                this.attachments.add(attachment);
+            }
+            return this;
+        }
+
+        /**
+         * Removes all attachments.
+         */
+        public Builder clearAttachments() {
+            this.attachments.clear();
+            return this;
+        }
+
+        /**
+         * Enables or disables sending attachments as MTOM/XOP package.
+         */
+        public Builder mtomEnabled(boolean mtomEnabled) {
+            this.mtomEnabled = mtomEnabled;
+            return this;
+        }
+
+        /**
+         * Declares that the same request payload is sent several times, so the client keeps its
+         * serialized form instead of streaming it per request.
+         */
+        public Builder requestReused(boolean requestReused) {
+            this.requestReused = requestReused;
+            return this;
+        }
+
+        /**
+         * Adds a listener notified about the requests.
+         */
+        public Builder listener(WebServiceListener listener) {
+
+            if (listener != null && !this.listeners.contains(listener)) {
+                this.listeners.add(listener);
+            }
+            return this;
+        }
+
+        /**
+         * Removes a listener.
+         */
+        public Builder removeListener(WebServiceListener listener) {
+            this.listeners.remove(listener);
+            return this;
+        }
+
+        /**
+         * Creates the immutable spec.
+         * 
+         * @return the spec
+         */
+        public RequestSpec build() {
+            return new RequestSpec(this);
+        }
+    }
+
+}
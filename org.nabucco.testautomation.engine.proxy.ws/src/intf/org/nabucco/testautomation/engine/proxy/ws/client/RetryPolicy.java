@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.io.Serializable;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.util.Random;
+
+import org.nabucco.testautomation.engine.proxy.ws.exception.HttpStatusException;
+
+/**
+ * RetryPolicy
+ * <p>
+ * Defines how often and when a failed webservice call is repeated. Calls are retried after an
+ * exponentially growing backoff with full jitter. Failed connects are retried for every request,
+ * server errors (5xx) only for idempotent requests. Optionally, idempotent requests are hedged: a
+ * duplicate request is sent when no response arrived within the 95th percentile latency of the
+ * endpoint, and the first response is taken.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class RetryPolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default backoff in milliseconds before the first retry.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 100;
+
+    /**
+     * The default maximum backoff in milliseconds.
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 5000;
+
+    /**
+     * The policy executing every call exactly once.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, false, false);
+
+    private static final Random random = new Random();
+
+    private final int maxAttempts;
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private final boolean hedging;
+
+    private final boolean idempotent;
+
+    /**
+     * Creates a new policy.
+     * 
+     * @param maxAttempts
+     *            the maximum number of attempts including the first call
+     * @param initialBackoff
+     *            the backoff in milliseconds before the first retry
+     * @param maxBackoff
+     *            the maximum backoff in milliseconds
+     * @param hedging
+     *            true, if idempotent requests should be hedged
+     * @param idempotent
+     *            true, if all requests are idempotent regardless of their method
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, boolean hedging, boolean idempotent) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = Math.max(0, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+        this.hedging = hedging;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * @return the maximum number of attempts including the first call
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * @return the backoff in milliseconds before the first retry
+     */
+    public long getInitialBackoff() {
+        return this.initialBackoff;
+    }
+
+    /**
+     * @return the maximum backoff in milliseconds
+     */
+    public long getMaxBackoff() {
+        return this.maxBackoff;
+    }
+
+    /**
+     * @return true, if idempotent requests are hedged
+     */
+    public boolean isHedging() {
+        return this.hedging;
+    }
+
+    /**
+     * @return true, if all requests are treated as idempotent
+     */
+    public boolean isIdempotent() {
+        return this.idempotent;
+    }
+
+    /**
+     * Gets the backoff before the given retry. The backoff is chosen randomly between 0 and the
+     * exponentially growing upper bound (full jitter).
+     * 
+     * @param retry
+     *            the number of the retry, starting with 1
+     * @return the backoff in milliseconds
+     */
+    public long getBackoff(int retry) {
+
+        long bound = this.initialBackoff;
+
+        for (int i = 1; i < retry && bound < this.maxBackoff; i++) {
+            bound *= 2;
+        }
+        bound = Math.min(bound, this.maxBackoff);
+
+        if (bound <= 0) {
+            return 0;
+        }
+
+        synchronized (random) {
+            return (long) (random.nextDouble() * bound);
+        }
+    }
+
+    /**
+     * Checks whether a call failed with the given error may be retried.
+     * 
+     * @param error
+     *            the error of the failed call
+     * @param idempotentRequest
+     *            true, if the request is idempotent by its method
+     * @return true, if the call may be retried
+     */
+    public boolean isRetryable(Throwable error, boolean idempotentRequest) {
+
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+
+            // The request has not been sent
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+
+            if (cause instanceof HttpStatusException) {
+                return ((HttpStatusException) cause).isServerError() && (idempotentRequest || this.idempotent);
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * SoapAttachment
+ * <p>
+ * Binary part of a SOAP message, sent as SOAP with attachments or MTOM/XOP package. The content is
+ * held in a file and streamed when the message is written, only small contents are kept in
+ * memory. The payload references an attachment by its content id (cid:contentId).
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class SoapAttachment {
+
+    /**
+     * The content type of attachments with unknown content.
+     */
+    public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String contentId;
+
+    private final String contentType;
+
+    private final File file;
+
+    private final byte[] content;
+
+    /**
+     * Creates an attachment streamed from the given file.
+     * 
+     * @param contentId
+     *            the content id without angle brackets
+     * @param contentType
+     *            the MIME type, or null for {@link #DEFAULT_CONTENT_TYPE}
+     * @param file
+     *            the file holding the content
+     */
+    public SoapAttachment(String contentId, String contentType, File file) {
+        this(contentId, contentType, file, null);
+
+        if (file == null) {
+            throw new IllegalArgumentException("File must not be null");
+        }
+    }
+
+    /**
+     * Creates an attachment with the given content.
+     * 
+     * @param contentId
+     *            the content id without angle brackets
+     * @param contentType
+     *            the MIME type, or null for {@link #DEFAULT_CONTENT_TYPE}
+     * @param content
+     *            the content
+     */
+    public SoapAttachment(String contentId, String contentType, byte[] content) {
+        this(contentId, contentType, null, content != null ? content : new byte[0]);
+    }
+
+    private SoapAttachment(String contentId, String contentType, File file, byte[] content) {
+
+        if (contentId == null || contentId.length() == 0) {
+            throw new IllegalArgumentException("Content-ID must not be empty");
+        }
+        this.contentId = contentId;
+        this.contentType = contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+        this.file = file;
+        this.content = content;
+    }
+
+    /**
+     * @return the content id without angle brackets
+     */
+    public String getContentId() {
+        return this.contentId;
+    }
+
+    /**
+     * @return the MIME type of the content
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * @return the file holding the content, or null if the content is held in memory
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return the length of the content in bytes
+     */
+    public long getContentLength() {
+        return this.file != null ? this.file.length() : this.content.length;
+    }
+
+    /**
+     * Opens a stream reading the content.
+     * 
+     * @return the stream, to be closed by the caller
+     * @throws IOException
+     *             thrown, if the file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+
+        if (this.file != null) {
+            return new FileInputStream(this.file);
+        }
+        return new ByteArrayInputStream(this.content);
+    }
+
+    /**
+     * Writes the content to the given stream. The stream is not closed.
+     * 
+     * @param out
+     *            the stream to write to
+     * @throws IOException
+     *             thrown, if the content cannot be read or written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+
+        InputStream in = this.openStream();
+
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int c;
+
+            while ((c = in.read(buf)) != -1) {
+                out.write(buf, 0, c);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cid:" + this.contentId + " (" + this.contentType + ", " + this.getContentLength() + " bytes)";
+    }
+
+}
@@ -18,6 +18,7 @@ package org.nabucco.testautomation.engine.proxy.ws.client;
 
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.xml.soap.SOAPException;
 
@@ -76,6 +77,34 @@ public interface WebServiceClient {
      */
     public String sendMessage(URL url, String method, String message) throws SOAPException, WebServiceException;
     
+    /**
+     * Sends the given message to the given URL. The response body is passed as stream to the given
+     * handler without being buffered as String.
+     * 
+     * @param url the target URL
+     * @param method the webservice method to call
+     * @param message the payload to be send
+     * @param handler the handler consuming the response body
+     * @return the response handled by the given handler
+     * @throws WebServiceException thrown, if an error occurs
+     */
+    public <T> T sendMessage(URL url, String method, String message, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException;
+    
+    /**
+     * Sends the given body to the given URL. The body is streamed into the request without being
+     * buffered, the response body is passed as stream to the given handler.
+     * 
+     * @param url the target URL
+     * @param method the webservice method to call
+     * @param body the body to be send, may be null
+     * @param handler the handler consuming the response body
+     * @return the response handled by the given handler
+     * @throws WebServiceException thrown, if an error occurs
+     */
+    public <T> T sendMessage(URL url, String method, RequestBody body, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException;
+    
     /**
      * Sends the given message to the given URL.
      * 
@@ -118,6 +147,58 @@ public interface WebServiceClient {
      */
     public Document sendMessage(URL url, String method, List<Document> messages) throws SOAPException, WebServiceException;
 
+    /**
+     * Sends the given message to the given URL without blocking the caller. The call is executed by
+     * a pooled thread, the listeners are notified by this thread when the call completes. Errors
+     * are reported by the returned {@link Future} as cause of an
+     * {@link java.util.concurrent.ExecutionException}.
+     * 
+     * @param url the target URL
+     * @param method the webservice method to call
+     * @param message the payload to be send
+     * @return the future response message
+     */
+    public Future<String> sendMessageAsync(URL url, String method, String message);
+
+    /**
+     * Sends the given message to the given URL without blocking the caller.
+     * 
+     * @param url the target URL
+     * @param method the webservice method to call, may be null for SOAP
+     * @param message the payload to be send
+     * @return the future response message
+     * @see #sendMessageAsync(URL, String, String)
+     */
+    public Future<Document> sendMessageAsync(URL url, String method, Document message);
+
+    /**
+     * Sends the given messages to the given URL without blocking the caller.
+     * 
+     * @param url the target URL
+     * @param method the webservice method to call, may be null for SOAP
+     * @param messages the payloads to be send
+     * @return the future response message
+     * @see #sendMessageAsync(URL, String, String)
+     */
+    public Future<Document> sendMessageAsync(URL url, String method, List<Document> messages);
+
+    /**
+     * Creates a client executing its requests with the given spec. The created client shares the
+     * transport with this client. Clients bound to different specs may be called concurrently.
+     * 
+     * @param spec the settings of the requests
+     * @return the client bound to the spec
+     * @throws WebServiceException thrown, if the client cannot be created
+     */
+    public WebServiceClient forRequest(RequestSpec spec) throws WebServiceException;
+    
+    /**
+     * Gets the current settings of the requests of this client.
+     * 
+     * @return the request spec
+     */
+    public RequestSpec getRequestSpec();
+    
     /**
      * Adds a {@link WebServiceListener} to the client.
      * 
@@ -132,6 +213,39 @@ public interface WebServiceClient {
      */
     public void removeWebServiceListener(WebServiceListener listener);
     
+    /**
+     * Enables or disables the tracing of request and response messages. If disabled, the messages
+     * are not passed to the registered {@link WebServiceListener}s. Tracing is enabled by default.
+     * 
+     * @param tracingEnabled true, if the messages should be traced
+     */
+    public void setTracingEnabled(boolean tracingEnabled);
+    
+    /**
+     * Sets the compression of request bodies. If a compression other than
+     * {@link HttpCompression#NONE} is set, compressed responses are requested as well. Compressed
+     * responses are decompressed in any case.
+     * 
+     * @param compression the compression, null for {@link HttpCompression#NONE}
+     */
+    public void setCompression(HttpCompression compression);
+    
+    /**
+     * Enables or disables the response cache. If enabled, responses of GET requests carrying an
+     * ETag or Last-Modified header are cached and revalidated by conditional requests. Caching is
+     * only supported by REST clients and disabled by default.
+     * 
+     * @param cachingEnabled true, if responses should be cached
+     */
+    public void setCachingEnabled(boolean cachingEnabled);
+    
+    /**
+     * Sets the policy for retrying and hedging failed or slow calls.
+     * 
+     * @param retryPolicy the policy, null for {@link RetryPolicy#NONE}
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy);
+    
     /**
      * Sets the username for basic authentication.
      * 
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * WebServiceResponseHandler
+ * <p>
+ * Consumes the body of a webservice response directly from the stream.
+ * 
+ * @param <T>
+ *            the type of the handled response
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public interface WebServiceResponseHandler<T> {
+
+    /**
+     * The charset used, if the response does not declare one.
+     */
+    public static final String DEFAULT_CHARSET = "UTF-8";
+
+    /**
+     * Reads the response body from the given stream. The stream is closed by the client.
+     * 
+     * @param in
+     *            the response body
+     * @param charset
+     *            the charset declared in the Content-Type of the response, or null if not declared
+     * @return the handled response
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     * @throws WebServiceException
+     *             thrown, if the response cannot be handled
+     */
+    public T handleResponse(InputStream in, String charset) throws IOException, WebServiceException;
+
+}
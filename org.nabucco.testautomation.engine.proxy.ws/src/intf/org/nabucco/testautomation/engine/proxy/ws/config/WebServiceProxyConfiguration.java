@@ -30,6 +30,37 @@ public interface WebServiceProxyConfiguration extends ProxyEngineConfiguration {
      * The default WebService port.
      */
     public static final Integer DEFAULT_WEBSERVICE_PORT = 8080;
+
+    /**
+     * The default maximum number of http connections per route.
+     */
+    public static final Integer DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+
+    /**
+     * The default time in milliseconds an idle http connection is kept alive.
+     */
+    public static final Long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000L;
+
+    /**
+     * The default HTTP version of REST calls.
+     */
+    public static final String DEFAULT_HTTP_VERSION = "HTTP_1_1";
+
+    /**
+     * The default failure rate in percent opening the circuit of an endpoint.
+     */
+    public static final Integer DEFAULT_CIRCUIT_FAILURE_RATE = 50;
+
+    /**
+     * The default time in milliseconds an open circuit rejects calls.
+     */
+    public static final Long DEFAULT_CIRCUIT_COOL_DOWN = 30000L;
+
+    /**
+     * By default all namespaces of a XML message are collected before XPath-expressions are
+     * evaluated.
+     */
+    public static final Boolean DEFAULT_LAZY_NAMESPACES = Boolean.FALSE;
 	
     /**
      * Gets the configured default namespace prefix.
@@ -38,4 +69,49 @@ public interface WebServiceProxyConfiguration extends ProxyEngineConfiguration {
      */
     public String getDefaultNamespacePrefix();
 
+    /**
+     * Gets the configured maximum number of http connections per route (protocol, host and port).
+     * 
+     * @return the maximum number of connections per route
+     */
+    public Integer getMaxConnectionsPerRoute();
+
+    /**
+     * Gets the configured time in milliseconds an idle http connection is kept alive.
+     * 
+     * @return the idle timeout in milliseconds
+     */
+    public Long getIdleConnectionTimeout();
+
+    /**
+     * Gets the configured HTTP version of REST calls.
+     * 
+     * @return the HTTP version, e.g. HTTP_1_1 or HTTP_2
+     */
+    public String getHttpVersion();
+
+    /**
+     * Gets the configured failure rate in percent of the recent calls of an endpoint opening its
+     * circuit.
+     * 
+     * @return the failure rate in percent
+     */
+    public Integer getCircuitFailureRate();
+
+    /**
+     * Gets the configured time in milliseconds an open circuit rejects calls before a probe is let
+     * through.
+     * 
+     * @return the cool-down in milliseconds
+     */
+    public Long getCircuitCoolDown();
+
+    /**
+     * Gets the configured flag resolving the namespace prefixes of XPath-expressions on demand
+     * instead of collecting all namespaces of a XML message.
+     * 
+     * @return true, if namespaces are resolved lazily
+     */
+    public Boolean getLazyNamespaces();
+
 }
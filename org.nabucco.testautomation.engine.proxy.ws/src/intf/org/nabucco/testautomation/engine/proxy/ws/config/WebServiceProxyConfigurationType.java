@@ -27,7 +27,37 @@ public enum WebServiceProxyConfigurationType {
     /**
      * Constant for the property-key for the default namespace prefix.
      */
-    DEFAULT_NS_PREFIX("defaultNSPrefix");
+    DEFAULT_NS_PREFIX("defaultNSPrefix"),
+
+    /**
+     * Constant for the property-key for the maximum number of http connections per route.
+     */
+    MAX_CONNECTIONS_PER_ROUTE("maxConnectionsPerRoute"),
+
+    /**
+     * Constant for the property-key for the time in milliseconds an idle http connection is kept alive.
+     */
+    IDLE_CONNECTION_TIMEOUT("idleConnectionTimeout"),
+
+    /**
+     * Constant for the property-key for the HTTP version of REST calls (HTTP_1_1 or HTTP_2).
+     */
+    HTTP_VERSION("httpVersion"),
+
+    /**
+     * Constant for the property-key for the failure rate in percent opening the circuit of an endpoint.
+     */
+    CIRCUIT_FAILURE_RATE("circuitFailureRate"),
+
+    /**
+     * Constant for the property-key for the time in milliseconds an open circuit rejects calls.
+     */
+    CIRCUIT_COOL_DOWN("circuitCoolDown"),
+
+    /**
+     * Constant for the property-key for the flag resolving XML namespaces on demand.
+     */
+    LAZY_NAMESPACES("lazyNamespaces");
 
 	private String key;
     
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.exception;
+
+/**
+ * CircuitOpenException
+ * <p>
+ * Thrown, if a webservice call is rejected without being sent, because the circuit breaker of its
+ * endpoint is open after too many failed calls.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class CircuitOpenException extends WebServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String endpoint;
+
+	private final long retryAfter;
+
+	/**
+	 * Constructs a new instance for the given endpoint.
+	 * 
+	 * @param endpoint
+	 *            the endpoint of the rejected call
+	 * @param retryAfter
+	 *            the time in milliseconds until the next call is let through
+	 */
+	public CircuitOpenException(String endpoint, long retryAfter) {
+		super("Circuit of endpoint '" + endpoint + "' is open, call rejected without sending (next attempt in "
+				+ retryAfter + " ms)");
+		this.endpoint = endpoint;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return the endpoint of the rejected call
+	 */
+	public String getEndpoint() {
+		return this.endpoint;
+	}
+
+	/**
+	 * @return the time in milliseconds until the next call is let through
+	 */
+	public long getRetryAfter() {
+		return this.retryAfter;
+	}
+
+}
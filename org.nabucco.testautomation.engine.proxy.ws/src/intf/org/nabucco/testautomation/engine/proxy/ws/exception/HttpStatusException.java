@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.exception;
+
+/**
+ * HttpStatusException
+ * <p>
+ * Thrown, if a webservice call is answered with an unexpected HTTP status code.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class HttpStatusException extends WebServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	/**
+	 * Constructs a new instance for the given status code.
+	 * 
+	 * @param statusCode
+	 *            the HTTP status code
+	 */
+	public HttpStatusException(int statusCode) {
+		super("Unexpected ResponseCode: " + statusCode);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Constructs a new instance for the given status code with a root cause.
+	 * 
+	 * @param statusCode
+	 *            the HTTP status code
+	 * @param cause
+	 *            the root cause
+	 */
+	public HttpStatusException(int statusCode, Exception cause) {
+		super("Unexpected ResponseCode: " + statusCode, cause);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * @return the HTTP status code
+	 */
+	public int getStatusCode() {
+		return this.statusCode;
+	}
+
+	/**
+	 * Checks whether the status code indicates a server error (5xx).
+	 * 
+	 * @return true, if the status code is a server error
+	 */
+	public boolean isServerError() {
+		return this.statusCode >= 500 && this.statusCode < 600;
+	}
+
+}
@@ -30,6 +30,31 @@ import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
 public interface RestCommand extends ProxyCommand {
 
     public static final String JSON = "JSON";
+
+    /**
+     * Property-ID of the HTTP version (HTTP_1_1 or HTTP_2) overriding the configured version.
+     */
+    public static final String HTTP_VERSION = "HTTP_VERSION";
+
+    /**
+     * Property-ID of the flag enabling the response cache for GET requests.
+     */
+    public static final String CACHE = "CACHE";
+
+    /**
+     * Property-ID of the list of request PropertyLists executed by a BATCH action.
+     */
+    public static final String BATCH = "BATCH";
+
+    /**
+     * Property-ID of the HTTP method (GET, POST, PUT or DELETE) of the requests of a BATCH action.
+     */
+    public static final String METHOD = "METHOD";
+
+    /**
+     * Property-ID of the maximum number of concurrently executed requests of a BATCH action.
+     */
+    public static final String PARALLELISM = "PARALLELISM";
     
     /**
      * 
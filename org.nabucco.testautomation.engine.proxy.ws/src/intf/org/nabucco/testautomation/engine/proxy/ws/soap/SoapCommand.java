@@ -40,6 +40,12 @@ public interface SoapCommand extends ProxyCommand {
 	
 	public static final String XSD = "XSD";
 	
+	public static final String ASYNC = "ASYNC";
+	
+	public static final String REPLY_TO = "REPLY_TO";
+	
+	public static final String CORRELATION_ID = "CORRELATION_ID";
+	
 	/**
 	 * 
 	 * @param metadata the metadata to execute
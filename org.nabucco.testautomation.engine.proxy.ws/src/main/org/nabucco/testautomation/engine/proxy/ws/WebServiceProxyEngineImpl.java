@@ -22,9 +22,13 @@ import org.nabucco.testautomation.engine.proxy.SubEngine;
 import org.nabucco.testautomation.engine.proxy.base.AbstractProxyEngine;
 import org.nabucco.testautomation.engine.proxy.config.ProxyEngineConfiguration;
 import org.nabucco.testautomation.engine.proxy.exception.ProxyConfigurationException;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpConnectionPool;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpVersion;
+import org.nabucco.testautomation.engine.proxy.ws.client.policy.CircuitBreaker;
 import org.nabucco.testautomation.engine.proxy.ws.config.WebServiceProxyConfigImpl;
 import org.nabucco.testautomation.engine.proxy.ws.config.WebServiceProxyConfiguration;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xpath.XPathProcessor;
 import org.nabucco.testautomation.settings.facade.datatype.engine.SubEngineType;
 import org.nabucco.testautomation.settings.facade.datatype.engine.proxy.ProxyConfiguration;
 
@@ -43,6 +47,8 @@ public class WebServiceProxyEngineImpl extends AbstractProxyEngine {
     
     private String defaultNSPrefix;
 
+    private HttpVersion httpVersion;
+
     /**
      * Constructs a new ProxyEngine with {@link SubEngineType.WS}.
      */
@@ -65,6 +71,30 @@ public class WebServiceProxyEngineImpl extends AbstractProxyEngine {
         WebServiceProxyConfiguration wsConfig = (WebServiceProxyConfiguration) config;
         this.defaultNSPrefix = wsConfig.getDefaultNamespacePrefix();
         logger.info("Configuring with  defaultNSPrefix = '" + this.defaultNSPrefix + "'");
+
+        Integer maxConnectionsPerRoute = wsConfig.getMaxConnectionsPerRoute();
+        Long idleConnectionTimeout = wsConfig.getIdleConnectionTimeout();
+        HttpConnectionPool.getInstance().configure(maxConnectionsPerRoute, idleConnectionTimeout);
+        logger.info("Configuring with  maxConnectionsPerRoute = '" + maxConnectionsPerRoute
+                + "', idleConnectionTimeout = '" + idleConnectionTimeout + "'");
+
+        Integer circuitFailureRate = wsConfig.getCircuitFailureRate();
+        Long circuitCoolDown = wsConfig.getCircuitCoolDown();
+        CircuitBreaker.getInstance().configure(circuitFailureRate, circuitCoolDown);
+        logger.info("Configuring with  circuitFailureRate = '" + circuitFailureRate + "', circuitCoolDown = '"
+                + circuitCoolDown + "'");
+
+        Boolean lazyNamespaces = wsConfig.getLazyNamespaces();
+        XPathProcessor.setLazyNamespaces(lazyNamespaces.booleanValue());
+        logger.info("Configuring with  lazyNamespaces = '" + lazyNamespaces + "'");
+
+        this.httpVersion = HttpVersion.getVersion(wsConfig.getHttpVersion());
+
+        if (this.httpVersion == null) {
+            throw new ProxyConfigurationException(new WebServiceException("Unsupported httpVersion = '"
+                    + wsConfig.getHttpVersion() + "'"));
+        }
+        logger.info("Configuring with  httpVersion = '" + this.httpVersion.getProtocol() + "'");
         logger.info("WebServiceProxyEngine configured");
     }
 
@@ -75,7 +105,7 @@ public class WebServiceProxyEngineImpl extends AbstractProxyEngine {
     protected SubEngine start() throws ProxyConfigurationException {
         try {
             logger.info("Starting WebServiceProxyEngine ...");
-            this.webServiceEngine = new WebServiceSubEngineImpl(this.defaultNSPrefix);
+            this.webServiceEngine = new WebServiceSubEngineImpl(this.defaultNSPrefix, this.httpVersion);
 
             // No action so far
             logger.info("WebServiceSubEngine created");
@@ -27,14 +27,31 @@ import org.nabucco.testautomation.engine.proxy.SubEngineActionType;
 import org.nabucco.testautomation.engine.proxy.SubEngineOperationType;
 import org.nabucco.testautomation.engine.proxy.base.AbstractSubEngine;
 import org.nabucco.testautomation.engine.proxy.exception.SubEngineException;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpConnectionPool;
+import org.nabucco.testautomation.engine.proxy.ws.client.policy.CircuitBreaker;
+import org.nabucco.testautomation.engine.proxy.ws.client.policy.PolicyExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpVersion;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+import org.nabucco.testautomation.engine.proxy.ws.client.rest.ResponseCache;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.CallPool;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapEnvelopeTemplate;
 import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapVersion;
+import org.nabucco.testautomation.engine.proxy.ws.command.rest.client.BatchCommand;
 import org.nabucco.testautomation.engine.proxy.ws.command.rest.client.RestClientImpl;
+import org.nabucco.testautomation.engine.proxy.ws.command.soap.client.SoapCallCommand;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.client.SoapClientImpl;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.server.SoapServerImpl;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.handler.RequestTemplate;
+import org.nabucco.testautomation.engine.proxy.ws.load.LoadGenerator;
+import org.nabucco.testautomation.engine.proxy.ws.load.LoadGenerator.LoadAction;
 import org.nabucco.testautomation.engine.proxy.ws.rest.RestClient;
 import org.nabucco.testautomation.engine.proxy.ws.soap.SoapClient;
 import org.nabucco.testautomation.engine.proxy.ws.soap.SoapServer;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+import org.nabucco.testautomation.engine.proxy.ws.xpath.XPathExpressionCache;
+import org.nabucco.testautomation.engine.proxy.ws.xpath.XPathProcessor;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
 import org.nabucco.testautomation.result.facade.datatype.ActionResponse;
 import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
@@ -42,6 +59,10 @@ import org.nabucco.testautomation.settings.facade.datatype.engine.SubEngineType;
 
 /**
  * WebServiceSubEngineImpl
+ * <p>
+ * The executors, caches and circuits of the clients are shared by all engines of the JVM. They are
+ * shut down and cleared by the cleanup of the last open engine, the cleanup of any other engine
+ * only releases its own resources.
  * 
  * @author Steffen Schmidt, PRODYNA AG
  */
@@ -52,6 +73,8 @@ public class WebServiceSubEngineImpl extends AbstractSubEngine implements WebSer
     private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(
             WebServiceSubEngineImpl.class);
 
+    private static int openEngines;
+
     private SoapClient soapClient_1_1;
 
     private SoapClient soapClient_1_2;
@@ -60,17 +83,33 @@ public class WebServiceSubEngineImpl extends AbstractSubEngine implements WebSer
     
     private RestClient restClient;
 
+    private final AttachmentStore attachmentStore = new AttachmentStore();
+
+    private boolean open;
+
     /**
      * Constructs a new WebServiceEngine instance interacting with the given host and port.
      * 
      * @throws WebServiceException
      */
     public WebServiceSubEngineImpl(String defaultNSPrefix) throws WebServiceException {
+        this(defaultNSPrefix, HttpVersion.HTTP_1_1);
+    }
+
+    /**
+     * Constructs a new WebServiceEngine instance using the given HTTP version for REST calls.
+     * 
+     * @throws WebServiceException
+     */
+    public WebServiceSubEngineImpl(String defaultNSPrefix, HttpVersion httpVersion) throws WebServiceException {
         super();
-        this.soapClient_1_1 = new SoapClientImpl(SoapVersion.V_1_1, defaultNSPrefix);
-        this.soapClient_1_2 = new SoapClientImpl(SoapVersion.V_1_2, defaultNSPrefix);
-        this.soapServer = new SoapServerImpl(defaultNSPrefix);
-        this.restClient = new RestClientImpl(defaultNSPrefix);
+        SoapServerImpl soapServer = new SoapServerImpl(defaultNSPrefix, this.attachmentStore);
+        this.soapClient_1_1 = new SoapClientImpl(SoapVersion.V_1_1, defaultNSPrefix, soapServer, this.attachmentStore);
+        this.soapClient_1_2 = new SoapClientImpl(SoapVersion.V_1_2, defaultNSPrefix, soapServer, this.attachmentStore);
+        this.soapServer = soapServer;
+        this.restClient = new RestClientImpl(defaultNSPrefix, httpVersion);
+        openEngine();
+        this.open = true;
     }
 
     /**
@@ -81,6 +120,38 @@ public class WebServiceSubEngineImpl extends AbstractSubEngine implements WebSer
             SubEngineActionType actionType, List<Metadata> metadataList, PropertyList propertyList, TestContext context)
             throws SubEngineException {
 
+        LoadGenerator loadGenerator = null;
+
+        if (metadataList != null && !metadataList.isEmpty()) {
+            loadGenerator = LoadGenerator.getLoadGenerator(metadataList, propertyList);
+        }
+
+        if (loadGenerator == null) {
+            return this.execute(operationType, actionType, metadataList, propertyList, context);
+        }
+
+        // Execute the action repeatedly in load mode
+        final SubEngineOperationType operation = operationType;
+        final SubEngineActionType action = actionType;
+        final List<Metadata> metadata = metadataList;
+        final PropertyList properties = propertyList;
+        final TestContext testContext = context;
+
+        return loadGenerator.execute(new LoadAction() {
+
+            @Override
+            public ActionResponse execute() throws SubEngineException {
+                return WebServiceSubEngineImpl.this.execute(operation, action, metadata, properties, testContext);
+            }
+        });
+    }
+
+    /**
+     * Executes a single operation.
+     */
+    private ActionResponse execute(SubEngineOperationType operationType, SubEngineActionType actionType,
+            List<Metadata> metadataList, PropertyList propertyList, TestContext context) throws SubEngineException {
+
         // Map OperationType
         WebServiceEngineOperationType wsEngineOperationType = (WebServiceEngineOperationType) operationType;
 
@@ -113,6 +184,54 @@ public class WebServiceSubEngineImpl extends AbstractSubEngine implements WebSer
         if (this.soapServer != null) {
             this.soapServer.cleanup();
         }
+        if (this.open) {
+            this.open = false;
+            closeEngine();
+        }
+
+        int undeleted = this.attachmentStore.deleteFiles();
+
+        if (undeleted > 0) {
+            logger.warning(undeleted + " temporary attachment files could not be deleted");
+        }
+    }
+
+    /**
+     * Registers an engine as user of the resources shared by all engines.
+     */
+    private static synchronized void openEngine() {
+        HttpConnectionPool.getInstance().open();
+        openEngines++;
+    }
+
+    /**
+     * Unregisters an engine. The shared resources are shut down and cleared when the last engine is
+     * closed. An engine opened concurrently waits until the resources are shut down.
+     */
+    private static synchronized void closeEngine() {
+        HttpConnectionPool.getInstance().close();
+
+        if (openEngines > 0) {
+            openEngines--;
+        }
+        if (openEngines > 0) {
+            return;
+        }
+
+        WebServiceExecutor.shutdown();
+        PolicyExecutor.shutdown();
+        SoapCallCommand.shutdown();
+        BatchCommand.shutdown();
+        ResponseCache.getInstance().clear();
+        CircuitBreaker.getInstance().clear();
+        CallPool.getInstance().clear();
+        SoapEnvelopeTemplate.clear();
+        logger.debug("XPath expression cache: " + XPathExpressionCache.getInstance());
+        XPathExpressionCache.getInstance().clear();
+        XPathProcessor.clearTemplates();
+        RequestTemplate.clear();
+        logger.debug("XML factory registry: " + XmlFactoryRegistry.getInstance());
+        XmlFactoryRegistry.getInstance().clear();
     }
 
     /**
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.soap.SOAPException;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+import org.nabucco.testautomation.engine.proxy.ws.client.policy.EndpointStatistics;
+import org.nabucco.testautomation.engine.proxy.ws.client.policy.PolicyExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.w3c.dom.Document;
+
+/**
+ * AbstractWebServiceClient
+ * <p>
+ * Base class of the {@link WebServiceClient} implementations. Holds the immutable
+ * {@link RequestSpec} of the requests, which is replaced as a whole by the setters, and executes
+ * the asynchronous calls on the shared {@link WebServiceExecutor}.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public abstract class AbstractWebServiceClient implements WebServiceClient {
+
+    /**
+     * The listener notifications of the hedged attempt executed by the current thread, which are
+     * only passed to the listeners for the attempt whose result is returned.
+     */
+    private static final ThreadLocal<List<Runnable>> attemptNotifications = new ThreadLocal<List<Runnable>>();
+
+    private volatile RequestSpec requestSpec = RequestSpec.DEFAULT;
+
+    private volatile AttachmentStore attachmentStore = AttachmentStore.getDefault();
+
+    /**
+     * Creates a new client of the same type sharing the transport of this client.
+     * 
+     * @return the new client
+     * @throws WebServiceException
+     *             thrown, if the client cannot be created
+     */
+    protected abstract AbstractWebServiceClient newInstance() throws WebServiceException;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebServiceClient forRequest(RequestSpec spec) throws WebServiceException {
+        AbstractWebServiceClient client = this.newInstance();
+        client.requestSpec = spec != null ? spec : RequestSpec.DEFAULT;
+        client.attachmentStore = this.attachmentStore;
+        return client;
+    }
+
+    /**
+     * Sets the store of the attachments received by this client and the clients created from it.
+     * 
+     * @param attachmentStore
+     *            the store, or null for the default store
+     */
+    public void setAttachmentStore(AttachmentStore attachmentStore) {
+        this.attachmentStore = attachmentStore != null ? attachmentStore : AttachmentStore.getDefault();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RequestSpec getRequestSpec() {
+        return this.requestSpec;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addHeaderAttribute(String name, String value) throws WebServiceException {
+        this.requestSpec = this.requestSpec.toBuilder().headerAttribute(name, value).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addHeaderElement(String name, String value) throws WebServiceException {
+        this.requestSpec = this.requestSpec.toBuilder().headerElement(name, value).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<String> sendMessageAsync(final URL url, final String method, final String message) {
+        return WebServiceExecutor.getInstance().submit(new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return sendMessage(url, method, message);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<Document> sendMessageAsync(final URL url, final String method, final Document message) {
+        return WebServiceExecutor.getInstance().submit(new Callable<Document>() {
+
+            @Override
+            public Document call() throws Exception {
+                return sendMessage(url, method, message);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<Document> sendMessageAsync(final URL url, final String method, final List<Document> messages) {
+        return WebServiceExecutor.getInstance().submit(new Callable<Document>() {
+
+            @Override
+            public Document call() throws Exception {
+                return sendMessage(url, method, messages);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addWebServiceListener(WebServiceListener listener) {
+        this.requestSpec = this.requestSpec.toBuilder().listener(listener).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void removeWebServiceListener(WebServiceListener listener) {
+        this.requestSpec = this.requestSpec.toBuilder().removeListener(listener).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setUsername(String username) {
+        this.requestSpec = this.requestSpec.toBuilder().username(username).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setPassword(String password) {
+        this.requestSpec = this.requestSpec.toBuilder().password(password).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setTracingEnabled(boolean tracingEnabled) {
+        this.requestSpec = this.requestSpec.toBuilder().tracingEnabled(tracingEnabled).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setCompression(HttpCompression compression) {
+        this.requestSpec = this.requestSpec.toBuilder().compression(compression).build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setCachingEnabled(boolean cachingEnabled) {
+        this.requestSpec = this.requestSpec.toBuilder().cachingEnabled(cachingEnabled).build();
+    }
+
+    /**
+     * Checks whether responses are cached.
+     * 
+     * @return true, if caching is enabled
+     */
+    protected boolean isCachingEnabled() {
+        return this.requestSpec.isCachingEnabled();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.requestSpec = this.requestSpec.toBuilder().retryPolicy(retryPolicy).build();
+    }
+
+    /**
+     * Gets the policy for retrying and hedging calls.
+     * 
+     * @return the retry policy, never null
+     */
+    protected RetryPolicy getRetryPolicy() {
+        return this.requestSpec.getRetryPolicy();
+    }
+
+    /**
+     * Executes the attempts of a call according to the retry policy of the client.
+     * 
+     * @param url
+     *            the called URL
+     * @param idempotent
+     *            true, if the request is idempotent by its method
+     * @param attempt
+     *            a single attempt of the call
+     * @return the result of the successful attempt
+     * @throws SOAPException
+     *             the error of the last attempt
+     * @throws WebServiceException
+     *             the error of the last attempt
+     */
+    protected <T> T execute(URL url, boolean idempotent, Callable<T> attempt) throws SOAPException,
+            WebServiceException {
+        return this.execute(url, this.requestSpec.getRetryPolicy(), idempotent, attempt);
+    }
+
+    /**
+     * Executes the attempts of a call according to the given retry policy.
+     * 
+     * @param url
+     *            the called URL
+     * @param retryPolicy
+     *            the retry policy
+     * @param idempotent
+     *            true, if the request is idempotent by its method
+     * @param attempt
+     *            a single attempt of the call
+     * @return the result of the successful attempt
+     * @throws SOAPException
+     *             the error of the last attempt
+     * @throws WebServiceException
+     *             the error of the last attempt
+     */
+    protected <T> T execute(URL url, RetryPolicy retryPolicy, boolean idempotent, Callable<T> attempt)
+            throws SOAPException, WebServiceException {
+
+        try {
+            if (PolicyExecutor.isHedging(retryPolicy, idempotent)) {
+                return this.executeHedged(url, retryPolicy, idempotent, attempt);
+            }
+            return PolicyExecutor.execute(url, retryPolicy, idempotent, attempt);
+        } catch (WebServiceException ex) {
+            throw ex;
+        } catch (SOAPException ex) {
+            throw ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while calling '" + url + "'");
+        } catch (Exception ex) {
+            throw new WebServiceException("Error during communication with URL '" + url + "'", ex);
+        }
+    }
+
+    /**
+     * Executes hedged attempts of a call. The listeners are notified about the messages of the
+     * attempt whose result is returned, or of the last failed attempt, not about each concurrent
+     * attempt.
+     */
+    private <T> T executeHedged(URL url, RetryPolicy retryPolicy, boolean idempotent, final Callable<T> attempt)
+            throws Exception {
+
+        final AtomicReference<List<Runnable>> failed = new AtomicReference<List<Runnable>>();
+        AttemptResult<T> result;
+
+        try {
+            result = PolicyExecutor.execute(url, retryPolicy, idempotent, new Callable<AttemptResult<T>>() {
+
+                @Override
+                public AttemptResult<T> call() throws Exception {
+
+                    List<Runnable> previous = attemptNotifications.get();
+                    List<Runnable> notifications = new ArrayList<Runnable>();
+                    attemptNotifications.set(notifications);
+
+                    try {
+                        return new AttemptResult<T>(attempt.call(), notifications);
+                    } catch (Exception ex) {
+                        failed.set(notifications);
+                        throw ex;
+                    } finally {
+                        attemptNotifications.set(previous);
+                    }
+                }
+            });
+        } catch (Exception ex) {
+            replay(failed.get());
+            throw ex;
+        }
+
+        replay(result.notifications);
+        return result.value;
+    }
+
+    private static void replay(List<Runnable> notifications) {
+
+        if (notifications != null) {
+            for (Runnable notification : notifications) {
+                notification.run();
+            }
+        }
+    }
+
+    /**
+     * Gets the connect timeout of the requests.
+     * 
+     * @param defaultTimeout
+     *            the timeout in milliseconds if none is configured, 0 for no timeout
+     * @return the timeout in milliseconds, 0 for no timeout
+     */
+    protected int getConnectTimeout(int defaultTimeout) {
+        int timeout = this.requestSpec.getConnectTimeout();
+        return timeout > 0 ? timeout : defaultTimeout;
+    }
+
+    /**
+     * Gets the read timeout of a request to the given URL. An adaptive timeout is derived from the
+     * recent latencies of the endpoint, bounded by the configured timeout. Until enough latencies
+     * are recorded, the configured timeout is used.
+     * 
+     * @param url
+     *            the called URL
+     * @param defaultTimeout
+     *            the timeout in milliseconds if none is configured, 0 for no timeout
+     * @return the timeout in milliseconds, 0 for no timeout
+     */
+    protected int getReadTimeout(URL url, int defaultTimeout) {
+
+        int timeout = this.requestSpec.getReadTimeout() > 0 ? this.requestSpec.getReadTimeout() : defaultTimeout;
+        double factor = this.requestSpec.getAdaptiveTimeoutFactor();
+
+        if (factor <= 0) {
+            return timeout;
+        }
+
+        long adaptive = EndpointStatistics.getInstance().getAdaptiveTimeout(EndpointStatistics.getEndpoint(url),
+                factor);
+
+        if (adaptive < 0) {
+            return timeout;
+        }
+        return (int) Math.min(adaptive, timeout > 0 ? timeout : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the compression of request bodies.
+     * 
+     * @return the compression, never null
+     */
+    protected HttpCompression getCompression() {
+        return this.requestSpec.getCompression();
+    }
+
+    /**
+     * Gets the header attributes of the requests.
+     * 
+     * @return the unmodifiable header attributes
+     */
+    protected Map<String, String> getHeaderAttributes() {
+        return this.requestSpec.getHeaderAttributes();
+    }
+
+    /**
+     * Gets the header elements of SOAP requests.
+     * 
+     * @return the unmodifiable header elements
+     */
+    protected Map<String, String> getHeaderElements() {
+        return this.requestSpec.getHeaderElements();
+    }
+
+    /**
+     * Gets the username for basic authentication.
+     * 
+     * @return the username or null
+     */
+    protected String getUsername() {
+        return this.requestSpec.getUsername();
+    }
+
+    /**
+     * Gets the password for basic authentication.
+     * 
+     * @return the password or null
+     */
+    protected String getPassword() {
+        return this.requestSpec.getPassword();
+    }
+
+    /**
+     * Gets the binary attachments of SOAP requests.
+     * 
+     * @return the unmodifiable attachments
+     */
+    protected List<SoapAttachment> getAttachments() {
+        return this.requestSpec.getAttachments();
+    }
+
+    /**
+     * Gets the store of received attachments.
+     * 
+     * @return the attachment store
+     */
+    protected AttachmentStore getAttachmentStore() {
+        return this.attachmentStore;
+    }
+
+    /**
+     * Checks whether attachments are sent as MTOM/XOP package.
+     * 
+     * @return true for MTOM/XOP, false for SOAP with attachments
+     */
+    protected boolean isMtomEnabled() {
+        return this.requestSpec.isMtomEnabled();
+    }
+
+    /**
+     * Checks whether the same request payload is sent several times.
+     * 
+     * @return true, if the serialized request is kept for reuse
+     */
+    protected boolean isRequestReused() {
+        return this.requestSpec.isRequestReused();
+    }
+
+    /**
+     * Notifies the {@link AttachmentListener}s about a received attachment.
+     * 
+     * @param attachment
+     *            the attachment
+     */
+    protected void attachmentReceived(final SoapAttachment attachment) {
+
+        this.notifyListeners(new Runnable() {
+
+            @Override
+            public void run() {
+                for (WebServiceListener listener : getListeners()) {
+
+                    if (listener instanceof AttachmentListener) {
+                        ((AttachmentListener) listener).attachmentReceived(attachment);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether request and response messages are traced.
+     * 
+     * @return true, if tracing is enabled
+     */
+    protected boolean isTracingEnabled() {
+        return this.requestSpec.isTracingEnabled();
+    }
+
+    protected void messageSent(final String request) {
+
+        this.notifyListeners(new Runnable() {
+
+            @Override
+            public void run() {
+                for (WebServiceListener listener : getListeners()) {
+                    listener.messageSent(request);
+                }
+            }
+        });
+    }
+
+    protected void messageReceived(final String response) {
+
+        this.notifyListeners(new Runnable() {
+
+            @Override
+            public void run() {
+                for (WebServiceListener listener : getListeners()) {
+                    listener.messageReceived(response);
+                }
+            }
+        });
+    }
+
+    protected void start() {
+
+        for (WebServiceListener listener : this.requestSpec.getListeners()) {
+            listener.start();
+        }
+    }
+
+    protected void finished() {
+
+        for (WebServiceListener listener : this.requestSpec.getListeners()) {
+            listener.finished();
+        }
+    }
+
+    private List<WebServiceListener> getListeners() {
+        return this.requestSpec.getListeners();
+    }
+
+    /**
+     * Passes the notification to the listeners, or defers it while a hedged attempt is executed by
+     * the current thread.
+     */
+    private void notifyListeners(Runnable notification) {
+
+        List<Runnable> notifications = attemptNotifications.get();
+
+        if (notifications != null) {
+            notifications.add(notification);
+        } else {
+            notification.run();
+        }
+    }
+
+    /**
+     * The result of a hedged attempt with its deferred listener notifications.
+     */
+    private static class AttemptResult<T> {
+
+        private final T value;
+
+        private final List<Runnable> notifications;
+
+        AttemptResult(T value, List<Runnable> notifications) {
+            this.value = value;
+            this.notifications = notifications;
+        }
+    }
+
+}
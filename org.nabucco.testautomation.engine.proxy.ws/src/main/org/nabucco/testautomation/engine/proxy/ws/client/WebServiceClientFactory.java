@@ -16,9 +16,14 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.client;
 
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpVersion;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+import org.nabucco.testautomation.engine.proxy.ws.client.rest.Http2RestClientImpl;
 import org.nabucco.testautomation.engine.proxy.ws.client.rest.RestClientImpl;
 import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapClientImpl;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapTransport;
 import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapVersion;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.StaxSoapClientImpl;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 
 
@@ -63,6 +68,59 @@ public class WebServiceClientFactory {
         return new SoapClientImpl(version);
     }
 
+    /**
+     * Gets an instance of a {@link WebServiceClient} for SOAP-Calls using the given transport.
+     * 
+     * @param version
+     *            the required SOAP-Version
+     * @param transport
+     *            the SOAP client implementation
+     * @return the WebServiceClient instance
+     * @throws WebServiceException
+     *             thrown, if the instance could not be created
+     */
+    public WebServiceClient getSoapWebServiceClient(SoapVersion version, SoapTransport transport)
+            throws WebServiceException {
+        return this.getSoapWebServiceClient(version, transport, null);
+    }
+
+    /**
+     * Gets an instance of a {@link WebServiceClient} for SOAP-Calls using the given transport and
+     * storing the received attachments in the given store.
+     * 
+     * @param version
+     *            the required SOAP-Version
+     * @param transport
+     *            the SOAP client implementation
+     * @param attachmentStore
+     *            the store of received attachments, or null for the default store
+     * @return the WebServiceClient instance
+     * @throws WebServiceException
+     *             thrown, if the instance could not be created
+     */
+    public WebServiceClient getSoapWebServiceClient(SoapVersion version, SoapTransport transport,
+            AttachmentStore attachmentStore) throws WebServiceException {
+
+        if (transport == null) {
+            throw new WebServiceException("SoapTransport must not be null");
+        }
+
+        AbstractWebServiceClient client;
+
+        switch (transport) {
+        case AXIS:
+            client = new SoapClientImpl(version);
+            break;
+        case STAX:
+            client = new StaxSoapClientImpl(version);
+            break;
+        default:
+            throw new WebServiceException("Unsupported SoapTransport: " + transport);
+        }
+        client.setAttachmentStore(attachmentStore);
+        return client;
+    }
+
     /**
      * Gets an instance of a {@link WebServiceClient} for REST-Calls.
      * 
@@ -74,4 +132,30 @@ public class WebServiceClientFactory {
         return new RestClientImpl();
     }
 
+    /**
+     * Gets an instance of a {@link WebServiceClient} for REST-Calls using the given HTTP version.
+     * 
+     * @param version
+     *            the HTTP version to use
+     * @return the WebServiceClient instance
+     * @throws WebServiceException
+     *             thrown, if the instance could not be created or the version is not supported by
+     *             the runtime
+     */
+    public WebServiceClient getRestWebServiceClient(HttpVersion version) throws WebServiceException {
+
+        if (version == null) {
+            throw new WebServiceException("HttpVersion must not be null");
+        }
+
+        switch (version) {
+        case HTTP_1_1:
+            return new RestClientImpl();
+        case HTTP_2:
+            return new Http2RestClientImpl();
+        default:
+            throw new WebServiceException("Unsupported HttpVersion: " + version);
+        }
+    }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebServiceExecutor
+ * <p>
+ * Shared pool of daemon threads executing the asynchronous calls of all {@link WebServiceClient}s.
+ * Idle threads are terminated after a keep-alive time, so the pool does not hold any threads
+ * while no asynchronous calls are in flight.
+ * <p>
+ * Calls waiting for further calls, like hedged or batched requests, must not block the threads of
+ * the pool executing them. They submit to a dedicated bounded executor instead, which runs a call
+ * in the submitting thread while all of its threads are busy.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class WebServiceExecutor implements Executor {
+
+    /**
+     * The maximum number of concurrently executed calls. Further calls are queued.
+     */
+    public static final int MAX_THREADS = 256;
+
+    private static final long KEEP_ALIVE = 60;
+
+    private static final String THREAD_NAME = "WebServiceClient-Async-";
+
+    private static WebServiceExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructs a new executor instance.
+     */
+    private WebServiceExecutor() {
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(THREAD_NAME));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Constructs a new bounded executor instance. A call submitted while all threads are busy, or
+     * after the executor is shut down, is executed by the submitting thread.
+     * 
+     * @param name
+     *            the name prefix of the threads
+     * @param maxThreads
+     *            the maximum number of threads
+     */
+    public WebServiceExecutor(String name, int maxThreads) {
+        this.executor = new ThreadPoolExecutor(0, maxThreads, KEEP_ALIVE, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new DaemonThreadFactory(name), new CallerRunsHandler());
+    }
+
+    /**
+     * Gets the executor instance shared by all clients.
+     * 
+     * @return the executor instance
+     */
+    public static synchronized WebServiceExecutor getInstance() {
+
+        if (instance == null) {
+            instance = new WebServiceExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * Submits the given call for asynchronous execution.
+     * 
+     * @param call
+     *            the call to execute
+     * @return the future result of the call
+     */
+    public <T> Future<T> submit(Callable<T> call) {
+        return this.executor.submit(call);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable command) {
+        this.executor.execute(command);
+    }
+
+    /**
+     * Shuts the shared executor down. Calls already submitted are still executed. The next call to
+     * {@link #getInstance()} creates a new executor.
+     */
+    public static synchronized void shutdown() {
+
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Shuts this executor down. Calls already submitted are still executed.
+     */
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Creates named daemon threads, which do not prevent the JVM from exiting.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, this.name + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Executes a rejected call in the submitting thread, also after shutdown, so its future is
+     * always completed.
+     */
+    private static class CallerRunsHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            runnable.run();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.body;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+import org.w3c.dom.Document;
+
+/**
+ * DocumentRequestBody
+ * <p>
+ * Request body of a DOM document serialized in UTF-8 directly into the request stream. Sent
+ * chunked, since the length is not known before serialization.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class DocumentRequestBody implements RequestBody {
+
+    private final Document document;
+
+    /**
+     * Creates a new body of the given document.
+     * 
+     * @param document
+     *            the document
+     */
+    public DocumentRequestBody(Document document) {
+        this.document = document;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException, WebServiceException {
+        this.serialize(new StreamResult(out));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toTraceString() throws WebServiceException {
+        StringWriter writer = new StringWriter();
+        this.serialize(new StreamResult(writer));
+        return writer.toString();
+    }
+
+    private void serialize(Result result) throws WebServiceException {
+
+        try {
+            Transformer transformer = XmlFactoryRegistry.getInstance().getTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, CHARSET);
+            transformer.transform(new DOMSource(this.document), result);
+        } catch (TransformerException ex) {
+            throw new WebServiceException("Could not serialize XML-Message", ex);
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.body;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.property.facade.datatype.FileProperty;
+
+/**
+ * FileRequestBody
+ * <p>
+ * Request body of a {@link FileProperty}. The content of the property is encoded in UTF-8 while it
+ * is sent chunked. Only a property without content is read from the local file system, streaming
+ * the file of its filename with a Content-Length.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class FileRequestBody implements RequestBody {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File file;
+
+    private final String content;
+
+    /**
+     * Creates a new body of the given file property.
+     * 
+     * @param fileProperty
+     *            the file property
+     */
+    public FileRequestBody(FileProperty fileProperty) {
+
+        this.file = getLocalFile(fileProperty);
+        this.content = this.file == null ? getContent(fileProperty) : null;
+    }
+
+    /**
+     * Gets the local file of a file property without content.
+     * 
+     * @param fileProperty
+     *            the file property
+     * @return the existing file named by the filename of the property, or null if the property
+     *         has content or the file does not exist
+     */
+    public static File getLocalFile(FileProperty fileProperty) {
+
+        if (getContent(fileProperty) != null || fileProperty.getFilename() == null
+                || fileProperty.getFilename().getValue() == null) {
+            return null;
+        }
+
+        File localFile = new File(fileProperty.getFilename().getValue());
+        return localFile.isFile() ? localFile : null;
+    }
+
+    private static String getContent(FileProperty fileProperty) {
+        return fileProperty.getContent() != null ? fileProperty.getContent().getValue() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength() {
+
+        if (this.file != null) {
+            return this.file.length();
+        }
+        return this.content != null ? -1 : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+
+        if (this.file != null) {
+            InputStream in = new FileInputStream(this.file);
+
+            try {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int c;
+
+                while ((c = in.read(buf)) != -1) {
+                    out.write(buf, 0, c);
+                }
+            } finally {
+                in.close();
+            }
+        } else if (this.content != null) {
+            Writer writer = new OutputStreamWriter(out, CHARSET);
+            writer.write(this.content);
+            writer.flush();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toTraceString() {
+
+        if (this.file != null) {
+            return "File '" + this.file.getAbsolutePath() + "' (" + this.file.length() + " bytes)";
+        }
+        return this.content;
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.body;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+
+/**
+ * StringRequestBody
+ * <p>
+ * Request body of a String encoded in UTF-8. Sent with a Content-Length.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class StringRequestBody implements RequestBody {
+
+    private final String message;
+
+    private final byte[] content;
+
+    /**
+     * Creates a new body of the given message.
+     * 
+     * @param message
+     *            the message
+     */
+    public StringRequestBody(String message) {
+        this.message = message;
+
+        try {
+            this.content = message.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(CHARSET + " is not supported", ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getContentLength() {
+        return this.content.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(this.content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toTraceString() {
+        return this.message;
+    }
+
+}
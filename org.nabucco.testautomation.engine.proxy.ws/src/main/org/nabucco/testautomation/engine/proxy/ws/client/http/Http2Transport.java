@@ -0,0 +1,332 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * Http2Transport
+ * <p>
+ * HTTP/2 transport backed by the {@code java.net.http.HttpClient} of the Java 11+ runtime. One
+ * client is shared by all callers, so concurrent requests to one host are multiplexed over a
+ * single connection. Cleartext URLs are upgraded to h2c, servers not supporting HTTP/2 are served
+ * with HTTP/1.1.
+ * <p>
+ * The connect timeout is a setting of the client and would require a client (and connection) per
+ * timeout value. Therefore the timeouts of a request are enforced together as one limit of the
+ * request: the connect timeout plus the read timeout bound the wait for the response headers. A
+ * request without read timeout is not limited, the connect timeout alone is not enforced.
+ * <p>
+ * The proxy is compiled against Java 6, therefore the client API is bound by reflection when the
+ * transport is first used.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class Http2Transport {
+
+    private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(Http2Transport.class);
+
+    private static final String HTTP_CLIENT = "java.net.http.HttpClient";
+
+    private static final String HTTP_CLIENT_BUILDER = "java.net.http.HttpClient$Builder";
+
+    private static final String HTTP_CLIENT_VERSION = "java.net.http.HttpClient$Version";
+
+    private static final String HTTP_REQUEST = "java.net.http.HttpRequest";
+
+    private static final String HTTP_REQUEST_BUILDER = "java.net.http.HttpRequest$Builder";
+
+    private static final String BODY_PUBLISHER = "java.net.http.HttpRequest$BodyPublisher";
+
+    private static final String BODY_PUBLISHERS = "java.net.http.HttpRequest$BodyPublishers";
+
+    private static final String HTTP_RESPONSE = "java.net.http.HttpResponse";
+
+    private static final String BODY_HANDLER = "java.net.http.HttpResponse$BodyHandler";
+
+    private static final String BODY_HANDLERS = "java.net.http.HttpResponse$BodyHandlers";
+
+    private static final String HTTP_HEADERS = "java.net.http.HttpHeaders";
+
+    private static final String OPTIONAL = "java.util.Optional";
+
+    private static final String DURATION = "java.time.Duration";
+
+    private static final String VERSION_HTTP_2 = "HTTP_2";
+
+    private static Http2Transport instance;
+
+    private final Object client;
+
+    private final Object bodyHandler;
+
+    private final Method ofMillis;
+
+    private final Method newRequestBuilder;
+
+    private final Method requestHeader;
+
+    private final Method requestMethod;
+
+    private final Method requestTimeout;
+
+    private final Method buildRequest;
+
+    private final Method noBody;
+
+    private final Method ofByteArray;
+
+    private final Method send;
+
+    private final Method statusCode;
+
+    private final Method body;
+
+    private final Method headers;
+
+    private final Method firstValue;
+
+    private final Method orElse;
+
+    /**
+     * Binds the HTTP client API of the runtime and creates the shared client.
+     * 
+     * @throws Exception
+     *             thrown, if the runtime does not provide the HTTP client API
+     */
+    private Http2Transport() throws Exception {
+
+        Class<?> clientClass = Class.forName(HTTP_CLIENT);
+        Class<?> clientBuilderClass = Class.forName(HTTP_CLIENT_BUILDER);
+        Class<?> versionClass = Class.forName(HTTP_CLIENT_VERSION);
+        Class<?> requestClass = Class.forName(HTTP_REQUEST);
+        Class<?> requestBuilderClass = Class.forName(HTTP_REQUEST_BUILDER);
+        Class<?> publisherClass = Class.forName(BODY_PUBLISHER);
+        Class<?> publishersClass = Class.forName(BODY_PUBLISHERS);
+        Class<?> responseClass = Class.forName(HTTP_RESPONSE);
+        Class<?> handlerClass = Class.forName(BODY_HANDLER);
+        Class<?> handlersClass = Class.forName(BODY_HANDLERS);
+        Class<?> headersClass = Class.forName(HTTP_HEADERS);
+        Class<?> optionalClass = Class.forName(OPTIONAL);
+        Class<?> durationClass = Class.forName(DURATION);
+
+        Object builder = clientClass.getMethod("newBuilder").invoke(null);
+        Object version = versionClass.getField(VERSION_HTTP_2).get(null);
+        clientBuilderClass.getMethod("version", versionClass).invoke(builder, version);
+        this.client = clientBuilderClass.getMethod("build").invoke(builder);
+        this.bodyHandler = handlersClass.getMethod("ofInputStream").invoke(null);
+
+        this.newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+        this.requestHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+        this.requestMethod = requestBuilderClass.getMethod("method", String.class, publisherClass);
+        this.requestTimeout = requestBuilderClass.getMethod("timeout", durationClass);
+        this.buildRequest = requestBuilderClass.getMethod("build");
+        this.ofMillis = durationClass.getMethod("ofMillis", long.class);
+        this.noBody = publishersClass.getMethod("noBody");
+        this.ofByteArray = publishersClass.getMethod("ofByteArray", byte[].class);
+        this.send = clientClass.getMethod("send", requestClass, handlerClass);
+        this.statusCode = responseClass.getMethod("statusCode");
+        this.body = responseClass.getMethod("body");
+        this.headers = responseClass.getMethod("headers");
+        this.firstValue = headersClass.getMethod("firstValue", String.class);
+        this.orElse = optionalClass.getMethod("orElse", Object.class);
+    }
+
+    /**
+     * Gets the transport instance shared by all HTTP/2 clients.
+     * 
+     * @return the transport instance
+     * @throws WebServiceException
+     *             thrown, if the runtime does not support HTTP/2
+     */
+    public static synchronized Http2Transport getInstance() throws WebServiceException {
+
+        if (instance == null) {
+            try {
+                instance = new Http2Transport();
+                logger.info("HTTP/2 transport initialized");
+            } catch (ClassNotFoundException ex) {
+                throw new WebServiceException("HTTP/2 transport requires a Java 11 runtime, found Java "
+                        + System.getProperty("java.version"));
+            } catch (Exception ex) {
+                throw new WebServiceException("Could not initialize HTTP/2 transport", ex);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Sends a request and waits for the response headers. The response body is not read.
+     * 
+     * @param url
+     *            the target URL
+     * @param method
+     *            the HTTP method
+     * @param headers
+     *            the request headers
+     * @param content
+     *            the request body, or null
+     * @param connectTimeout
+     *            the connect timeout in milliseconds, added to the read timeout
+     * @param readTimeout
+     *            the timeout for the response headers in milliseconds, 0 for no timeout
+     * @return the response
+     * @throws IOException
+     *             thrown, if the communication fails
+     * @throws WebServiceException
+     *             thrown, if the request cannot be created or is interrupted
+     */
+    public Http2Response send(URL url, String method, Map<String, String> headers, byte[] content,
+            int connectTimeout, int readTimeout) throws IOException, WebServiceException {
+
+        try {
+            Object builder = this.newRequestBuilder.invoke(null, url.toURI());
+
+            for (Entry<String, String> header : headers.entrySet()) {
+                this.requestHeader.invoke(builder, header.getKey(), header.getValue());
+            }
+
+            Object publisher = content != null ? this.ofByteArray.invoke(null, content) : this.noBody.invoke(null);
+            this.requestMethod.invoke(builder, method, publisher);
+
+            if (readTimeout > 0) {
+                long timeout = (long) Math.max(connectTimeout, 0) + readTimeout;
+                this.requestTimeout.invoke(builder, this.ofMillis.invoke(null, Long.valueOf(timeout)));
+            }
+            Object request = this.buildRequest.invoke(builder);
+            Object response = this.send.invoke(this.client, request, this.bodyHandler);
+
+            int status = ((Integer) this.statusCode.invoke(response)).intValue();
+            Object headerValues = this.headers.invoke(response);
+
+            return new Http2Response(this, status, headerValues, (InputStream) this.body.invoke(response));
+        } catch (URISyntaxException ex) {
+            throw new WebServiceException("Invalid URL '" + url + "'", ex);
+        } catch (IllegalAccessException ex) {
+            throw new WebServiceException("Could not access HTTP/2 transport", ex);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new WebServiceException("Interrupted while waiting for response of '" + url + "'");
+            }
+            if (cause instanceof Exception) {
+                throw new WebServiceException("HTTP/2 request to '" + url + "' failed", (Exception) cause);
+            }
+            throw new WebServiceException("HTTP/2 request to '" + url + "' failed: " + cause);
+        }
+    }
+
+    /**
+     * Gets the first value of a response header.
+     * 
+     * @param headerValues
+     *            the headers of the response
+     * @param name
+     *            the header name
+     * @return the header value, or null
+     */
+    private String getHeader(Object headerValues, String name) {
+
+        try {
+            return (String) this.orElse.invoke(this.firstValue.invoke(headerValues, name), (Object) null);
+        } catch (IllegalAccessException ex) {
+            return null;
+        } catch (InvocationTargetException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The status, headers and body stream of a HTTP/2 response.
+     */
+    public static class Http2Response {
+
+        private static final String CONTENT_TYPE = "Content-Type";
+
+        private static final String CONTENT_ENCODING = "Content-Encoding";
+
+        private final Http2Transport transport;
+
+        private final int status;
+
+        private final Object headers;
+
+        private final InputStream body;
+
+        Http2Response(Http2Transport transport, int status, Object headers, InputStream body) {
+            this.transport = transport;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * @return the HTTP status code
+         */
+        public int getStatus() {
+            return this.status;
+        }
+
+        /**
+         * @param name
+         *            the header name
+         * @return the first value of the header, or null
+         */
+        public String getHeader(String name) {
+            return this.transport.getHeader(this.headers, name);
+        }
+
+        /**
+         * @return the Content-Type header, or null
+         */
+        public String getContentType() {
+            return this.getHeader(CONTENT_TYPE);
+        }
+
+        /**
+         * @return the Content-Encoding header, or null
+         */
+        public String getContentEncoding() {
+            return this.getHeader(CONTENT_ENCODING);
+        }
+
+        /**
+         * @return the body stream, must be closed by the caller
+         */
+        public InputStream getBody() {
+            return this.body;
+        }
+    }
+
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * HttpConnectionPool
+ * <p>
+ * Shared pool of keep-alive HTTP connections. The number of connections per route (protocol, host
+ * and port) is limited to a configurable maximum. The sockets itself are kept alive by the
+ * keep-alive cache of the JDK, which reuses a socket as soon as the response stream of the
+ * previous exchange has been read to its end and closed. Idle connections of a route are closed by
+ * a reaper after the configured idle timeout.
+ * <p>
+ * The pool does not change JVM-wide settings. The keep-alive cache of the JDK keeps at most
+ * <code>http.maxConnections</code> (default 5) idle sockets per destination; further sockets are
+ * closed after their exchange. To reuse more sockets per route, the system property has to be set
+ * when the JVM is started.
+ * <p>
+ * The pool is shared by all engines of the JVM. Each engine opens the pool with {@link #open()}
+ * and closes it with {@link #close()}; the pool is shut down when the last engine closed it.
+ *
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class HttpConnectionPool {
+
+    private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(
+            HttpConnectionPool.class);
+
+    /**
+     * The default maximum number of connections per route.
+     */
+    public static final int DEFAULT_MAX_PER_ROUTE = 5;
+
+    /**
+     * The default time in milliseconds an idle connection is kept alive.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * The default time in milliseconds to wait for a free connection of a route.
+     */
+    public static final long DEFAULT_LEASE_TIMEOUT = 60000;
+
+    private static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 5;
+
+    private static final long MIN_REAPER_INTERVAL = 1000;
+
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    private static HttpConnectionPool instance;
+
+    private final Map<String, Route> routes = new HashMap<String, Route>();
+
+    private final Map<HttpURLConnection, Route> leased = new IdentityHashMap<HttpURLConnection, Route>();
+
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private long leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+
+    private Timer reaper;
+
+    private int users;
+
+    /**
+     * Constructs a new pool instance.
+     */
+    private HttpConnectionPool() {
+    }
+
+    /**
+     * Gets the pool instance shared by all HTTP based clients.
+     *
+     * @return the pool instance
+     */
+    public static synchronized HttpConnectionPool getInstance() {
+
+        if (instance == null) {
+            instance = new HttpConnectionPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a user of the pool. Every call must be followed by a call to {@link #close()}.
+     */
+    public synchronized void open() {
+        this.users++;
+    }
+
+    /**
+     * Unregisters a user of the pool. The pool is shut down when its last user is closed.
+     */
+    public void close() {
+
+        synchronized (this) {
+            if (this.users > 0) {
+                this.users--;
+            }
+            if (this.users > 0) {
+                return;
+            }
+        }
+        this.shutdown();
+    }
+
+    /**
+     * Configures the pool. Routes already in use keep their maximum until the pool is shut down.
+     * The configuration applies to all users of the pool, the last configuration wins.
+     *
+     * @param maxPerRoute
+     *            the maximum number of concurrent connections per route
+     * @param idleTimeout
+     *            the time in milliseconds an idle connection is kept alive
+     */
+    public synchronized void configure(int maxPerRoute, long idleTimeout) {
+        this.maxPerRoute = maxPerRoute > 0 ? maxPerRoute : DEFAULT_MAX_PER_ROUTE;
+        this.idleTimeout = idleTimeout > 0 ? idleTimeout : DEFAULT_IDLE_TIMEOUT;
+
+        int maxConnections = Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS);
+
+        if (this.maxPerRoute > maxConnections) {
+            logger.info("The JDK keeps at most " + maxConnections + " idle sockets per route, set '"
+                    + MAX_CONNECTIONS_PROPERTY + "' to reuse up to " + this.maxPerRoute + " sockets");
+        }
+        this.restartReaper();
+    }
+
+    /**
+     * Raises the maximum number of connections per route to the given number, so that as many
+     * concurrent requests to one route are not serialized by the pool. The maximum is never lowered,
+     * routes in use are raised as well.
+     *
+     * @param maxPerRoute
+     *            the required number of concurrent connections per route
+     */
+    public synchronized void ensureMaxPerRoute(int maxPerRoute) {
+
+        if (maxPerRoute <= this.maxPerRoute) {
+            return;
+        }
+
+        for (Route route : this.routes.values()) {
+            route.raise(maxPerRoute);
+        }
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Leases a connection to the given URL. Blocks until the route of the URL has a free
+     * connection. Every leased connection must be given back by {@link #release}.
+     *
+     * @param url
+     *            the target URL
+     * @return the connection, not connected yet
+     * @throws IOException
+     *             thrown, if the connection cannot be opened
+     * @throws WebServiceException
+     *             thrown, if no connection becomes available in time
+     */
+    public HttpURLConnection lease(URL url) throws IOException, WebServiceException {
+
+        Route route = this.getRoute(url);
+
+        try {
+            if (!route.permits.tryAcquire(this.leaseTimeout, TimeUnit.MILLISECONDS)) {
+                throw new WebServiceException("No connection available for route '"
+                        + route.key + "' within " + this.leaseTimeout + " ms");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for a connection to '" + route.key + "'");
+        }
+
+        try {
+            URLConnection connection = url.openConnection();
+
+            if (!(connection instanceof HttpURLConnection)) {
+                throw new WebServiceException("Not a HTTP URL: " + url);
+            }
+
+            // The socket of an idle connection is now reused by the JDK
+            route.pollIdle();
+
+            synchronized (this) {
+                this.leased.put((HttpURLConnection) connection, route);
+            }
+            return (HttpURLConnection) connection;
+        } catch (IOException ex) {
+            route.permits.release();
+            throw ex;
+        } catch (WebServiceException ex) {
+            route.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gives a leased connection back to the pool. The response stream must have been read and
+     * closed by the caller, otherwise the connection is not reusable and will be closed.
+     *
+     * @param connection
+     *            the connection to release, may be null
+     * @param reusable
+     *            true, if the response has been read completely and the socket may be reused
+     */
+    public void release(HttpURLConnection connection, boolean reusable) {
+
+        if (connection == null) {
+            return;
+        }
+
+        Route route;
+
+        synchronized (this) {
+            route = this.leased.remove(connection);
+        }
+
+        if (route == null) {
+            connection.disconnect();
+            return;
+        }
+
+        if (reusable) {
+            route.offerIdle(connection);
+        } else {
+            connection.disconnect();
+        }
+        route.permits.release();
+    }
+
+    /**
+     * Closes all connections which have been idle for longer than the given time.
+     *
+     * @param idleTime
+     *            the idle time in milliseconds
+     */
+    public void closeIdleConnections(long idleTime) {
+
+        long deadline = System.currentTimeMillis() - idleTime;
+
+        for (Route route : this.getRoutes()) {
+            route.closeIdle(deadline);
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the idle connection reaper. Routes with leased
+     * connections are kept, so that their limit still applies. The pool is reactivated on the next
+     * call to {@link #configure(int, long)} or {@link #lease(URL)}.
+     */
+    public void shutdown() {
+
+        synchronized (this) {
+            if (this.reaper != null) {
+                this.reaper.cancel();
+                this.reaper = null;
+            }
+        }
+        this.closeIdleConnections(0);
+
+        synchronized (this) {
+            Iterator<Route> it = this.routes.values().iterator();
+
+            while (it.hasNext()) {
+                if (!this.leased.containsValue(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining content of the given stream and closes it, so that the underlying socket
+     * may be reused.
+     *
+     * @param in
+     *            the stream to drain, may be null
+     * @return true, if the stream has been read to its end
+     */
+    public static boolean drain(InputStream in) {
+
+        if (in == null) {
+            return true;
+        }
+
+        try {
+            byte[] buf = new byte[4096];
+            int total = 0;
+            int c;
+
+            while ((c = in.read(buf)) != -1) {
+                total += c;
+
+                if (total > DRAIN_LIMIT) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // Stream is abandoned
+            }
+        }
+    }
+
+    private synchronized Route getRoute(URL url) {
+
+        String key = getRouteKey(url);
+        Route route = this.routes.get(key);
+
+        if (route == null) {
+            route = new Route(key, this.maxPerRoute);
+            this.routes.put(key, route);
+
+            if (this.reaper == null) {
+                this.restartReaper();
+            }
+        }
+        return route;
+    }
+
+    private synchronized Route[] getRoutes() {
+        return this.routes.values().toArray(new Route[this.routes.size()]);
+    }
+
+    private synchronized void restartReaper() {
+
+        if (this.reaper != null) {
+            this.reaper.cancel();
+        }
+
+        final long timeout = this.idleTimeout;
+        long interval = Math.max(MIN_REAPER_INTERVAL, timeout / 2);
+
+        this.reaper = new Timer("HttpConnectionPool-Reaper", true);
+        this.reaper.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                closeIdleConnections(timeout);
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Creates the key of the route (protocol, host and port) of the given URL.
+     *
+     * @param url
+     *            the URL
+     * @return the route key
+     */
+    static String getRouteKey(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+    }
+
+    /**
+     * Connections of one protocol, host and port.
+     */
+    private static class Route {
+
+        private final String key;
+
+        private int maxIdle;
+
+        private final Semaphore permits;
+
+        private final LinkedList<IdleConnection> idle = new LinkedList<IdleConnection>();
+
+        Route(String key, int maxPerRoute) {
+            this.key = key;
+            this.maxIdle = maxPerRoute;
+            this.permits = new Semaphore(maxPerRoute, true);
+        }
+
+        synchronized void raise(int maxPerRoute) {
+
+            if (maxPerRoute > this.maxIdle) {
+                this.permits.release(maxPerRoute - this.maxIdle);
+                this.maxIdle = maxPerRoute;
+            }
+        }
+
+        synchronized void pollIdle() {
+            this.idle.pollLast();
+        }
+
+        void offerIdle(HttpURLConnection connection) {
+
+            HttpURLConnection evicted = null;
+
+            synchronized (this) {
+                this.idle.addLast(new IdleConnection(connection));
+
+                if (this.idle.size() > this.maxIdle) {
+                    evicted = this.idle.removeFirst().connection;
+                }
+            }
+
+            if (evicted != null) {
+                evicted.disconnect();
+            }
+        }
+
+        void closeIdle(long deadline) {
+
+            LinkedList<HttpURLConnection> expired = new LinkedList<HttpURLConnection>();
+
+            synchronized (this) {
+                Iterator<IdleConnection> it = this.idle.iterator();
+
+                while (it.hasNext()) {
+                    IdleConnection entry = it.next();
+
+                    if (entry.since <= deadline) {
+                        expired.add(entry.connection);
+                        it.remove();
+                    }
+                }
+            }
+
+            for (HttpURLConnection connection : expired) {
+                // Closes the idle keep-alive socket of this route
+                connection.disconnect();
+            }
+
+            if (!expired.isEmpty()) {
+                logger.debug("Closed " + expired.size() + " idle connection(s) to '" + this.key + "'");
+            }
+        }
+    }
+
+    /**
+     * A released connection with the time it became idle.
+     */
+    private static class IdleConnection {
+
+        private final HttpURLConnection connection;
+
+        private final long since;
+
+        IdleConnection(HttpURLConnection connection) {
+            this.connection = connection;
+            this.since = System.currentTimeMillis();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.http;
+
+/**
+ * HttpVersion
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public enum HttpVersion {
+
+    /**
+     * HTTP/1.1 over {@link java.net.HttpURLConnection}, one request per connection at a time.
+     */
+    HTTP_1_1("HTTP/1.1"),
+
+    /**
+     * HTTP/2 with multiplexed requests over one connection per host. Cleartext URLs are upgraded
+     * to h2c.
+     */
+    HTTP_2("HTTP/2");
+
+    private String protocol;
+
+    private HttpVersion(String protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Gets the protocol name of the version, e.g. HTTP/1.1.
+     * 
+     * @return the protocol name
+     */
+    public String getProtocol() {
+        return this.protocol;
+    }
+
+    /**
+     * Gets the version matching the given name or protocol name, e.g. HTTP_2 or HTTP/2.
+     * 
+     * @param value
+     *            the name to resolve
+     * @return the matching version or null, if the value is empty or unknown
+     */
+    public static HttpVersion getVersion(String value) {
+
+        if (value == null) {
+            return null;
+        }
+
+        String name = value.trim();
+
+        for (HttpVersion version : values()) {
+            if (version.name().equalsIgnoreCase(name) || version.protocol.equalsIgnoreCase(name)) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.mime;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
+
+/**
+ * AttachmentStore
+ * <p>
+ * Stores received attachments to temporary files. The files are referenced by the results of the
+ * test steps, so each sub-engine owns a store and deletes its files by {@link #deleteFiles()} in
+ * its cleanup. The files of other engines are not affected. Attachments received by clients not
+ * owned by an engine are stored by the {@link #getDefault() default store}, whose files are deleted
+ * when the JVM exits.
+ *
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class AttachmentStore {
+
+    private static final String TEMP_FILE_PREFIX = "nabucco-attachment";
+
+    private static final String TEMP_FILE_SUFFIX = ".bin";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static AttachmentStore defaultStore;
+
+    private final List<File> files = new ArrayList<File>();
+
+    private final boolean deleteOnExit;
+
+    /**
+     * Creates a new store owned by the caller, who deletes its files.
+     */
+    public AttachmentStore() {
+        this(false);
+    }
+
+    private AttachmentStore(boolean deleteOnExit) {
+        this.deleteOnExit = deleteOnExit;
+    }
+
+    /**
+     * Gets the store of attachments received by clients not owned by an engine.
+     *
+     * @return the default store
+     */
+    public static synchronized AttachmentStore getDefault() {
+
+        if (defaultStore == null) {
+            defaultStore = new AttachmentStore(true);
+        }
+        return defaultStore;
+    }
+
+    /**
+     * Stores the content of the given stream to a temporary file of this store.
+     *
+     * @param contentId
+     *            the content id of the attachment
+     * @param contentType
+     *            the content type of the attachment
+     * @param content
+     *            the content, not closed
+     * @return the attachment of the temporary file
+     * @throws IOException
+     *             thrown, if the content cannot be stored
+     */
+    public SoapAttachment store(String contentId, String contentType, InputStream content) throws IOException {
+
+        File file = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+
+        if (this.deleteOnExit) {
+            file.deleteOnExit();
+        } else {
+            synchronized (this.files) {
+                this.files.add(file);
+            }
+        }
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int c;
+
+            while ((c = content.read(buf)) != -1) {
+                out.write(buf, 0, c);
+            }
+        } finally {
+            out.close();
+        }
+        return new SoapAttachment(contentId != null ? contentId : file.getName(), contentType, file);
+    }
+
+    /**
+     * Deletes the temporary files of all attachments stored by this store so far.
+     *
+     * @return the number of files that could not be deleted
+     */
+    public int deleteFiles() {
+
+        List<File> stored;
+
+        synchronized (this.files) {
+            stored = new ArrayList<File>(this.files);
+            this.files.clear();
+        }
+
+        int failed = 0;
+
+        for (File file : stored) {
+            if (file.exists() && !file.delete()) {
+                file.deleteOnExit();
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+}
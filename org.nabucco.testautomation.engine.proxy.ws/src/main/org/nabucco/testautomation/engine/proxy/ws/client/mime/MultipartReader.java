@@ -0,0 +1,346 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.mime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MultipartReader
+ * <p>
+ * Streaming reader of a multipart/related message. The parts are read one after another directly
+ * from the underlying stream, so that attachments can be stored to temporary files by an
+ * {@link AttachmentStore} without being buffered in memory.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class MultipartReader {
+
+    private static final String BOUNDARY = "boundary";
+
+    private static final String START = "start";
+
+    private static final String HEADER_CHARSET = "ISO-8859-1";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PushbackInputStream in;
+
+    private final byte[] delimiter;
+
+    private final String start;
+
+    private PartInputStream current;
+
+    private boolean finished;
+
+    /**
+     * Creates a reader of the given message.
+     * 
+     * @param in
+     *            the stream of the message body
+     * @param contentType
+     *            the Content-Type header of the message
+     * @throws IOException
+     *             thrown, if the content type declares no boundary
+     */
+    public MultipartReader(InputStream in, String contentType) throws IOException {
+
+        String boundary = getParameter(contentType, BOUNDARY);
+
+        if (boundary == null || boundary.length() == 0) {
+            throw new IOException("No boundary declared by Content-Type: " + contentType);
+        }
+
+        this.delimiter = ("\r\n--" + boundary).getBytes(HEADER_CHARSET);
+        this.start = stripAngleBrackets(getParameter(contentType, START));
+        this.in = new PushbackInputStream(in, this.delimiter.length + 2);
+
+        // The first delimiter is not preceded by a line break
+        this.in.unread(new byte[] { '\r', '\n' });
+        this.current = new PartInputStream();
+    }
+
+    /**
+     * Checks whether the given content type declares a multipart/related message.
+     * 
+     * @param contentType
+     *            the Content-Type header, may be null
+     * @return true, for multipart/related
+     */
+    public static boolean isMultipart(String contentType) {
+        return contentType != null
+                && contentType.trim().toLowerCase().startsWith(MultipartWriter.MULTIPART_RELATED);
+    }
+
+    /**
+     * Gets the next part. The content of the previous part is skipped, if not read completely.
+     * 
+     * @return the next part, or null if all parts have been read
+     * @throws IOException
+     *             thrown, if the message cannot be read or is malformed
+     */
+    public Part next() throws IOException {
+
+        if (this.finished) {
+            return null;
+        }
+
+        // Skip the rest of the previous part (or the preamble)
+        byte[] buf = new byte[BUFFER_SIZE];
+
+        while (this.current.read(buf) != -1) {
+            continue;
+        }
+
+        // Close delimiter or line break after the boundary
+        int first = this.in.read();
+        int second = this.in.read();
+
+        if (first == '-' && second == '-') {
+            this.finished = true;
+            return null;
+        }
+        if (first == -1 || second == -1) {
+            throw new EOFException("Unexpected end of multipart message");
+        }
+        if (first != '\r' || second != '\n') {
+            this.in.unread(second);
+            this.in.unread(first);
+            this.readLine();
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+
+        while ((line = this.readLine()).length() > 0) {
+            int index = line.indexOf(':');
+
+            if (index > 0) {
+                headers.put(line.substring(0, index).trim().toLowerCase(), line.substring(index + 1).trim());
+            }
+        }
+
+        String contentId = stripAngleBrackets(headers.get("content-id"));
+        this.current = new PartInputStream();
+        return new Part(contentId, headers, this.current);
+    }
+
+    /**
+     * Checks whether the given part is the root part of the message.
+     * 
+     * @param part
+     *            the part
+     * @param index
+     *            the index of the part within the message
+     * @return true, if the part is the SOAP envelope
+     */
+    public boolean isRoot(Part part, int index) {
+
+        if (this.start == null) {
+            return index == 0;
+        }
+        return this.start.equals(part.getContentId());
+    }
+
+    private String readLine() throws IOException {
+
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+
+        while ((c = this.in.read()) != -1) {
+
+            if (c == '\r') {
+                int next = this.in.read();
+
+                if (next == '\n') {
+                    break;
+                }
+                if (next != -1) {
+                    this.in.unread(next);
+                }
+            }
+            line.write(c);
+        }
+
+        if (c == -1) {
+            throw new EOFException("Unexpected end of multipart message");
+        }
+        return new String(line.toByteArray(), HEADER_CHARSET);
+    }
+
+    private static String getParameter(String contentType, String name) {
+
+        if (contentType == null) {
+            return null;
+        }
+
+        for (String param : contentType.split(";")) {
+            int index = param.indexOf('=');
+
+            if (index > 0 && param.substring(0, index).trim().equalsIgnoreCase(name)) {
+                String value = param.substring(index + 1).trim();
+
+                if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String stripAngleBrackets(String value) {
+
+        if (value != null && value.length() > 1 && value.startsWith("<") && value.endsWith(">")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * A part of the message. The content must be read before the next part is requested.
+     */
+    public static class Part {
+
+        private final String contentId;
+
+        private final Map<String, String> headers;
+
+        private final InputStream content;
+
+        Part(String contentId, Map<String, String> headers, InputStream content) {
+            this.contentId = contentId;
+            this.headers = headers;
+            this.content = content;
+        }
+
+        /**
+         * @return the content id without angle brackets, or null
+         */
+        public String getContentId() {
+            return this.contentId;
+        }
+
+        /**
+         * @return the content type, or null
+         */
+        public String getContentType() {
+            return this.getHeader("Content-Type");
+        }
+
+        /**
+         * @param name
+         *            the case-insensitive header name
+         * @return the header value, or null
+         */
+        public String getHeader(String name) {
+            return this.headers.get(name.toLowerCase());
+        }
+
+        /**
+         * @return the stream of the content, ending at the next delimiter
+         */
+        public InputStream getInputStream() {
+            return this.content;
+        }
+    }
+
+    /**
+     * Stream of the content of a part, ending in front of the next delimiter.
+     */
+    private class PartInputStream extends InputStream {
+
+        private final byte[] match = new byte[delimiter.length];
+
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+
+            if (this.ended) {
+                return -1;
+            }
+
+            int c = in.read();
+
+            if (c == -1) {
+                throw new EOFException("Unexpected end of multipart message");
+            }
+            if (c != delimiter[0]) {
+                return c;
+            }
+
+            this.match[0] = (byte) c;
+            int matched = 1;
+
+            while (matched < delimiter.length) {
+                int next = in.read();
+
+                if (next == -1) {
+                    throw new EOFException("Unexpected end of multipart message");
+                }
+                this.match[matched++] = (byte) next;
+
+                if (next != (delimiter[matched - 1] & 0xFF)) {
+                    // Rescan everything but the first byte
+                    in.unread(this.match, 1, matched - 1);
+                    return c;
+                }
+            }
+
+            this.ended = true;
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (len == 0) {
+                return 0;
+            }
+
+            int count = 0;
+
+            while (count < len) {
+                int c = this.read();
+
+                if (c == -1) {
+                    break;
+                }
+                b[off + count++] = (byte) c;
+
+                // Return what has been read instead of blocking for more data
+                if (in.available() == 0) {
+                    break;
+                }
+            }
+            return count > 0 ? count : -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The parts share the stream of the message
+        }
+    }
+
+}
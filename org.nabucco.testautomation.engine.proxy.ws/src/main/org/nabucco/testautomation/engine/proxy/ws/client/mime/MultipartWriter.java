@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.mime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
+
+/**
+ * MultipartWriter
+ * <p>
+ * Writes a multipart/related message of a SOAP envelope and its attachments, either as SOAP with
+ * attachments or as MTOM/XOP package. The envelope is the root part, the attachments are streamed
+ * as binary parts without any transfer encoding.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class MultipartWriter {
+
+    /**
+     * The media type of multipart messages.
+     */
+    public static final String MULTIPART_RELATED = "multipart/related";
+
+    /**
+     * The media type of the root part of a MTOM/XOP package.
+     */
+    public static final String XOP_XML = "application/xop+xml";
+
+    private static final String CRLF = "\r\n";
+
+    private static final String DASHES = "--";
+
+    private static final String ROOT_ID = "root.message@nabucco.org";
+
+    private static final String HEADER_CHARSET = "ISO-8859-1";
+
+    private final String boundary = "MIMEBoundary_" + UUID.randomUUID().toString().replace("-", "");
+
+    private final String rootType;
+
+    private final String rootContentType;
+
+    private final boolean mtom;
+
+    /**
+     * Creates a new writer.
+     * 
+     * @param rootContentType
+     *            the content type of the SOAP envelope, e.g. text/xml;charset=UTF-8
+     * @param mtom
+     *            true for a MTOM/XOP package, false for SOAP with attachments
+     */
+    public MultipartWriter(String rootContentType, boolean mtom) {
+        int index = rootContentType.indexOf(';');
+        this.rootType = (index < 0 ? rootContentType : rootContentType.substring(0, index)).trim();
+        this.rootContentType = rootContentType;
+        this.mtom = mtom;
+    }
+
+    /**
+     * Gets the value of the Content-Type header of the message.
+     * 
+     * @return the multipart content type
+     */
+    public String getContentType() {
+
+        StringBuilder contentType = new StringBuilder(MULTIPART_RELATED);
+        contentType.append("; boundary=\"").append(this.boundary).append('"');
+        contentType.append("; start=\"<").append(ROOT_ID).append(">\"");
+
+        if (this.mtom) {
+            contentType.append("; type=\"").append(XOP_XML).append('"');
+            contentType.append("; start-info=\"").append(this.rootType).append('"');
+        } else {
+            contentType.append("; type=\"").append(this.rootType).append('"');
+        }
+        return contentType.toString();
+    }
+
+    /**
+     * Writes the headers of the root part. The envelope must be written to the stream afterwards.
+     * 
+     * @param out
+     *            the stream of the message
+     * @throws IOException
+     *             thrown, if the headers cannot be written
+     */
+    public void startRoot(OutputStream out) throws IOException {
+
+        String contentType = this.mtom ? XOP_XML + "; charset=UTF-8; type=\"" + this.rootType + "\""
+                : this.rootContentType;
+
+        this.writeHeaders(out, ROOT_ID, contentType, "8bit");
+    }
+
+    /**
+     * Writes an attachment as binary part.
+     * 
+     * @param out
+     *            the stream of the message
+     * @param attachment
+     *            the attachment to stream
+     * @throws IOException
+     *             thrown, if the attachment cannot be read or written
+     */
+    public void writeAttachment(OutputStream out, SoapAttachment attachment) throws IOException {
+        this.writeHeaders(out, attachment.getContentId(), attachment.getContentType(), "binary");
+        attachment.writeTo(out);
+    }
+
+    /**
+     * Writes the closing delimiter of the message.
+     * 
+     * @param out
+     *            the stream of the message
+     * @throws IOException
+     *             thrown, if the delimiter cannot be written
+     */
+    public void finish(OutputStream out) throws IOException {
+        write(out, CRLF + DASHES + this.boundary + DASHES + CRLF);
+        out.flush();
+    }
+
+    private void writeHeaders(OutputStream out, String contentId, String contentType, String transferEncoding)
+            throws IOException {
+
+        StringBuilder headers = new StringBuilder();
+        headers.append(CRLF).append(DASHES).append(this.boundary).append(CRLF);
+        headers.append("Content-Type: ").append(contentType).append(CRLF);
+        headers.append("Content-Transfer-Encoding: ").append(transferEncoding).append(CRLF);
+        headers.append("Content-ID: <").append(contentId).append('>').append(CRLF);
+        headers.append(CRLF);
+        write(out, headers.toString());
+    }
+
+    private static void write(OutputStream out, String value) throws IOException {
+        out.write(value.getBytes(HEADER_CHARSET));
+    }
+
+}
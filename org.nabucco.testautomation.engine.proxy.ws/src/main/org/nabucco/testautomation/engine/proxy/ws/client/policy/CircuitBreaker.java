@@ -0,0 +1,325 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.policy;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.proxy.ws.exception.CircuitOpenException;
+import org.nabucco.testautomation.engine.proxy.ws.exception.HttpStatusException;
+
+/**
+ * CircuitBreaker
+ * <p>
+ * Circuit breaker per endpoint (URL without query). A closed circuit lets all calls through and
+ * opens, when the failure rate of the recent calls reaches the threshold. An open circuit rejects
+ * all calls with a {@link CircuitOpenException} until the cool-down has elapsed. Then the circuit
+ * is half-open and lets a single probe through, which closes the circuit on success and opens it
+ * again on failure.
+ * <p>
+ * Failures are errors of the transport (connect, read timeout, I/O) and server errors (5xx). A
+ * response of the endpoint, including client errors and SOAP faults, counts as success.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class CircuitBreaker {
+
+    private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(CircuitBreaker.class);
+
+    /**
+     * The state of a circuit.
+     */
+    public static enum State {
+
+        /** Calls are let through. */
+        CLOSED,
+
+        /** Calls are rejected. */
+        OPEN,
+
+        /** A single probe is let through. */
+        HALF_OPEN;
+    }
+
+    /**
+     * The number of recent calls the failure rate is calculated of.
+     */
+    public static final int WINDOW_SIZE = 20;
+
+    /**
+     * The minimum number of recent calls required to open a circuit.
+     */
+    public static final int MIN_CALLS = 10;
+
+    /**
+     * The default failure rate in percent opening a circuit.
+     */
+    public static final int DEFAULT_FAILURE_RATE = 50;
+
+    /**
+     * The default time in milliseconds an open circuit rejects calls.
+     */
+    public static final long DEFAULT_COOL_DOWN = 30000;
+
+    private static CircuitBreaker instance;
+
+    private final Map<String, Circuit> circuits = new HashMap<String, Circuit>();
+
+    private volatile int failureRate = DEFAULT_FAILURE_RATE;
+
+    private volatile long coolDown = DEFAULT_COOL_DOWN;
+
+    /**
+     * Constructs a new circuit breaker instance.
+     */
+    private CircuitBreaker() {
+    }
+
+    /**
+     * Gets the circuit breaker shared by all clients.
+     * 
+     * @return the circuit breaker instance
+     */
+    public static synchronized CircuitBreaker getInstance() {
+
+        if (instance == null) {
+            instance = new CircuitBreaker();
+        }
+        return instance;
+    }
+
+    /**
+     * Configures the circuit breaker.
+     * 
+     * @param failureRate
+     *            the failure rate in percent opening a circuit, null for the default
+     * @param coolDown
+     *            the time in milliseconds an open circuit rejects calls, null for the default
+     */
+    public void configure(Integer failureRate, Long coolDown) {
+        this.failureRate = failureRate != null ? failureRate.intValue() : DEFAULT_FAILURE_RATE;
+        this.coolDown = coolDown != null ? coolDown.longValue() : DEFAULT_COOL_DOWN;
+    }
+
+    /**
+     * Acquires the permission to call an endpoint. Every acquired call must be completed by
+     * {@link #onSuccess(String)} or {@link #onError(String, Throwable)}.
+     * 
+     * @param endpoint
+     *            the endpoint to call
+     * @throws CircuitOpenException
+     *             thrown, if the circuit of the endpoint is open
+     */
+    public void acquire(String endpoint) throws CircuitOpenException {
+        this.getCircuit(endpoint).acquire(endpoint);
+    }
+
+    /**
+     * Records a successful call of an endpoint.
+     * 
+     * @param endpoint
+     *            the called endpoint
+     */
+    public void onSuccess(String endpoint) {
+        this.getCircuit(endpoint).onSuccess(endpoint);
+    }
+
+    /**
+     * Records a call of an endpoint that completed with an error. Only failures of the endpoint are
+     * counted, other errors are recorded as success.
+     * 
+     * @param endpoint
+     *            the called endpoint
+     * @param error
+     *            the error of the call
+     */
+    public void onError(String endpoint, Throwable error) {
+
+        if (isFailure(error)) {
+            this.getCircuit(endpoint).onFailure(endpoint);
+        } else {
+            this.getCircuit(endpoint).onSuccess(endpoint);
+        }
+    }
+
+    /**
+     * Gets the state of the circuit of an endpoint.
+     * 
+     * @param endpoint
+     *            the endpoint
+     * @return the state of the circuit
+     */
+    public State getState(String endpoint) {
+        return this.getCircuit(endpoint).getState();
+    }
+
+    /**
+     * Removes the circuits of all endpoints.
+     */
+    public synchronized void clear() {
+        this.circuits.clear();
+    }
+
+    /**
+     * Checks whether the given error is a failure of the endpoint.
+     * 
+     * @param error
+     *            the error
+     * @return true, if the endpoint is unreachable, did not respond in time or reported a server
+     *         error
+     */
+    public static boolean isFailure(Throwable error) {
+
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+
+            if (cause instanceof HttpStatusException) {
+                return ((HttpStatusException) cause).isServerError();
+            }
+
+            // SOAP faults are remote exceptions, their cause is checked only
+            if (cause instanceof IOException && !(cause instanceof RemoteException)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized Circuit getCircuit(String endpoint) {
+
+        Circuit circuit = this.circuits.get(endpoint);
+
+        if (circuit == null) {
+            circuit = new Circuit();
+            this.circuits.put(endpoint, circuit);
+        }
+        return circuit;
+    }
+
+    /**
+     * The circuit of a single endpoint.
+     */
+    private class Circuit {
+
+        private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+
+        private int count;
+
+        private int next;
+
+        private int failures;
+
+        private State state = State.CLOSED;
+
+        private long openedAt;
+
+        private boolean probing;
+
+        synchronized State getState() {
+            return this.state;
+        }
+
+        synchronized void acquire(String endpoint) throws CircuitOpenException {
+
+            switch (this.state) {
+
+            case OPEN:
+                long remaining = this.openedAt + coolDown - System.currentTimeMillis();
+
+                if (remaining > 0) {
+                    throw new CircuitOpenException(endpoint, remaining);
+                }
+                logger.info("Circuit of endpoint '" + endpoint + "' is half-open, sending probe");
+                this.state = State.HALF_OPEN;
+                this.probing = true;
+                break;
+
+            case HALF_OPEN:
+                if (this.probing) {
+                    throw new CircuitOpenException(endpoint, 0);
+                }
+                this.probing = true;
+                break;
+
+            default:
+                break;
+            }
+        }
+
+        synchronized void onSuccess(String endpoint) {
+
+            if (this.state == State.CLOSED) {
+                this.add(false);
+                return;
+            }
+
+            if (this.state == State.HALF_OPEN) {
+                logger.info("Circuit of endpoint '" + endpoint + "' is closed");
+                this.reset(State.CLOSED);
+            }
+        }
+
+        synchronized void onFailure(String endpoint) {
+
+            if (this.state == State.CLOSED) {
+                this.add(true);
+
+                if (this.count < MIN_CALLS || this.failures * 100 < failureRate * this.count) {
+                    return;
+                }
+                logger.warning("Circuit of endpoint '" + endpoint + "' is open after " + this.failures
+                        + " failures of " + this.count + " calls, rejecting calls for " + coolDown + " ms");
+            } else if (this.state == State.HALF_OPEN) {
+                logger.warning("Probe of endpoint '" + endpoint + "' failed, circuit is open again");
+            } else {
+                return;
+            }
+
+            this.reset(State.OPEN);
+            this.openedAt = System.currentTimeMillis();
+        }
+
+        private void add(boolean failure) {
+
+            if (this.count == WINDOW_SIZE && this.outcomes[this.next]) {
+                this.failures--;
+            }
+
+            this.outcomes[this.next] = failure;
+            this.next = (this.next + 1) % WINDOW_SIZE;
+
+            if (failure) {
+                this.failures++;
+            }
+            if (this.count < WINDOW_SIZE) {
+                this.count++;
+            }
+        }
+
+        private void reset(State state) {
+            this.state = state;
+            this.probing = false;
+            this.count = 0;
+            this.next = 0;
+            this.failures = 0;
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.policy;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * EndpointStatistics
+ * <p>
+ * Rolling latency statistics per endpoint (URL without query). For each endpoint the latencies of
+ * the most recent successful calls are kept.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class EndpointStatistics {
+
+    /**
+     * The number of latencies kept per endpoint.
+     */
+    public static final int WINDOW_SIZE = 256;
+
+    /**
+     * The minimum number of latencies required for percentiles.
+     */
+    public static final int MIN_SAMPLES = 20;
+
+    /**
+     * The percentile of the latencies adaptive timeouts are derived from.
+     */
+    public static final double TIMEOUT_PERCENTILE = 0.99;
+
+    /**
+     * The minimum adaptive timeout in milliseconds.
+     */
+    public static final long MIN_ADAPTIVE_TIMEOUT = 1000;
+
+    private static EndpointStatistics instance;
+
+    private final Map<String, LatencyWindow> endpoints = new HashMap<String, LatencyWindow>();
+
+    /**
+     * Constructs a new statistics instance.
+     */
+    private EndpointStatistics() {
+    }
+
+    /**
+     * Gets the statistics instance shared by all clients.
+     * 
+     * @return the statistics instance
+     */
+    public static synchronized EndpointStatistics getInstance() {
+
+        if (instance == null) {
+            instance = new EndpointStatistics();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the endpoint of the given URL, which is the URL without query and fragment.
+     * 
+     * @param url
+     *            the URL
+     * @return the endpoint
+     */
+    public static String getEndpoint(URL url) {
+        return url.getProtocol().toLowerCase() + "://" + url.getAuthority() + url.getPath();
+    }
+
+    /**
+     * Records the latency of a successful call.
+     * 
+     * @param endpoint
+     *            the endpoint called
+     * @param latency
+     *            the latency in milliseconds
+     */
+    public void record(String endpoint, long latency) {
+        this.getWindow(endpoint, true).add(latency);
+    }
+
+    /**
+     * Gets the given percentile of the recent latencies of an endpoint.
+     * 
+     * @param endpoint
+     *            the endpoint
+     * @param percentile
+     *            the percentile between 0 and 1, e.g. 0.95
+     * @return the latency in milliseconds, or -1 if less than {@link #MIN_SAMPLES} latencies are
+     *         recorded
+     */
+    public long getPercentile(String endpoint, double percentile) {
+
+        LatencyWindow window = this.getWindow(endpoint, false);
+
+        if (window == null) {
+            return -1;
+        }
+        return window.getPercentile(percentile);
+    }
+
+    /**
+     * Gets the adaptive timeout of an endpoint, which is a multiple of its 99th percentile latency
+     * but at least {@link #MIN_ADAPTIVE_TIMEOUT}.
+     * 
+     * @param endpoint
+     *            the endpoint
+     * @param factor
+     *            the multiple of the percentile latency
+     * @return the timeout in milliseconds, or -1 if less than {@link #MIN_SAMPLES} latencies are
+     *         recorded
+     */
+    public long getAdaptiveTimeout(String endpoint, double factor) {
+
+        long latency = this.getPercentile(endpoint, TIMEOUT_PERCENTILE);
+
+        if (latency < 0) {
+            return -1;
+        }
+        return Math.max(MIN_ADAPTIVE_TIMEOUT, (long) Math.ceil(latency * factor));
+    }
+
+    /**
+     * Removes the statistics of all endpoints.
+     */
+    public synchronized void clear() {
+        this.endpoints.clear();
+    }
+
+    private synchronized LatencyWindow getWindow(String endpoint, boolean create) {
+
+        LatencyWindow window = this.endpoints.get(endpoint);
+
+        if (window == null && create) {
+            window = new LatencyWindow();
+            this.endpoints.put(endpoint, window);
+        }
+        return window;
+    }
+
+    /**
+     * Ring buffer of the most recent latencies.
+     */
+    private static class LatencyWindow {
+
+        private final long[] samples = new long[WINDOW_SIZE];
+
+        private int count;
+
+        private int next;
+
+        synchronized void add(long latency) {
+            this.samples[this.next] = latency;
+            this.next = (this.next + 1) % WINDOW_SIZE;
+
+            if (this.count < WINDOW_SIZE) {
+                this.count++;
+            }
+        }
+
+        long getPercentile(double percentile) {
+
+            long[] sorted;
+
+            synchronized (this) {
+                if (this.count < MIN_SAMPLES) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(this.samples, this.count);
+            }
+
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+}
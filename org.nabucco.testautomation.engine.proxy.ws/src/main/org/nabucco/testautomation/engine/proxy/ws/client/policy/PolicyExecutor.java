@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.policy;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.proxy.ws.client.RetryPolicy;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * PolicyExecutor
+ * <p>
+ * Executes the attempts of a webservice call according to a {@link RetryPolicy} and records their
+ * latencies in the {@link EndpointStatistics}. Every attempt passes the {@link CircuitBreaker} of
+ * the endpoint.
+ * <p>
+ * Hedged attempts are executed on a dedicated bounded executor, not on the shared
+ * {@link WebServiceExecutor} whose threads may be blocked waiting for the hedged call. A cancelled
+ * attempt is interrupted, which does not abort blocking socket IO: the losing attempt runs until
+ * its response is read or its read timeout expires, then releases its connection.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class PolicyExecutor {
+
+    private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(PolicyExecutor.class);
+
+    /**
+     * The percentile of the endpoint latency after which a hedged request is sent.
+     */
+    public static final double HEDGING_PERCENTILE = 0.95;
+
+    /**
+     * The maximum number of concurrently executed hedged attempts. Further attempts are executed by
+     * the calling thread.
+     */
+    public static final int MAX_HEDGING_THREADS = 64;
+
+    private static final String THREAD_NAME = "WebServiceClient-Hedging-";
+
+    private static WebServiceExecutor hedgingExecutor;
+
+    /**
+     * Constructs a new executor instance.
+     */
+    private PolicyExecutor() {
+    }
+
+    /**
+     * Executes the given attempt until it succeeds, the error is not retryable or the maximum number
+     * of attempts is reached.
+     * 
+     * @param url
+     *            the called URL
+     * @param policy
+     *            the retry policy, null for {@link RetryPolicy#NONE}
+     * @param idempotent
+     *            true, if the request is idempotent by its method
+     * @param attempt
+     *            a single attempt of the call
+     * @return the result of the successful attempt
+     * @throws Exception
+     *             the error of the last attempt, or a CircuitOpenException if the circuit of the
+     *             endpoint is open
+     */
+    public static <T> T execute(URL url, RetryPolicy policy, boolean idempotent, Callable<T> attempt)
+            throws Exception {
+
+        RetryPolicy retryPolicy = policy != null ? policy : RetryPolicy.NONE;
+        String endpoint = EndpointStatistics.getEndpoint(url);
+        boolean hedging = isHedging(retryPolicy, idempotent);
+        CircuitBreaker circuitBreaker = CircuitBreaker.getInstance();
+
+        for (int attemptNo = 1;; attemptNo++) {
+
+            // Fails fast while the endpoint is down, also between retries
+            circuitBreaker.acquire(endpoint);
+
+            try {
+                T result = hedging ? executeHedged(endpoint, attempt) : executeTimed(endpoint, attempt);
+                circuitBreaker.onSuccess(endpoint);
+                return result;
+            } catch (Error err) {
+                // Completes the acquired call, a half-open circuit would otherwise keep probing
+                circuitBreaker.onError(endpoint, err);
+                throw err;
+            } catch (Exception ex) {
+                circuitBreaker.onError(endpoint, ex);
+
+                if (attemptNo >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(ex, idempotent)) {
+                    throw ex;
+                }
+
+                long backoff = retryPolicy.getBackoff(attemptNo);
+                logger.warning("Attempt " + attemptNo + " of " + retryPolicy.getMaxAttempts() + " to '" + endpoint
+                        + "' failed (" + ex.getMessage() + "), retrying in " + backoff + " ms");
+
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the attempts of a call are hedged.
+     * 
+     * @param policy
+     *            the retry policy, null for {@link RetryPolicy#NONE}
+     * @param idempotent
+     *            true, if the request is idempotent by its method
+     * @return true, if duplicate attempts may be sent concurrently
+     */
+    public static boolean isHedging(RetryPolicy policy, boolean idempotent) {
+        return policy != null && policy.isHedging() && (idempotent || policy.isIdempotent());
+    }
+
+    /**
+     * Shuts the executor of hedged attempts down. The next hedged call creates a new executor.
+     */
+    public static synchronized void shutdown() {
+
+        if (hedgingExecutor != null) {
+            hedgingExecutor.close();
+            hedgingExecutor = null;
+        }
+    }
+
+    private static synchronized WebServiceExecutor getHedgingExecutor() {
+
+        if (hedgingExecutor == null) {
+            hedgingExecutor = new WebServiceExecutor(THREAD_NAME, MAX_HEDGING_THREADS);
+        }
+        return hedgingExecutor;
+    }
+
+    private static <T> T executeTimed(String endpoint, Callable<T> attempt) throws Exception {
+
+        long start = System.currentTimeMillis();
+        T result = attempt.call();
+        EndpointStatistics.getInstance().record(endpoint, System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Executes the attempt and sends a duplicate, if it did not complete within the 95th percentile
+     * latency of the endpoint. The first successful result is returned, the other attempt is
+     * cancelled but keeps running until its blocking IO completes.
+     */
+    private static <T> T executeHedged(final String endpoint, final Callable<T> attempt) throws Exception {
+
+        long delay = EndpointStatistics.getInstance().getPercentile(endpoint, HEDGING_PERCENTILE);
+
+        // Not enough latencies recorded yet
+        if (delay < 0) {
+            return executeTimed(endpoint, attempt);
+        }
+
+        Callable<T> timedAttempt = new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                return executeTimed(endpoint, attempt);
+            }
+        };
+
+        CompletionService<T> completion = new ExecutorCompletionService<T>(getHedgingExecutor());
+        List<Future<T>> futures = new ArrayList<Future<T>>(2);
+
+        try {
+            futures.add(completion.submit(timedAttempt));
+            int outstanding = 1;
+            Future<T> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+
+            if (done == null) {
+                logger.debug("No response from '" + endpoint + "' after " + delay + " ms, sending hedged request");
+                futures.add(completion.submit(timedAttempt));
+                outstanding++;
+            }
+
+            ExecutionException failure = null;
+
+            while (outstanding > 0) {
+
+                if (done == null) {
+                    done = completion.take();
+                }
+                outstanding--;
+
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    failure = ex;
+                    done = null;
+                }
+            }
+
+            Throwable cause = failure.getCause();
+
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new WebServiceException("Call of '" + endpoint + "' failed: " + cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+}
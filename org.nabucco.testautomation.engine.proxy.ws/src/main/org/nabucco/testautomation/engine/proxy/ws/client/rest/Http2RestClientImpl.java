@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.AbstractWebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.HttpCompression;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.Http2Transport;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.Http2Transport.Http2Response;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpConnectionPool;
+import org.nabucco.testautomation.engine.proxy.ws.client.rest.ResponseCache.CachedResponse;
+import org.nabucco.testautomation.engine.proxy.ws.exception.HttpStatusException;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.handler.StringResponseHandler;
+
+/**
+ * Http2RestClientImpl
+ * <p>
+ * REST client sending its requests over the shared {@link Http2Transport}. Concurrent requests to
+ * one host are multiplexed over a single connection.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class Http2RestClientImpl extends RestClientImpl {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Http2Transport transport;
+
+    /**
+     * Creates a new HTTP/2 based REST client.
+     * 
+     * @throws WebServiceException
+     *             thrown, if the runtime does not support HTTP/2
+     */
+    public Http2RestClientImpl() throws WebServiceException {
+        this.transport = Http2Transport.getInstance();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected AbstractWebServiceClient newInstance() throws WebServiceException {
+        return new Http2RestClientImpl();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected <T> T send(URL url, String method, RequestBody body, WebServiceResponseHandler<T> handler)
+            throws WebServiceException {
+
+        try {
+            Map<String, String> headers = new HashMap<String, String>(getHeaderAttributes());
+
+            // Check Basic Authentication
+            String authorization = this.getAuthorization();
+
+            if (authorization != null) {
+                headers.put(AUTHORIZATION, authorization);
+            }
+
+            // Revalidate a cached response
+            String cacheKey = this.isCacheable(method, body) ? ResponseCache.createKey(url, authorization,
+                    getHeaderAttributes()) : null;
+            CachedResponse cached = cacheKey != null ? ResponseCache.getInstance().get(cacheKey) : null;
+
+            if (cached != null && cached.getEtag() != null) {
+                headers.put(IF_NONE_MATCH, cached.getEtag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                headers.put(IF_MODIFIED_SINCE, cached.getLastModified());
+            }
+
+            // Request compressed responses and compress the request body
+            HttpCompression compression = getCompression();
+            byte[] content = null;
+
+            if (compression != HttpCompression.NONE) {
+                headers.put(HttpCompression.ACCEPT_ENCODING, HttpCompression.SUPPORTED_ENCODINGS);
+            }
+
+            // The transport publishes the body from a byte array
+            if (body != null) {
+                long contentLength = body.getContentLength();
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(contentLength > 0
+                        && compression == HttpCompression.NONE ? (int) Math.min(contentLength, Integer.MAX_VALUE)
+                        : BUFFER_SIZE);
+
+                if (compression != HttpCompression.NONE) {
+                    headers.put(HttpCompression.CONTENT_ENCODING, compression.getContentCoding());
+                }
+                OutputStream out = compression.compress(buffer);
+
+                try {
+                    body.writeTo(out);
+                } finally {
+                    out.close();
+                }
+                content = buffer.toByteArray();
+            }
+            Http2Response response = this.transport.send(url, method, headers, content, getConnectTimeout(0),
+                    getReadTimeout(url, 0));
+
+            if (body != null && isTracingEnabled()) {
+                this.messageSent(body.toTraceString());
+            }
+
+            final int responseCode = response.getStatus();
+            final String charset = getCharset(response.getContentType());
+            InputStream in = response.getBody();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                HttpConnectionPool.drain(in);
+                return this.receiveCachedResponse(cached, handler);
+            }
+
+            try {
+                in = decompress(in, response.getContentEncoding());
+            } catch (WebServiceException ex) {
+                HttpConnectionPool.drain(in);
+                throw ex;
+            }
+
+            try {
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    String etag = response.getHeader(ETAG);
+                    String lastModified = response.getHeader(LAST_MODIFIED);
+
+                    if (cacheKey != null && isStorable(etag, lastModified, response.getHeader(CACHE_CONTROL),
+                            response.getHeader(VARY))) {
+                        return this.receiveAndCache(in, charset, cacheKey, etag, lastModified, handler);
+                    }
+                    return this.receiveResponse(in, charset, handler);
+                }
+                this.receiveResponse(in, charset, new StringResponseHandler());
+            } finally {
+                // Completes the stream, so the connection is free for other requests
+                HttpConnectionPool.drain(in);
+            }
+            throw new HttpStatusException(responseCode);
+        } catch (IOException e) {
+            throw new WebServiceException("Error during communication with URL '" + url.toString() + "'", e);
+        }
+    }
+
+}
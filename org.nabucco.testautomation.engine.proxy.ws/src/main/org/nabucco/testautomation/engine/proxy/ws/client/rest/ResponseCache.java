@@ -0,0 +1,270 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.CacheableResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * ResponseCache
+ * <p>
+ * Size-bounded LRU cache of REST responses, revalidated by conditional GET requests. The cache
+ * holds the response body and the results of {@link CacheableResponseHandler}s created from it.
+ * When the maximum size or number of entries is exceeded, the least recently used entries are
+ * evicted. Responses are cached per URL and request headers, so that responses varying by a
+ * request header (e.g. Accept) are cached separately.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class ResponseCache {
+
+    /**
+     * The maximum total size in bytes of all cached bodies.
+     */
+    public static final long MAX_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The maximum number of cached responses.
+     */
+    public static final int MAX_ENTRIES = 128;
+
+    /**
+     * The maximum size in bytes of a cached body. Larger bodies are not cached.
+     */
+    public static final long MAX_ENTRY_SIZE = MAX_SIZE / 4;
+
+    private static ResponseCache instance;
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<String, CachedResponse>(16,
+            0.75f, true);
+
+    private long size;
+
+    /**
+     * Constructs a new cache instance.
+     */
+    private ResponseCache() {
+    }
+
+    /**
+     * Gets the cache instance shared by all REST clients.
+     * 
+     * @return the cache instance
+     */
+    public static synchronized ResponseCache getInstance() {
+
+        if (instance == null) {
+            instance = new ResponseCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the key of a cached response. Responses are cached per URL, credentials and header
+     * attributes of the request.
+     * 
+     * @param url
+     *            the requested URL
+     * @param authorization
+     *            the Authorization header of the request, may be null
+     * @param headerAttributes
+     *            the header attributes of the request
+     * @return the cache key
+     */
+    public static String createKey(URL url, String authorization, Map<String, String> headerAttributes) {
+
+        StringBuilder key = new StringBuilder(url.toExternalForm());
+
+        if (authorization != null) {
+            key.append('\n').append(authorization);
+        }
+
+        // Header names are case-insensitive, the order of the headers does not matter
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(headerAttributes);
+
+        for (Entry<String, String> header : headers.entrySet()) {
+            key.append('\n').append(header.getKey().toLowerCase()).append(": ").append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the response cached for the given key.
+     * 
+     * @param key
+     *            the cache key
+     * @return the cached response or null
+     */
+    public synchronized CachedResponse get(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Caches the given response. Responses too large for the cache are not cached.
+     * 
+     * @param key
+     *            the cache key
+     * @param response
+     *            the response to cache
+     */
+    public synchronized void put(String key, CachedResponse response) {
+
+        CachedResponse previous = this.entries.remove(key);
+
+        if (previous != null) {
+            this.size -= previous.body.length;
+        }
+
+        if (response.body.length > MAX_ENTRY_SIZE) {
+            return;
+        }
+
+        this.entries.put(key, response);
+        this.size += response.body.length;
+
+        // Evict least recently used entries
+        Iterator<CachedResponse> it = this.entries.values().iterator();
+
+        while (it.hasNext() && (this.size > MAX_SIZE || this.entries.size() > MAX_ENTRIES)) {
+            this.size -= it.next().body.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    /**
+     * A cached response body with its validators and handled results.
+     */
+    public static class CachedResponse {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final String charset;
+
+        private final byte[] body;
+
+        private final Map<String, Object> results = new HashMap<String, Object>();
+
+        /**
+         * Creates a new cached response.
+         * 
+         * @param etag
+         *            the ETag header, may be null
+         * @param lastModified
+         *            the Last-Modified header, may be null
+         * @param charset
+         *            the charset of the body, may be null
+         * @param body
+         *            the decoded response body
+         */
+        public CachedResponse(String etag, String lastModified, String charset, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.charset = charset;
+            this.body = body;
+        }
+
+        /**
+         * @return the ETag to send as If-None-Match, or null
+         */
+        public String getEtag() {
+            return this.etag;
+        }
+
+        /**
+         * @return the Last-Modified date to send as If-Modified-Since, or null
+         */
+        public String getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * Gets the body decoded with its charset.
+         * 
+         * @return the body as String
+         * @throws UnsupportedEncodingException
+         *             thrown, if the charset is not supported
+         */
+        public String getBodyAsString() throws UnsupportedEncodingException {
+            return new String(this.body, this.charset != null ? this.charset
+                    : WebServiceResponseHandler.DEFAULT_CHARSET);
+        }
+
+        /**
+         * Passes the cached body to the given handler. If the handler is a
+         * {@link CacheableResponseHandler}, its result is cached and a copy of the cached result is
+         * returned on subsequent calls.
+         * 
+         * @param handler
+         *            the handler
+         * @return the handled response
+         * @throws IOException
+         *             should not be thrown
+         * @throws WebServiceException
+         *             thrown, if the handler fails
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T handle(WebServiceResponseHandler<T> handler) throws IOException, WebServiceException {
+
+            if (!(handler instanceof CacheableResponseHandler)) {
+                return handler.handleResponse(new ByteArrayInputStream(this.body), this.charset);
+            }
+
+            CacheableResponseHandler<T> cacheableHandler = (CacheableResponseHandler<T>) handler;
+            String key = cacheableHandler.getCacheKey();
+            T result;
+
+            synchronized (this.results) {
+                result = (T) this.results.get(key);
+            }
+
+            if (result != null) {
+                return cacheableHandler.copy(result);
+            }
+
+            result = handler.handleResponse(new ByteArrayInputStream(this.body), this.charset);
+
+            synchronized (this.results) {
+                this.results.put(key, cacheableHandler.copy(result));
+            }
+            return result;
+        }
+    }
+
+}
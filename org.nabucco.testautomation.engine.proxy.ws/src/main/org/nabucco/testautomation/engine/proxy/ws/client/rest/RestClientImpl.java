@@ -17,26 +17,35 @@
 package org.nabucco.testautomation.engine.proxy.ws.client.rest;
 
 import java.io.BufferedInputStream;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import javax.xml.soap.SOAPException;
 
 import org.apache.axis.encoding.Base64;
-import org.nabucco.testautomation.engine.base.exception.NBCTestConfigurationException;
-import org.nabucco.testautomation.engine.base.xml.XMLToolkit;
-import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
-import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.AbstractWebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.HttpCompression;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.client.body.DocumentRequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.body.StringRequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpConnectionPool;
+import org.nabucco.testautomation.engine.proxy.ws.client.rest.ResponseCache.CachedResponse;
+import org.nabucco.testautomation.engine.proxy.ws.exception.HttpStatusException;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.handler.DocumentResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.handler.StringResponseHandler;
 import org.w3c.dom.Document;
 
 /**
@@ -45,22 +54,39 @@ import org.w3c.dom.Document;
  * @author Steffen Schmidt, PRODYNA AG
  * 
  */
-public class RestClientImpl implements WebServiceClient {
+public class RestClientImpl extends AbstractWebServiceClient {
 
-    private final List<WebServiceListener> listeners = new ArrayList<WebServiceListener>();
+    private static final String CHARSET = "charset=";
 
-    private Map<String, String> headerAttributes = new HashMap<String, String>();
+    protected static final String GET = "GET";
 
-    private String username;
-    
-    private String password;
+    protected static final String ETAG = "ETag";
+
+    protected static final String LAST_MODIFIED = "Last-Modified";
+
+    protected static final String CACHE_CONTROL = "Cache-Control";
+
+    protected static final String VARY = "Vary";
+
+    protected static final String IF_NONE_MATCH = "If-None-Match";
+
+    protected static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String NO_STORE = "no-store";
+
+    private static final String VARY_ANY = "*";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final List<String> IDEMPOTENT_METHODS = Arrays.asList(GET, "HEAD", "PUT", "DELETE", "OPTIONS",
+            "TRACE");
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void addHeaderAttribute(String name, String value) throws WebServiceException {
-        this.headerAttributes.put(name, value);
+    protected AbstractWebServiceClient newInstance() throws WebServiceException {
+        return new RestClientImpl();
     }
 
     /**
@@ -84,47 +110,166 @@ public class RestClientImpl implements WebServiceClient {
      */
     @Override
     public String sendMessage(URL url, String method, String message) throws SOAPException, WebServiceException {
+        return this.sendMessage(url, method, message, new StringResponseHandler());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T sendMessage(URL url, String method, String message, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException {
+        return this.sendMessage(url, method, message != null ? new StringRequestBody(message) : null, handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T sendMessage(final URL url, final String method, final RequestBody body,
+            final WebServiceResponseHandler<T> handler) throws SOAPException, WebServiceException {
+
+        if (handler == null) {
+            throw new WebServiceException("ResponseHandler must not be null");
+        }
+
+        this.start();
+        T response = this.execute(url, isIdempotent(method), new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                return send(url, method, body, handler);
+            }
+        });
+        this.finished();
+        return response;
+    }
+
+    /**
+     * Sends a single attempt of a request. Called by
+     * {@link #sendMessage(URL, String, RequestBody, WebServiceResponseHandler)} according to the retry
+     * policy of the client, possibly concurrently for hedged requests.
+     * 
+     * @param url
+     *            the target URL
+     * @param method
+     *            the HTTP method
+     * @param body
+     *            the request body, may be null
+     * @param handler
+     *            the handler of the response
+     * @return the handled response
+     * @throws WebServiceException
+     *             thrown, if the request fails or the response is not successful
+     */
+    protected <T> T send(URL url, String method, RequestBody body, WebServiceResponseHandler<T> handler)
+            throws WebServiceException {
+
+        HttpConnectionPool pool = HttpConnectionPool.getInstance();
+        HttpURLConnection connection = null;
+        boolean reusable = false;
 
         try {
-            this.start();
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection = pool.lease(url);
             connection.setRequestMethod(method);
+
+            connection.setConnectTimeout(getConnectTimeout(0));
+            connection.setReadTimeout(getReadTimeout(url, 0));
             
             // Check Basic Authentication
-            if (this.username != null && this.password != null) {
-                String auth = this.username + ":" + this.password;
-                connection.setRequestProperty(AUTHORIZATION, BASIC + Base64.encode(auth.getBytes()));
+            String authorization = this.getAuthorization();
+
+            if (authorization != null) {
+                connection.setRequestProperty(AUTHORIZATION, authorization);
             }
             
             // Add customer header attributes
             addHeaderAttributes(connection);
 
-            if (message != null) {
+            // Revalidate a cached response
+            String cacheKey = this.isCacheable(method, body) ? ResponseCache.createKey(url, authorization,
+                    getHeaderAttributes()) : null;
+            CachedResponse cached = cacheKey != null ? ResponseCache.getInstance().get(cacheKey) : null;
+
+            if (cached != null && cached.getEtag() != null) {
+                connection.setRequestProperty(IF_NONE_MATCH, cached.getEtag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                connection.setRequestProperty(IF_MODIFIED_SINCE, cached.getLastModified());
+            }
+
+            // Request compressed responses and compress the request body
+            HttpCompression compression = getCompression();
+
+            if (compression != HttpCompression.NONE) {
+                connection.setRequestProperty(HttpCompression.ACCEPT_ENCODING, HttpCompression.SUPPORTED_ENCODINGS);
+            }
+
+            if (body != null) {
                 connection.setDoOutput(true);
-                DataOutputStream out = new DataOutputStream(connection.getOutputStream());
-                out.writeBytes(message);
-                out.flush();
-                out.close();
-                this.messageSent(message);
+                long contentLength = body.getContentLength();
+
+                // Stream the body instead of buffering it in the connection
+                if (compression == HttpCompression.NONE && contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+                    connection.setFixedLengthStreamingMode((int) contentLength);
+                } else {
+                    connection.setChunkedStreamingMode(CHUNK_SIZE);
+                }
+
+                if (compression != HttpCompression.NONE) {
+                    connection.setRequestProperty(HttpCompression.CONTENT_ENCODING, compression.getContentCoding());
+                }
+                OutputStream out = compression.compress(connection.getOutputStream());
+
+                try {
+                    body.writeTo(out);
+                } finally {
+                    out.close();
+                }
+
+                if (isTracingEnabled()) {
+                    this.messageSent(body.toTraceString());
+                }
             }
 
             final int responseCode = connection.getResponseCode();
+            final String charset = getCharset(connection.getContentType());
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                reusable = HttpConnectionPool.drain(connection.getInputStream());
+                return this.receiveCachedResponse(cached, handler);
+            }
 
             switch (responseCode) {
             case HttpURLConnection.HTTP_OK: {
-                String responseMessage = receiveResponse(connection.getInputStream());
-                this.finished();
-                this.messageReceived(responseMessage);
-                return responseMessage;
+                InputStream in = decompress(connection.getInputStream(), connection.getContentEncoding());
+
+                try {
+                    if (cacheKey != null && isStorable(connection.getHeaderField(ETAG),
+                            connection.getHeaderField(LAST_MODIFIED), connection.getHeaderField(CACHE_CONTROL),
+                            connection.getHeaderField(VARY))) {
+                        return this.receiveAndCache(in, charset, cacheKey, connection.getHeaderField(ETAG),
+                                connection.getHeaderField(LAST_MODIFIED), handler);
+                    }
+                    return this.receiveResponse(in, charset, handler);
+                } finally {
+                    reusable = HttpConnectionPool.drain(in);
+                }
             }
             default:
-                String responseMessage = receiveResponse(connection.getErrorStream());
-                this.finished();
-                this.messageReceived(responseMessage);
-                throw new WebServiceException("Unexpected ResponseCode: " + responseCode);
+                InputStream in = decompress(connection.getErrorStream(), connection.getContentEncoding());
+
+                try {
+                    this.receiveResponse(in, charset, new StringResponseHandler());
+                } finally {
+                    reusable = HttpConnectionPool.drain(in);
+                }
+                throw new HttpStatusException(responseCode);
             }
         } catch (IOException e) {
-            throw new WebServiceException("Error during communication with URL '" + url.toString() + "'");
+            throw new WebServiceException("Error during communication with URL '" + url.toString() + "'", e);
+        } finally {
+            pool.release(connection, reusable);
         }
     }
 
@@ -142,49 +287,7 @@ public class RestClientImpl implements WebServiceClient {
     @Override
     public Document sendMessage(URL url, String method, Document message) throws SOAPException, WebServiceException {
 
-        try {
-            this.start();
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod(method);
-            
-            // Check Basic Authentication
-            if (this.username != null && this.password != null) {
-                String auth = this.username + ":" + this.password;
-                connection.setRequestProperty(AUTHORIZATION, BASIC + Base64.encode(auth.getBytes()));
-            }
-            
-            // Add customer header attributes
-            addHeaderAttributes(connection);
-
-            StringWriter writer = new StringWriter();
-            XMLToolkit.writeXMLDocument(message, writer);
-            String messageString = writer.toString();
-
-            DataOutputStream out = new DataOutputStream(connection.getOutputStream());
-            out.writeBytes(messageString);
-            out.flush();
-            out.close();
-            this.messageSent(messageString);
-
-            final int responseCode = connection.getResponseCode();
-            String responseMessage = connection.getResponseMessage();
-            this.finished();
-
-            if (responseMessage != null) {
-                this.messageReceived(responseMessage);
-            }
-
-            switch (responseCode) {
-            case HttpURLConnection.HTTP_OK:
-                return XMLToolkit.loadXMLDocument(responseMessage);
-            default:
-                throw new WebServiceException("Unexpected ResponseCode: " + responseCode);
-            }
-        } catch (IOException e) {
-            throw new WebServiceException("Error during communication with URL '" + url.toString() + "'", e);
-        } catch (NBCTestConfigurationException e) {
-            throw new WebServiceException("Could parse ResponseMessage into XML", e);
-        }
+        return this.sendMessage(url, method, new DocumentRequestBody(message), new DocumentResponseHandler());
     }
 
     /**
@@ -205,85 +308,240 @@ public class RestClientImpl implements WebServiceClient {
     }
     
     /**
-     * {@inheritDoc}
+     * Passes the response body to the given handler. If tracing is enabled, the body is buffered
+     * once to trace it as String, otherwise it is streamed to the handler directly.
+     * 
+     * @param inputStream
+     *            the response stream, may be null
+     * @param charset
+     *            the charset declared by the response, or null
+     * @param handler
+     *            the handler consuming the body
+     * @return the handled response
+     * @throws IOException
+     *             thrown, if the response cannot be read
+     * @throws WebServiceException
+     *             thrown, if the handler fails
      */
-    @Override
-    public void setUsername(String username) {
-        this.username = username;
+    protected <T> T receiveResponse(InputStream inputStream, String charset, WebServiceResponseHandler<T> handler)
+            throws IOException, WebServiceException {
+
+        InputStream in = inputStream != null ? new BufferedInputStream(inputStream) : new ByteArrayInputStream(
+                new byte[0]);
+
+        if (isTracingEnabled()) {
+            byte[] content = StringResponseHandler.toByteArray(in);
+            this.messageReceived(new String(content, charset != null ? charset
+                    : WebServiceResponseHandler.DEFAULT_CHARSET));
+            return handler.handleResponse(new ByteArrayInputStream(content), charset);
+        }
+
+        return handler.handleResponse(in, charset);
     }
 
     /**
-     * {@inheritDoc}
+     * Checks whether the given HTTP method is idempotent, so that a failed request may be repeated.
+     * 
+     * @param method
+     *            the HTTP method
+     * @return true, if the method is idempotent
      */
-    @Override
-    public void setPassword(String password) {
-        this.password = password;
+    protected static boolean isIdempotent(String method) {
+        return method != null && IDEMPOTENT_METHODS.contains(method.toUpperCase());
+    }
+
+    /**
+     * Checks whether the response of the given request may be served from the cache.
+     * 
+     * @param method
+     *            the HTTP method
+     * @param body
+     *            the request body
+     * @return true, if caching is enabled and the request is a GET without body
+     */
+    protected boolean isCacheable(String method, RequestBody body) {
+        return isCachingEnabled() && body == null && GET.equalsIgnoreCase(method);
     }
 
-    private void messageSent(String request) {
+    /**
+     * Checks whether a response with the given headers may be cached.
+     * 
+     * @param etag
+     *            the ETag header, may be null
+     * @param lastModified
+     *            the Last-Modified header, may be null
+     * @param cacheControl
+     *            the Cache-Control header, may be null
+     * @param vary
+     *            the Vary header, may be null
+     * @return true, if the response carries a validator and does not forbid storing
+     */
+    protected static boolean isStorable(String etag, String lastModified, String cacheControl, String vary) {
+
+        if (etag == null && lastModified == null) {
+            return false;
+        }
 
-        for (WebServiceListener listener : this.listeners) {
-            listener.messageSent(request);
+        // The request headers are part of the cache key, only a response varying by anything else is not stored
+        if (vary != null && vary.trim().equals(VARY_ANY)) {
+            return false;
         }
+        return cacheControl == null || cacheControl.toLowerCase().indexOf(NO_STORE) < 0;
     }
 
-    private void messageReceived(String request) {
+    /**
+     * Serves a response not modified since it was cached.
+     * 
+     * @param cached
+     *            the cached response
+     * @param handler
+     *            the handler of the response
+     * @return the cached result of the handler
+     * @throws IOException
+     *             should not be thrown
+     * @throws WebServiceException
+     *             thrown, if the handler fails
+     */
+    protected <T> T receiveCachedResponse(CachedResponse cached, WebServiceResponseHandler<T> handler)
+            throws IOException, WebServiceException {
 
-        for (WebServiceListener listener : this.listeners) {
-            listener.messageReceived(request);
+        if (isTracingEnabled()) {
+            this.messageReceived(cached.getBodyAsString());
         }
+        return cached.handle(handler);
     }
 
-    private void start() {
+    /**
+     * Reads a response completely and caches it together with the result of the handler. A response
+     * larger than {@link ResponseCache#MAX_ENTRY_SIZE} is not cached but streamed to the handler.
+     * 
+     * @param in
+     *            the response stream
+     * @param charset
+     *            the charset declared by the response, or null
+     * @param cacheKey
+     *            the key of the response in the cache
+     * @param etag
+     *            the ETag header, may be null
+     * @param lastModified
+     *            the Last-Modified header, may be null
+     * @param handler
+     *            the handler of the response
+     * @return the handled response
+     * @throws IOException
+     *             thrown, if the response cannot be read
+     * @throws WebServiceException
+     *             thrown, if the handler fails
+     */
+    protected <T> T receiveAndCache(InputStream in, String charset, String cacheKey, String etag,
+            String lastModified, WebServiceResponseHandler<T> handler) throws IOException, WebServiceException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        if (in != null) {
+            byte[] buf = new byte[CHUNK_SIZE];
+            int c;
+
+            while ((c = in.read(buf)) != -1) {
+                buffer.write(buf, 0, c);
 
-        for (WebServiceListener listener : this.listeners) {
-            listener.start();
+                if (buffer.size() > ResponseCache.MAX_ENTRY_SIZE) {
+                    InputStream remaining = new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), in);
+                    return this.receiveResponse(remaining, charset, handler);
+                }
+            }
         }
-    }
 
-    private void finished() {
+        CachedResponse cached = new CachedResponse(etag, lastModified, charset, buffer.toByteArray());
 
-        for (WebServiceListener listener : this.listeners) {
-            listener.finished();
+        if (isTracingEnabled()) {
+            this.messageReceived(cached.getBodyAsString());
         }
+
+        T response = cached.handle(handler);
+        ResponseCache.getInstance().put(cacheKey, cached);
+        return response;
     }
 
-    @Override
-    public void addWebServiceListener(WebServiceListener listener) {
+    /**
+     * Wraps the given response stream into a stream decompressing the declared content coding.
+     * 
+     * @param in
+     *            the response stream, may be null
+     * @param contentEncoding
+     *            the Content-Encoding header, may be null
+     * @return the decompressing stream, or null if the given stream is null
+     * @throws IOException
+     *             thrown, if the compressed stream is corrupt
+     * @throws WebServiceException
+     *             thrown, if the content coding is not supported
+     */
+    protected static InputStream decompress(InputStream in, String contentEncoding) throws IOException,
+            WebServiceException {
 
-        if (listener != null) {
-            this.listeners.add(listener);
+        if (in == null) {
+            return null;
         }
-    }
 
-    @Override
-    public void removeWebServiceListener(WebServiceListener listener) {
+        HttpCompression compression = HttpCompression.forContentEncoding(contentEncoding);
 
-        if (listener != null) {
-            this.listeners.remove(listener);
+        if (compression == null) {
+            throw new WebServiceException("Unsupported Content-Encoding: " + contentEncoding);
         }
+        return compression.decompress(in);
     }
-    
-    private String receiveResponse(InputStream inputStream) throws IOException {
 
-        StringBuffer responseMessage = new StringBuffer();
-        BufferedInputStream in = new BufferedInputStream(inputStream);
-        byte[] buf = new byte[1024];
-        int c;
+    /**
+     * Extracts the charset parameter of the given Content-Type header.
+     * 
+     * @param contentType
+     *            the Content-Type header, may be null
+     * @return the charset or null, if not declared
+     */
+    protected static String getCharset(String contentType) {
 
-        while ((c = in.read(buf)) > 0) {
-            responseMessage.append(new String(buf, 0, c));
+        if (contentType == null) {
+            return null;
         }
 
-        return responseMessage.toString();
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+
+            if (param.regionMatches(true, 0, CHARSET, 0, CHARSET.length())) {
+                String charset = param.substring(CHARSET.length()).trim();
+
+                if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1);
+                }
+                return charset.length() > 0 ? charset : null;
+            }
+        }
+        return null;
     }
     
+    /**
+     * Gets the value of the Authorization header for basic authentication.
+     * 
+     * @return the header value or null, if no credentials are set
+     */
+    protected String getAuthorization() {
+
+        String username = getUsername();
+        String password = getPassword();
+
+        if (username == null || password == null) {
+            return null;
+        }
+        String auth = username + ":" + password;
+        return BASIC + Base64.encode(auth.getBytes());
+    }
+
     /**
      * @param connection
      */
     private void addHeaderAttributes(HttpURLConnection connection) {
         
-        for (Entry<String, String> entry : this.headerAttributes.entrySet()) {
+        for (Entry<String, String> entry : getHeaderAttributes().entrySet()) {
             connection.setRequestProperty(entry.getKey(), entry.getValue());
         }
     }
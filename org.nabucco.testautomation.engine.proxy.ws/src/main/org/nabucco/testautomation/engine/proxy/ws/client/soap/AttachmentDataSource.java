@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.soap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataSource;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
+
+/**
+ * AttachmentDataSource
+ * <p>
+ * Read-only {@link DataSource} streaming the content of a {@link SoapAttachment}, so that Axis
+ * writes attachments without loading them into memory.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class AttachmentDataSource implements DataSource {
+
+    private final SoapAttachment attachment;
+
+    /**
+     * Creates a new data source.
+     * 
+     * @param attachment
+     *            the attachment to stream
+     */
+    public AttachmentDataSource(SoapAttachment attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getContentType() {
+        return this.attachment.getContentType();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return this.attachment.openStream();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return this.attachment.getContentId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("AttachmentDataSource is read-only");
+    }
+
+}
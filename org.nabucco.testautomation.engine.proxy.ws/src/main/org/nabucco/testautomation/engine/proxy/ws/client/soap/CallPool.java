@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.soap;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.soap.SOAPMessage;
+
+import org.apache.axis.MessageContext;
+import org.apache.axis.client.Call;
+import org.apache.axis.client.Service;
+import org.apache.axis.transport.http.HTTPConstants;
+
+/**
+ * CallPool
+ * <p>
+ * Pool of preconfigured Axis {@link Call}s per endpoint. The {@link Service} of an endpoint, which
+ * holds the engine configuration and handler chain, is created once and shared by all calls of
+ * the endpoint. A call is used by one thread at a time and reset, when it is given back. Since the
+ * response message is bound to the message context of its call, a call must not be released
+ * before its response is fully read. The least recently used endpoints are discarded beyond
+ * {@link #MAX_ENDPOINTS}.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class CallPool {
+
+    /**
+     * The maximum number of idle calls kept per endpoint.
+     */
+    public static final int MAX_IDLE_PER_ENDPOINT = 16;
+
+    /**
+     * The maximum number of endpoints kept in the pool.
+     */
+    public static final int MAX_ENDPOINTS = 256;
+
+    private static final String CHARSET_UTF8 = "UTF-8";
+
+    private static CallPool instance;
+
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<String, Endpoint>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, Endpoint> eldest) {
+            return this.size() > MAX_ENDPOINTS;
+        }
+    };
+
+    /**
+     * Constructs a new pool instance.
+     */
+    private CallPool() {
+    }
+
+    /**
+     * Gets the pool instance shared by all SOAP clients.
+     * 
+     * @return the pool instance
+     */
+    public static synchronized CallPool getInstance() {
+
+        if (instance == null) {
+            instance = new CallPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Leases a call to the given URL. Every leased call must be given back by {@link #release}.
+     * 
+     * @param url
+     *            the endpoint URL
+     * @return the call, exclusively owned by the caller until it is released
+     */
+    public Call lease(URL url) {
+
+        Endpoint endpoint = this.getEndpoint(url);
+        Call call = endpoint.poll();
+
+        if (call == null) {
+            call = new Call(endpoint.service);
+            call.setTargetEndpointAddress(url);
+            call.setProperty(Call.CHECK_MUST_UNDERSTAND, Boolean.FALSE);
+            call.setProperty(Call.CHARACTER_SET_ENCODING, CHARSET_UTF8);
+            call.setReturnClass(SOAPMessage.class);
+        }
+        return call;
+    }
+
+    /**
+     * Gives a leased call back to the pool, after its response message has been read. Calls which
+     * failed in the transport are discarded.
+     * 
+     * @param url
+     *            the endpoint URL the call was leased for
+     * @param call
+     *            the call to release, may be null
+     * @param reusable
+     *            true, if the call completed normally and may be reused
+     */
+    public void release(URL url, Call call, boolean reusable) {
+
+        if (call == null) {
+            return;
+        }
+
+        // Drop the messages of the last exchange
+        MessageContext context = call.getMessageContext();
+
+        if (context != null) {
+            context.setRequestMessage(null);
+            context.setResponseMessage(null);
+        }
+
+        if (!reusable) {
+            return;
+        }
+
+        // Reset the settings of the request
+        call.clearOperation();
+        call.clearHeaders();
+        call.setSOAPActionURI(null);
+        call.setUsername(null);
+        call.setPassword(null);
+        call.removeProperty(HTTPConstants.MC_ACCEPT_GZIP);
+        call.removeProperty(HTTPConstants.MC_GZIP_REQUEST);
+
+        this.getEndpoint(url).offer(call);
+    }
+
+    /**
+     * Discards all pooled calls and services.
+     */
+    public synchronized void clear() {
+        this.endpoints.clear();
+    }
+
+    private synchronized Endpoint getEndpoint(URL url) {
+
+        String key = url.toExternalForm();
+        Endpoint endpoint = this.endpoints.get(key);
+
+        if (endpoint == null) {
+            endpoint = new Endpoint(new Service());
+            this.endpoints.put(key, endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * The shared service and idle calls of one endpoint.
+     */
+    private static class Endpoint {
+
+        private final Service service;
+
+        private final LinkedList<Call> idle = new LinkedList<Call>();
+
+        Endpoint(Service service) {
+            this.service = service;
+        }
+
+        synchronized Call poll() {
+            return this.idle.pollLast();
+        }
+
+        synchronized void offer(Call call) {
+
+            if (this.idle.size() < MAX_IDLE_PER_ENDPOINT) {
+                this.idle.addLast(call);
+            }
+        }
+    }
+
+}
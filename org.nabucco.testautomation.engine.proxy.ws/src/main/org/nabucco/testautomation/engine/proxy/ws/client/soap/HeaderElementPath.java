@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.soap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+
+/**
+ * HeaderElementPath
+ * <p>
+ * Parses the name of a SOAP header element. A plain name is an unqualified element, a name in the
+ * notation <code>{namespace}prefix:local</code> is a qualified element. Names separated by '/'
+ * define nested elements, the value of the header element is the text of the innermost element,
+ * e.g. <code>{http://www.w3.org/2005/08/addressing}wsa:ReplyTo/{http://www.w3.org/2005/08/addressing}wsa:Address</code>.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+final class HeaderElementPath {
+
+    /**
+     * The prefix of qualified elements without prefix.
+     */
+    static final String DEFAULT_PREFIX = "ns";
+
+    private static final char PATH_SEPARATOR = '/';
+
+    private static final char NAMESPACE_START = '{';
+
+    private static final char NAMESPACE_END = '}';
+
+    private static final char PREFIX_SEPARATOR = ':';
+
+    private HeaderElementPath() {
+    }
+
+    /**
+     * Parses the given header element name.
+     * 
+     * @param name
+     *            the name of the header element
+     * @return the names of the nested elements, starting with the header element
+     * @throws WebServiceException
+     *             thrown, if the name is invalid
+     */
+    static List<QName> parse(String name) throws WebServiceException {
+
+        if (name.indexOf(NAMESPACE_START) < 0 && name.indexOf(PATH_SEPARATOR) < 0) {
+            return Collections.singletonList(new QName(name));
+        }
+
+        List<QName> path = new ArrayList<QName>();
+        int start = 0;
+
+        while (start < name.length()) {
+            String namespace = XMLConstants.NULL_NS_URI;
+
+            if (name.charAt(start) == NAMESPACE_START) {
+                int end = name.indexOf(NAMESPACE_END, start);
+
+                if (end < 0) {
+                    throw new WebServiceException("Invalid SOAP header element: " + name);
+                }
+                namespace = name.substring(start + 1, end);
+                start = end + 1;
+            }
+
+            int end = name.indexOf(PATH_SEPARATOR, start);
+
+            if (end < 0) {
+                end = name.length();
+            }
+
+            String qualifiedName = name.substring(start, end);
+
+            if (namespace.length() == 0) {
+                path.add(new QName(qualifiedName));
+                start = end + 1;
+                continue;
+            }
+
+            int index = qualifiedName.indexOf(PREFIX_SEPARATOR);
+            String prefix = index > 0 ? qualifiedName.substring(0, index) : XMLConstants.DEFAULT_NS_PREFIX;
+            String localName = qualifiedName.substring(index + 1);
+
+            if (localName.length() == 0) {
+                throw new WebServiceException("Invalid SOAP header element: " + name);
+            }
+
+            if (prefix.length() == 0) {
+                prefix = DEFAULT_PREFIX;
+            }
+
+            path.add(new QName(namespace, localName, prefix));
+            start = end + 1;
+        }
+        return path;
+    }
+
+}
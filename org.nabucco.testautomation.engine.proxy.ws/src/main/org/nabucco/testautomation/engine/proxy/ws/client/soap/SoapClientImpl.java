@@ -16,33 +16,45 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.client.soap;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.activation.DataHandler;
+import javax.xml.XMLConstants;
+import javax.xml.soap.AttachmentPart;
 import javax.xml.soap.MimeHeaders;
 import javax.xml.soap.SOAPBody;
 import javax.xml.soap.SOAPException;
-import javax.xml.soap.SOAPFactory;
 import javax.xml.soap.SOAPMessage;
 
+import org.apache.axis.AxisFault;
+import org.apache.axis.Constants;
 import org.apache.axis.client.Call;
-import org.apache.axis.soap.SOAP11Constants;
-import org.apache.axis.soap.SOAP12Constants;
-import org.apache.axis.soap.SOAPConstants;
+import org.apache.axis.transport.http.HTTPConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.AbstractWebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.AttachmentListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.HttpCompression;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.RetryPolicy;
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
-import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.exception.HttpStatusException;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
 /**
  * SoapClientImpl
@@ -50,23 +62,15 @@ import org.w3c.dom.NodeList;
  * @author Steffen Schmidt, PRODYNA AG
  * 
  */
-public class SoapClientImpl implements WebServiceClient {
-
-    private static final String CONTENT_TYPE = "Content-Type";
+public class SoapClientImpl extends AbstractWebServiceClient {
 
     private static final String SOAP_ACTION = "SOAPAction";
 
-    private final List<WebServiceListener> listeners = new ArrayList<WebServiceListener>();
-
-    private final SoapVersion version;
+    private static final String BODY = "Body";
 
-    private Map<String, String> headerAttributes = new HashMap<String, String>();
+    private static final int DEFAULT_TIMEOUT = 10000;
 
-    private Map<String, String> headerElements = new HashMap<String, String>();
-    
-    private String username;
-    
-    private String password;
+    private final SoapVersion version;
 
     /**
      * Constructs a new SOAP based instance of a {@link WebServiceClient}
@@ -82,16 +86,8 @@ public class SoapClientImpl implements WebServiceClient {
      * {@inheritDoc}
      */
     @Override
-    public void addHeaderAttribute(String name, String value) throws WebServiceException {
-        this.headerAttributes.put(name, value);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void addHeaderElement(String name, String value) throws WebServiceException {
-        this.headerElements.put(name, value);
+    protected AbstractWebServiceClient newInstance() throws WebServiceException {
+        return new SoapClientImpl(this.version);
     }
 
     /**
@@ -110,15 +106,7 @@ public class SoapClientImpl implements WebServiceClient {
         soapBody.addDocument(message);
 
         // create connection and send soap message
-        messageSent(soapRequest);
-        start();
-        SOAPMessage soapResponse = call(url, null, soapRequest);
-        finished();
-        messageReceived(soapResponse);
-
-        soapBody = soapResponse.getSOAPBody();
-        Document responseMessage = getDocument(soapBody);
-        return responseMessage;
+        return send(url, null, soapRequest);
     }
 
     /**
@@ -137,15 +125,7 @@ public class SoapClientImpl implements WebServiceClient {
         soapBody.addDocument(message);
 
         // create connection and send soap message
-        messageSent(soapRequest);
-        start();
-        SOAPMessage soapResponse = call(url, method, soapRequest);
-        finished();
-        messageReceived(soapResponse);
-
-        soapBody = soapResponse.getSOAPBody();
-        Document responseMessage = getDocument(soapBody);
-        return responseMessage;
+        return send(url, method, soapRequest);
     }
 
     /**
@@ -166,15 +146,7 @@ public class SoapClientImpl implements WebServiceClient {
         }
 
         // create connection and send soap message
-        messageSent(soapRequest);
-        start();
-        SOAPMessage soapResponse = call(url, null, soapRequest);
-        finished();
-        messageReceived(soapResponse);
-
-        soapBody = soapResponse.getSOAPBody();
-        Document responseMessage = getDocument(soapBody);
-        return responseMessage;
+        return send(url, null, soapRequest);
     }
 
     /**
@@ -196,28 +168,88 @@ public class SoapClientImpl implements WebServiceClient {
         }
 
         // create connection and send soap message
+        return send(url, method, soapRequest);
+    }
+
+    /**
+     * Sends the request and reads the payload of its response. The {@link Call} of the response is
+     * given back to the {@link CallPool} only after the response has been read.
+     */
+    private Document send(URL url, String method, SOAPMessage soapRequest) throws SOAPException,
+            WebServiceException {
+
         messageSent(soapRequest);
         start();
-        SOAPMessage soapResponse = call(url, method, soapRequest);
-        finished();
-        messageReceived(soapResponse);
+        Exchange exchange = call(url, method, soapRequest);
+
+        try {
+            finished();
+            messageReceived(exchange.response);
+            receiveAttachments(exchange.response);
+            return getDocument(exchange.response);
+        } finally {
+            exchange.release();
+        }
+    }
+
+    /**
+     * Calls the webservice according to the retry policy of the client. SOAP faults are returned as
+     * response message. Hedging is not supported, since the request message is bound to the
+     * {@link Call} of one attempt.
+     * 
+     * @param url
+     * @param method
+     * @param soapRequest
+     * @return
+     * @throws SOAPException
+     * @throws WebServiceException
+     */
+    private Exchange call(final URL url, final String method, final SOAPMessage soapRequest)
+            throws SOAPException, WebServiceException {
+
+        RetryPolicy policy = getRetryPolicy();
 
-        soapBody = soapResponse.getSOAPBody();
-        Document responseMessage = getDocument(soapBody);
-        return responseMessage;
+        if (policy.isHedging()) {
+            policy = new RetryPolicy(policy.getMaxAttempts(), policy.getInitialBackoff(), policy.getMaxBackoff(),
+                    false, policy.isIdempotent());
+        }
+
+        try {
+            return this.execute(url, policy, false, new Callable<Exchange>() {
+
+                @Override
+                public Exchange call() throws Exception {
+                    return invoke(url, method, soapRequest);
+                }
+            });
+        } catch (WebServiceException ex) {
+            if (ex.getCause() instanceof AxisFault) {
+                return new Exchange(url, null, new org.apache.axis.Message((AxisFault) ex.getCause()));
+            }
+            throw ex;
+        }
     }
 
     /**
+     * Invokes a single attempt of a call. Transport failures are thrown to be retried, SOAP faults
+     * are returned as response message. The call of a received response stays leased until the
+     * exchange is released.
+     * 
      * @param url
      * @param method
      * @param soapRequest
      * @return
+     * @throws AxisFault
+     * @throws WebServiceException
      */
-    private SOAPMessage call(URL url, String method, SOAPMessage soapRequest) {
-        SOAPMessage soapResponse = null;
+    private Exchange invoke(URL url, String method, SOAPMessage soapRequest) throws AxisFault,
+            WebServiceException {
+
+        CallPool pool = CallPool.getInstance();
+        Call call = pool.lease(url);
+        Exchange exchange = null;
 
         try {
-            Call call = new Call(url);
             ((org.apache.axis.Message) soapRequest).setMessageContext(call.getMessageContext());
             String soapActionURI = checkForSOAPActionHeader(soapRequest);
 
@@ -225,23 +257,53 @@ public class SoapClientImpl implements WebServiceClient {
                 call.setSOAPActionURI(soapActionURI);
             }
 
-            call.setProperty(Call.CHECK_MUST_UNDERSTAND, Boolean.FALSE);
-            call.setProperty(Call.CHARACTER_SET_ENCODING, "UTF-8");
-            call.setReturnClass(SOAPMessage.class);
-            call.setTimeout(10000);
-            call.setUsername(this.username);
-            call.setPassword(this.password);
+            call.setTimeout(getReadTimeout(url, DEFAULT_TIMEOUT));
+            call.setUsername(getUsername());
+            call.setPassword(getPassword());
+
+            // Axis negotiates gzip only, DEFLATE is sent as gzip
+            if (getCompression() != HttpCompression.NONE) {
+                call.setProperty(HTTPConstants.MC_ACCEPT_GZIP, Boolean.TRUE);
+                call.setProperty(HTTPConstants.MC_GZIP_REQUEST, Boolean.TRUE);
+            }
 
             if (method != null) {
                 call.setOperation(method);
             }
 
             call.invoke((org.apache.axis.Message) soapRequest);
-            soapResponse = call.getResponseMessage();
-        } catch (org.apache.axis.AxisFault af) {
-            soapResponse = new org.apache.axis.Message(af);
+            SOAPMessage soapResponse = call.getResponseMessage();
+
+            // Asynchronous services accept the request without response envelope
+            if (soapResponse == null) {
+                Map<String, String> noHeaders = Collections.emptyMap();
+                soapResponse = SoapEnvelopeTemplate.getTemplate(this.version, noHeaders, noHeaders).newMessage(null,
+                        null, noHeaders, noHeaders);
+            }
+            exchange = new Exchange(url, call, soapResponse);
+            return exchange;
+        } catch (AxisFault af) {
+
+            // Non-SOAP error responses carry the HTTP status as fault detail
+            Element errorCode = af.lookupFaultDetail(Constants.QNAME_FAULTDETAIL_HTTPERRORCODE);
+
+            if (errorCode != null) {
+                try {
+                    throw new HttpStatusException(Integer.parseInt(errorCode.getTextContent().trim()), af);
+                } catch (NumberFormatException ex) {
+                    throw af;
+                }
+            }
+
+            if (af.getCause() != null) {
+                throw af;
+            }
+            return new Exchange(url, null, new org.apache.axis.Message(af));
+        } finally {
+            if (exchange == null) {
+                pool.release(url, call, false);
+            }
         }
-        return soapResponse;
     }
 
     /**
@@ -253,133 +315,160 @@ public class SoapClientImpl implements WebServiceClient {
      */
     private SOAPMessage createSoapMessage(URL url, String method) throws WebServiceException {
 
-        try {
-            SOAPConstants soapConstants;
-            SOAPMessage soapMessage;
-
-            switch (version) {
-            case V_1_1:
-                soapConstants = new SOAP11Constants();
-                break;
-            case V_1_2:
-                soapConstants = new SOAP12Constants();
-                break;
-            default:
-                throw new WebServiceException("Invalid SoapVersion defined: " + version);
-            }
+        Map<String, String> headerAttributes = getHeaderAttributes();
+        Map<String, String> headerElements = getHeaderElements();
+        SoapEnvelopeTemplate template = SoapEnvelopeTemplate.getTemplate(version, headerAttributes, headerElements);
 
-            // Create SOAP 1.1 or SOAP 1.2 message
-            soapMessage = SoapMessageFactory.getInstance().createMessage(soapConstants);
+        String soapAction = method != null ? url + "/" + method : null;
+        SOAPMessage soapMessage = template.newMessage(soapAction, method, headerAttributes, headerElements);
 
-            // Manipulate HTTP header attributes
-            MimeHeaders hd = soapMessage.getMimeHeaders();
-            String contentType = soapConstants.getContentType();
-            contentType += ";charset=UTF-8";
+        // Attachments are sent as SOAP with attachments
+        List<SoapAttachment> attachments = getAttachments();
 
-            if (method != null) {
-                hd.addHeader(SOAP_ACTION, url + "/" + method);
-                contentType += ";action=" + method;
-            }
+        if (!attachments.isEmpty() && isMtomEnabled()) {
+            throw new WebServiceException("MTOM is not supported by SoapTransport " + SoapTransport.AXIS
+                    + ", use " + SoapTransport.STAX);
+        }
 
-            hd.setHeader(CONTENT_TYPE, contentType);
+        for (SoapAttachment attachment : attachments) {
+            AttachmentPart part = soapMessage.createAttachmentPart(new DataHandler(new AttachmentDataSource(
+                    attachment)));
+            part.setContentId("<" + attachment.getContentId() + ">");
+            soapMessage.addAttachmentPart(part);
+        }
+        return soapMessage;
+    }
 
-            // Add SOAP-Header attributes and elements
-            for (String name : this.headerAttributes.keySet()) {
-                soapMessage.getSOAPHeader().addAttribute(SOAPFactory.newInstance().createName(name),
-                        this.headerAttributes.get(name));
-            }
+    /**
+     * Stores the attachments of the given response to temporary files and passes them to the
+     * {@link AttachmentListener}s.
+     * 
+     * @param soapResponse
+     *            the SOAP response
+     * @throws WebServiceException
+     *             thrown, if an attachment cannot be stored
+     */
+    private void receiveAttachments(SOAPMessage soapResponse) throws WebServiceException {
 
-            for (String name : this.headerElements.keySet()) {
-                soapMessage.getSOAPHeader().addHeaderElement(SOAPFactory.newInstance().createName(name))
-                        .setValue(this.headerElements.get(name));
+        if (soapResponse.countAttachments() == 0) {
+            return;
+        }
+
+        Iterator<?> parts = soapResponse.getAttachments();
+
+        while (parts.hasNext()) {
+            AttachmentPart part = (AttachmentPart) parts.next();
+            String contentId = part.getContentId();
+
+            if (contentId != null && contentId.startsWith("<") && contentId.endsWith(">")) {
+                contentId = contentId.substring(1, contentId.length() - 1);
             }
 
-            return soapMessage;
-        } catch (SOAPException ex) {
-            throw new WebServiceException("Could not create SOAPMessage", ex);
+            try {
+                InputStream in = part.getDataHandler().getInputStream();
+
+                try {
+                    this.attachmentReceived(getAttachmentStore().store(contentId, part.getContentType(), in));
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                throw new WebServiceException("Could not store attachment '" + contentId + "'", ex);
+            } catch (SOAPException ex) {
+                throw new WebServiceException("Could not store attachment '" + contentId + "'", ex);
+            }
         }
     }
 
     /**
-     * Gets the payload from the given SOAPBody.
+     * Gets the payload from the given response. The envelope is parsed once from the received
+     * bytes without building the Axis message tree, the first element of the body is then moved to
+     * the root of the same document instead of being copied.
      * 
-     * @param soapBody
-     *            the SOAPBody to get the payload from
-     * @return the payload
+     * @param soapResponse
+     *            the SOAP response to get the payload from
+     * @return the payload, an empty document if the body has no element
      */
-    private Document getDocument(SOAPBody soapBody) throws WebServiceException {
+    private Document getDocument(SOAPMessage soapResponse) throws WebServiceException {
 
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db;
-            db = dbf.newDocumentBuilder();
-            Document doc = db.newDocument();
-            Element root = null;
-            NodeList childNodes = soapBody.getChildNodes();
-
-            for (int i = 0; i < childNodes.getLength(); i++) {
-                Node child = childNodes.item(i);
-
-                if (child.getNodeType() == Node.ELEMENT_NODE) {
-                    root = (Element) child;
-                    break;
-                }
+            byte[] envelope = ((org.apache.axis.Message) soapResponse).getSOAPPartAsBytes();
+            Document doc = XmlFactoryRegistry.getInstance().getDocumentBuilder()
+                    .parse(new ByteArrayInputStream(envelope));
+            Element root = doc.getDocumentElement();
+            Element body = getFirstElement(root, BODY);
+            Element payload = body != null ? getFirstElement(body, null) : null;
+
+            if (payload == null) {
+                doc.removeChild(root);
+                return doc;
             }
 
-            if (root != null) {
-                doc.appendChild(doc.importNode(root, true));
-            }
+            // Keep the namespaces declared by Envelope and Body
+            inheritNamespaces(body, payload);
+            inheritNamespaces(root, payload);
+
+            body.removeChild(payload);
+            doc.replaceChild(payload, root);
             return doc;
-        } catch (ParserConfigurationException ex) {
+        } catch (SAXException ex) {
+            throw new WebServiceException("Could not read response document from SOAPBody", ex);
+        } catch (IOException ex) {
             throw new WebServiceException("Could not read response document from SOAPBody", ex);
         }
     }
 
-    private void messageSent(SOAPMessage request) {
-
-        String trace = trace(request);
-        
-        for (WebServiceListener listener : this.listeners) {
-            listener.messageSent(trace);
-        }
-    }
+    /**
+     * Gets the first child element of the given parent.
+     * 
+     * @param parent
+     *            the parent element
+     * @param localName
+     *            the local name of the child, or null for any element
+     * @return the child element, or null if not found
+     */
+    private static Element getFirstElement(Element parent, String localName) {
 
-    private void messageReceived(SOAPMessage response) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
 
-        String trace = trace(response);
-        
-        for (WebServiceListener listener : this.listeners) {
-            listener.messageReceived(trace);
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && (localName == null || localName.equals(child.getLocalName()))) {
+                return (Element) child;
+            }
         }
+        return null;
     }
 
-    private void start() {
+    /**
+     * Copies the namespace declarations of the given ancestor to the element, unless the element
+     * redeclares them.
+     */
+    private static void inheritNamespaces(Element ancestor, Element element) {
 
-        for (WebServiceListener listener : this.listeners) {
-            listener.start();
-        }
-    }
+        NamedNodeMap attributes = ancestor.getAttributes();
 
-    private void finished() {
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
 
-        for (WebServiceListener listener : this.listeners) {
-            listener.finished();
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+                    && !element.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, attribute.getLocalName())) {
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, attribute.getNodeName(),
+                        attribute.getNodeValue());
+            }
         }
     }
 
-    @Override
-    public void addWebServiceListener(WebServiceListener listener) {
+    private void messageSent(SOAPMessage request) {
 
-        if (listener != null) {
-            this.listeners.add(listener);
+        if (isTracingEnabled()) {
+            messageSent(trace(request));
         }
     }
 
-    @Override
-    public void removeWebServiceListener(WebServiceListener listener) {
+    private void messageReceived(SOAPMessage response) {
 
-        if (listener != null) {
-            this.listeners.remove(listener);
+        if (isTracingEnabled()) {
+            messageReceived(trace(response));
         }
     }
 
@@ -417,6 +506,24 @@ public class SoapClientImpl implements WebServiceClient {
     public String sendMessage(URL url, String method, String message) throws SOAPException, WebServiceException {
         throw new WebServiceException("Operation not supported by SoapClientImpl");
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T sendMessage(URL url, String method, String message, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException {
+        throw new WebServiceException("Operation not supported by SoapClientImpl");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T sendMessage(URL url, String method, RequestBody body, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException {
+        throw new WebServiceException("Operation not supported by SoapClientImpl");
+    }
     
     private String trace(SOAPMessage msg) {
 
@@ -430,19 +537,28 @@ public class SoapClientImpl implements WebServiceClient {
     }
 
     /**
-     * {@inheritDoc}
+     * A received response with the leased {@link Call} its message is bound to.
      */
-    @Override
-    public void setUsername(String username) {
-        this.username = username;
-    }
+    private static class Exchange {
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void setPassword(String password) {
-        this.password = password;
+        private final URL url;
+
+        private final Call call;
+
+        private final SOAPMessage response;
+
+        Exchange(URL url, Call call, SOAPMessage response) {
+            this.url = url;
+            this.call = call;
+            this.response = response;
+        }
+
+        /**
+         * Gives the call back to the pool, after the response has been read.
+         */
+        void release() {
+            CallPool.getInstance().release(this.url, this.call, true);
+        }
     }
 
 }
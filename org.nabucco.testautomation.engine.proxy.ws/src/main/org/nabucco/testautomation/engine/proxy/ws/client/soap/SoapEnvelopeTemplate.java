@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.soap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.MimeHeaders;
+import javax.xml.soap.Name;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPMessage;
+
+import org.apache.axis.soap.SOAPConstants;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+
+/**
+ * SoapEnvelopeTemplate
+ * <p>
+ * Precompiled envelope of a SOAP version and a set of header attributes and elements. The
+ * constants, content type and header names are resolved once per template, a new request message
+ * is filled from them and the header values of the call without any further lookups. Templates
+ * are cached by the header names only, since most test steps of a suite share the same version
+ * and headers, while values like a WS-Addressing MessageID change with every call.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class SoapEnvelopeTemplate {
+
+    /**
+     * The maximum number of cached templates.
+     */
+    public static final int MAX_TEMPLATES = 64;
+
+    private static final String CHARSET = ";charset=UTF-8";
+
+    private static final String ACTION = ";action=";
+
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    private static final String SOAP_ACTION = "SOAPAction";
+
+    private static final Map<Key, SoapEnvelopeTemplate> templates = new LinkedHashMap<Key, SoapEnvelopeTemplate>(16,
+            0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Key, SoapEnvelopeTemplate> eldest) {
+            return this.size() > MAX_TEMPLATES;
+        }
+    };
+
+    private final SOAPConstants constants;
+
+    private final String contentType;
+
+    private final List<HeaderName> headerAttributes;
+
+    private final List<HeaderName> headerElements;
+
+    /**
+     * Compiles a new template.
+     */
+    private SoapEnvelopeTemplate(SoapVersion version, Map<String, String> headerAttributes,
+            Map<String, String> headerElements) throws WebServiceException {
+
+        switch (version) {
+        case V_1_1:
+            this.constants = SOAPConstants.SOAP11_CONSTANTS;
+            break;
+        case V_1_2:
+            this.constants = SOAPConstants.SOAP12_CONSTANTS;
+            break;
+        default:
+            throw new WebServiceException("Invalid SoapVersion defined: " + version);
+        }
+
+        this.contentType = this.constants.getContentType() + CHARSET;
+
+        try {
+            SOAPFactory factory = XmlFactoryRegistry.getInstance().getSOAPFactory();
+            this.headerAttributes = compile(factory, headerAttributes);
+            this.headerElements = compileElements(factory, headerElements);
+        } catch (SOAPException ex) {
+            throw new WebServiceException("Could not compile SOAP header", ex);
+        }
+    }
+
+    /**
+     * Gets the template for the given SOAP version and the names of the given headers.
+     * 
+     * @param version
+     *            the SOAP version
+     * @param headerAttributes
+     *            the SOAP header attributes
+     * @param headerElements
+     *            the SOAP header elements
+     * @return the compiled template
+     * @throws WebServiceException
+     *             thrown, if the template could not be compiled
+     */
+    public static SoapEnvelopeTemplate getTemplate(SoapVersion version, Map<String, String> headerAttributes,
+            Map<String, String> headerElements) throws WebServiceException {
+
+        Key key = new Key(version, new ArrayList<String>(headerAttributes.keySet()), new ArrayList<String>(
+                headerElements.keySet()));
+
+        synchronized (templates) {
+            SoapEnvelopeTemplate template = templates.get(key);
+
+            if (template != null) {
+                return template;
+            }
+        }
+
+        SoapEnvelopeTemplate template = new SoapEnvelopeTemplate(version, headerAttributes, headerElements);
+
+        synchronized (templates) {
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Discards all cached templates.
+     */
+    public static void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    /**
+     * Creates a new request message with the MIME and SOAP headers of this template and an empty
+     * body.
+     * 
+     * @param soapAction
+     *            the SOAPAction header, or null
+     * @param method
+     *            the action of the content type, or null
+     * @param headerAttributes
+     *            the values of the SOAP header attributes by name
+     * @param headerElements
+     *            the values of the SOAP header elements by path
+     * @return the new request message
+     * @throws WebServiceException
+     *             thrown, if the message could not be created
+     */
+    public SOAPMessage newMessage(String soapAction, String method, Map<String, String> headerAttributes,
+            Map<String, String> headerElements) throws WebServiceException {
+
+        try {
+            SOAPMessage soapMessage = SoapMessageFactory.getInstance().createMessage(this.constants);
+
+            MimeHeaders hd = soapMessage.getMimeHeaders();
+
+            if (method != null) {
+                hd.addHeader(SOAP_ACTION, soapAction);
+                hd.setHeader(CONTENT_TYPE, this.contentType + ACTION + method);
+            } else {
+                hd.setHeader(CONTENT_TYPE, this.contentType);
+            }
+
+            if (!this.headerAttributes.isEmpty() || !this.headerElements.isEmpty()) {
+                SOAPHeader header = soapMessage.getSOAPHeader();
+
+                for (HeaderName attribute : this.headerAttributes) {
+                    header.addAttribute(attribute.path.get(0), headerAttributes.get(attribute.key));
+                }
+                for (HeaderName element : this.headerElements) {
+                    SOAPElement child = header.addHeaderElement(element.path.get(0));
+
+                    for (int i = 1; i < element.path.size(); i++) {
+                        child = child.addChildElement(element.path.get(i));
+                    }
+                    child.setValue(headerElements.get(element.key));
+                }
+            }
+
+            return soapMessage;
+        } catch (SOAPException ex) {
+            throw new WebServiceException("Could not create SOAPMessage", ex);
+        }
+    }
+
+    private static List<HeaderName> compile(SOAPFactory factory, Map<String, String> values) throws SOAPException {
+
+        List<HeaderName> compiled = new ArrayList<HeaderName>(values.size());
+
+        for (String key : values.keySet()) {
+            compiled.add(new HeaderName(key, Collections.singletonList(factory.createName(key))));
+        }
+        return compiled;
+    }
+
+    private static List<HeaderName> compileElements(SOAPFactory factory, Map<String, String> values)
+            throws SOAPException, WebServiceException {
+
+        List<HeaderName> compiled = new ArrayList<HeaderName>(values.size());
+
+        for (String key : values.keySet()) {
+            List<Name> path = new ArrayList<Name>();
+
+            for (QName name : HeaderElementPath.parse(key)) {
+
+                if (name.getNamespaceURI().length() == 0) {
+                    path.add(factory.createName(name.getLocalPart()));
+                } else {
+                    path.add(factory.createName(name.getLocalPart(), name.getPrefix(), name.getNamespaceURI()));
+                }
+            }
+            compiled.add(new HeaderName(key, path));
+        }
+        return compiled;
+    }
+
+    /**
+     * A resolved header attribute name or element path with the key of its value.
+     */
+    private static class HeaderName {
+
+        private final String key;
+
+        private final List<Name> path;
+
+        HeaderName(String key, List<Name> path) {
+            this.key = key;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The cache key of a template.
+     */
+    private static class Key {
+
+        private final SoapVersion version;
+
+        private final List<String> headerAttributes;
+
+        private final List<String> headerElements;
+
+        Key(SoapVersion version, List<String> headerAttributes, List<String> headerElements) {
+            this.version = version;
+            this.headerAttributes = headerAttributes;
+            this.headerElements = headerElements;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.version.hashCode();
+            result = 31 * result + this.headerAttributes.hashCode();
+            result = 31 * result + this.headerElements.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return this.version == other.version && this.headerAttributes.equals(other.headerAttributes)
+                    && this.headerElements.equals(other.headerElements);
+        }
+    }
+
+}
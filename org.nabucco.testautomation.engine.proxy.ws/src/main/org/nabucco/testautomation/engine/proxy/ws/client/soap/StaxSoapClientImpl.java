@@ -0,0 +1,873 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.client.soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.axis.encoding.Base64;
+import org.nabucco.testautomation.engine.proxy.ws.client.AbstractWebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.AttachmentListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.HttpCompression;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.RetryPolicy;
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpConnectionPool;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.MultipartReader;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.MultipartWriter;
+import org.nabucco.testautomation.engine.proxy.ws.exception.HttpStatusException;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.handler.StringResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * StaxSoapClientImpl
+ * <p>
+ * Lightweight SOAP client for document/literal services. The envelope is streamed by an XML writer
+ * to a pooled HTTP connection, the response is read by a pull parser,
+ * which builds the DOM of the payload only. SOAP faults are returned as response document like by
+ * {@link SoapClientImpl}. Attachments are streamed as SOAP with attachments or MTOM/XOP package.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class StaxSoapClientImpl extends AbstractWebServiceClient {
+
+    private static final String POST = "POST";
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    private static final String SOAP_ACTION = "SOAPAction";
+
+    private static final String SOAP11_CONTENT_TYPE = "text/xml;charset=UTF-8";
+
+    private static final String SOAP12_CONTENT_TYPE = "application/soap+xml;charset=UTF-8";
+
+    private static final String SOAP11_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    private static final String SOAP12_ENVELOPE_NS = "http://www.w3.org/2003/05/soap-envelope";
+
+    private static final String PREFIX = "soapenv";
+
+    private static final String ENVELOPE = "Envelope";
+
+    private static final String HEADER = "Header";
+
+    private static final String BODY = "Body";
+
+    private static final String XML = "xml";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private final SoapVersion version;
+
+    private final String envelopeNamespace;
+
+    private final String contentType;
+
+    private final Object envelopeLock = new Object();
+
+    private List<Document> serializedMessages;
+
+    private byte[] serializedEnvelope;
+
+    /**
+     * Constructs a new streaming SOAP client.
+     * 
+     * @param version
+     *            the SOAP-Version (1.1 or 1.2)
+     * @throws WebServiceException
+     *             thrown, if the version is not supported
+     */
+    public StaxSoapClientImpl(SoapVersion version) throws WebServiceException {
+        this.version = version;
+
+        switch (version) {
+        case V_1_1:
+            this.envelopeNamespace = SOAP11_ENVELOPE_NS;
+            this.contentType = SOAP11_CONTENT_TYPE;
+            break;
+        case V_1_2:
+            this.envelopeNamespace = SOAP12_ENVELOPE_NS;
+            this.contentType = SOAP12_CONTENT_TYPE;
+            break;
+        default:
+            throw new WebServiceException("Invalid SoapVersion defined: " + version);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected AbstractWebServiceClient newInstance() throws WebServiceException {
+        return new StaxSoapClientImpl(this.version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document sendMessage(URL url, Document message) throws SOAPException, WebServiceException {
+        return this.call(url, null, Collections.singletonList(message));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document sendMessage(URL url, String method, Document message) throws SOAPException, WebServiceException {
+        return this.call(url, method, Collections.singletonList(message));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document sendMessage(URL url, List<Document> messages) throws SOAPException, WebServiceException {
+        return this.call(url, null, messages);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document sendMessage(URL url, String method, List<Document> messages) throws SOAPException,
+            WebServiceException {
+        return this.call(url, method, messages);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String sendMessage(URL url, String message) throws SOAPException, WebServiceException {
+        throw new WebServiceException("Operation not supported by StaxSoapClientImpl");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String sendMessage(URL url, String method, String message) throws SOAPException, WebServiceException {
+        throw new WebServiceException("Operation not supported by StaxSoapClientImpl");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T sendMessage(URL url, String method, String message, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException {
+        throw new WebServiceException("Operation not supported by StaxSoapClientImpl");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T sendMessage(URL url, String method, RequestBody body, WebServiceResponseHandler<T> handler)
+            throws SOAPException, WebServiceException {
+        throw new WebServiceException("Operation not supported by StaxSoapClientImpl");
+    }
+
+    /**
+     * Calls the webservice according to the retry policy of the client. The envelope is streamed
+     * to the connection, unless it is sent more than once by retries or reused requests, or
+     * traced. Then it is serialized once and sent by every attempt. Hedging is not supported.
+     * 
+     * @param url
+     *            the target URL
+     * @param method
+     *            the webservice method, or null
+     * @param messages
+     *            the payload of the SOAP body
+     * @return the payload of the response body
+     * @throws SOAPException
+     * @throws WebServiceException
+     */
+    private Document call(final URL url, final String method, final List<Document> messages) throws SOAPException,
+            WebServiceException {
+
+        RetryPolicy policy = getRetryPolicy();
+
+        if (policy.isHedging()) {
+            policy = new RetryPolicy(policy.getMaxAttempts(), policy.getInitialBackoff(), policy.getMaxBackoff(),
+                    false, policy.isIdempotent());
+        }
+
+        final byte[] envelope;
+
+        if (isRequestReused()) {
+            envelope = this.getEnvelope(url, messages);
+        } else if (policy.getMaxAttempts() > 1 || isTracingEnabled()) {
+            envelope = this.serialize(url, messages);
+        } else {
+            envelope = null;
+        }
+
+        this.start();
+        Document response = this.execute(url, policy, false, new Callable<Document>() {
+
+            @Override
+            public Document call() throws Exception {
+                return send(url, method, envelope, messages);
+            }
+        });
+        this.finished();
+        return response;
+    }
+
+    /**
+     * Gets the serialized envelope of a reused payload. The envelope of the last payload is kept,
+     * so a payload sent to several endpoints by this client is serialized once. The payload must
+     * not be modified after it was sent.
+     * 
+     * @param url
+     *            the target URL
+     * @param messages
+     *            the payload of the SOAP body
+     * @return the envelope in UTF-8
+     * @throws WebServiceException
+     *             thrown, if the envelope cannot be written
+     */
+    private byte[] getEnvelope(URL url, List<Document> messages) throws WebServiceException {
+
+        synchronized (this.envelopeLock) {
+
+            if (this.serializedMessages != messages) {
+                this.serializedEnvelope = this.serialize(url, messages);
+                this.serializedMessages = messages;
+            }
+            return this.serializedEnvelope;
+        }
+    }
+
+    /**
+     * Serializes the envelope of the given payload.
+     * 
+     * @param url
+     *            the target URL
+     * @param messages
+     *            the payload of the SOAP body
+     * @return the envelope in UTF-8
+     * @throws WebServiceException
+     *             thrown, if the envelope cannot be written
+     */
+    private byte[] serialize(URL url, List<Document> messages) throws WebServiceException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try {
+            this.writeEnvelope(buffer, messages);
+        } catch (XMLStreamException e) {
+            throw new WebServiceException("Invalid SOAP message for URL '" + url.toString() + "'", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Sends a single attempt of a call.
+     * 
+     * @param url
+     *            the target URL
+     * @param method
+     *            the webservice method, or null
+     * @param envelope
+     *            the serialized SOAP envelope, or null to stream the envelope of the payload
+     * @param messages
+     *            the payload of the SOAP body
+     * @return the payload of the response body
+     * @throws WebServiceException
+     *             thrown, if the call fails or the response is neither a SOAP response nor a fault
+     */
+    private Document send(URL url, String method, byte[] envelope, List<Document> messages)
+            throws WebServiceException {
+
+        HttpConnectionPool pool = HttpConnectionPool.getInstance();
+        HttpURLConnection connection = null;
+        boolean reusable = false;
+
+        try {
+            connection = pool.lease(url);
+            connection.setRequestMethod(POST);
+            connection.setDoOutput(true);
+
+            connection.setConnectTimeout(getConnectTimeout(DEFAULT_TIMEOUT));
+            connection.setReadTimeout(getReadTimeout(url, DEFAULT_TIMEOUT));
+
+            String authorization = this.getAuthorization();
+
+            if (authorization != null) {
+                connection.setRequestProperty(WebServiceClient.AUTHORIZATION, authorization);
+            }
+
+            // Attachments are sent as multipart message with the envelope as root part
+            List<SoapAttachment> attachments = getAttachments();
+            MultipartWriter multipart = attachments.isEmpty() ? null : new MultipartWriter(this.contentType,
+                    isMtomEnabled());
+            String contentType = multipart != null ? multipart.getContentType() : this.contentType;
+
+            if (method != null) {
+                connection.setRequestProperty(SOAP_ACTION, url + "/" + method);
+                connection.setRequestProperty(CONTENT_TYPE, contentType + ";action=" + method);
+            } else {
+                connection.setRequestProperty(CONTENT_TYPE, contentType);
+            }
+
+            HttpCompression compression = getCompression();
+
+            if (compression != HttpCompression.NONE) {
+                connection.setRequestProperty(HttpCompression.ACCEPT_ENCODING, HttpCompression.SUPPORTED_ENCODINGS);
+                connection.setRequestProperty(HttpCompression.CONTENT_ENCODING, compression.getContentCoding());
+            }
+
+            if (envelope != null && isTracingEnabled()) {
+                this.messageSent(new String(envelope, CHARSET));
+            }
+
+            if (envelope != null && multipart == null && compression == HttpCompression.NONE) {
+                connection.setFixedLengthStreamingMode(envelope.length);
+            } else {
+                connection.setChunkedStreamingMode(CHUNK_SIZE);
+            }
+
+            OutputStream out = compression.compress(connection.getOutputStream());
+
+            try {
+                if (multipart != null) {
+                    multipart.startRoot(out);
+                }
+
+                if (envelope != null) {
+                    out.write(envelope);
+                } else {
+                    this.writeEnvelope(out, messages);
+                }
+
+                if (multipart != null) {
+                    for (SoapAttachment attachment : attachments) {
+                        multipart.writeAttachment(out, attachment);
+                    }
+                    multipart.finish(out);
+                }
+            } finally {
+                out.close();
+            }
+
+            int responseCode = connection.getResponseCode();
+            InputStream in = responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream()
+                    : connection.getErrorStream();
+
+            // Asynchronous services accept the request without response envelope
+            if (responseCode == HttpURLConnection.HTTP_ACCEPTED
+                    || responseCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                reusable = HttpConnectionPool.drain(in);
+                return newDocument();
+            }
+
+            // SOAP faults are sent with status 500
+            String responseType = connection.getContentType();
+            boolean multipartResponse = MultipartReader.isMultipart(responseType);
+            boolean soapResponse = responseCode == HttpURLConnection.HTTP_OK
+                    || responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR
+                    && (multipartResponse || isXml(responseType));
+
+            if (in == null || !soapResponse) {
+                reusable = HttpConnectionPool.drain(in);
+                throw new HttpStatusException(responseCode);
+            }
+
+            HttpCompression contentCoding = HttpCompression.forContentEncoding(connection.getContentEncoding());
+
+            if (contentCoding == null) {
+                reusable = HttpConnectionPool.drain(in);
+                throw new WebServiceException("Unsupported Content-Encoding: " + connection.getContentEncoding());
+            }
+
+            in = contentCoding.decompress(in);
+
+            try {
+                if (multipartResponse) {
+                    return this.receiveMultipart(in, responseType);
+                }
+                return this.receiveEnvelope(in);
+            } finally {
+                reusable = HttpConnectionPool.drain(in);
+            }
+        } catch (IOException e) {
+            throw new WebServiceException("Error during communication with URL '" + url.toString() + "'", e);
+        } catch (XMLStreamException e) {
+            throw new WebServiceException("Invalid SOAP message exchanged with URL '" + url.toString() + "'", e);
+        } finally {
+            pool.release(connection, reusable);
+        }
+    }
+
+    /**
+     * Writes the SOAP envelope with the header of the client and the given payload.
+     * 
+     * @param out
+     *            the stream to write to
+     * @param messages
+     *            the payload of the SOAP body
+     * @throws XMLStreamException
+     *             thrown, if the envelope cannot be written
+     * @throws WebServiceException
+     *             thrown, if a header element name is invalid
+     */
+    private void writeEnvelope(OutputStream out, List<Document> messages) throws XMLStreamException,
+            WebServiceException {
+
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, CHARSET);
+
+        try {
+            Map<String, String> scope = new HashMap<String, String>();
+            scope.put(PREFIX, this.envelopeNamespace);
+
+            writer.writeStartDocument(CHARSET, "1.0");
+            writer.writeStartElement(PREFIX, ENVELOPE, this.envelopeNamespace);
+            writer.writeNamespace(PREFIX, this.envelopeNamespace);
+
+            Map<String, String> headerAttributes = getHeaderAttributes();
+            Map<String, String> headerElements = getHeaderElements();
+
+            if (!headerAttributes.isEmpty() || !headerElements.isEmpty()) {
+                writer.writeStartElement(PREFIX, HEADER, this.envelopeNamespace);
+
+                for (Entry<String, String> attribute : headerAttributes.entrySet()) {
+                    writer.writeAttribute(attribute.getKey(), attribute.getValue());
+                }
+                for (Entry<String, String> element : headerElements.entrySet()) {
+                    List<QName> path = HeaderElementPath.parse(element.getKey());
+                    QName parent = null;
+
+                    for (QName name : path) {
+
+                        if (name.getNamespaceURI().length() == 0) {
+                            writer.writeStartElement(name.getLocalPart());
+                        } else {
+                            writer.writeStartElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+
+                            // Nested elements of the same namespace inherit the declaration
+                            if (parent == null || !name.getNamespaceURI().equals(parent.getNamespaceURI())
+                                    || !name.getPrefix().equals(parent.getPrefix())) {
+                                writer.writeNamespace(name.getPrefix(), name.getNamespaceURI());
+                            }
+                        }
+                        parent = name;
+                    }
+                    writer.writeCharacters(element.getValue());
+
+                    for (int i = 0; i < path.size(); i++) {
+                        writer.writeEndElement();
+                    }
+                }
+                writer.writeEndElement();
+            }
+
+            writer.writeStartElement(PREFIX, BODY, this.envelopeNamespace);
+
+            for (Document message : messages) {
+                writeElement(writer, message.getDocumentElement(), scope);
+            }
+
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads the SOAP envelope of a response and builds the document of the first element of the
+     * body.
+     * 
+     * @param in
+     *            the response stream
+     * @return the payload document, empty if the body has no element
+     * @throws IOException
+     *             thrown, if the response cannot be read
+     * @throws XMLStreamException
+     *             thrown, if the response is not well-formed
+     * @throws WebServiceException
+     *             thrown, if the document cannot be created
+     */
+    private Document receiveEnvelope(InputStream in) throws IOException, XMLStreamException, WebServiceException {
+
+        if (isTracingEnabled()) {
+            byte[] content = StringResponseHandler.toByteArray(in);
+            this.messageReceived(new String(content, CHARSET));
+            in = new ByteArrayInputStream(content);
+        }
+
+        Document document = newDocument();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+
+        try {
+            Map<String, String> scope = new HashMap<String, String>();
+            boolean inBody = false;
+            int depth = 0;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+
+                    if (depth == 3 && inBody) {
+                        document.appendChild(readElement(reader, document, scope));
+                        return document;
+                    }
+
+                    inBody = depth == 2 && BODY.equals(reader.getLocalName());
+
+                    // Only the namespaces of Envelope and Body are inherited by the payload
+                    if (depth == 1 || inBody) {
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            String prefix = reader.getNamespacePrefix(i);
+                            scope.put(prefix != null ? prefix : "", reader.getNamespaceURI(i));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    inBody = false;
+                }
+            }
+            return document;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a multipart response. The root part is read as SOAP envelope, all other parts are
+     * stored to temporary files and passed to the {@link AttachmentListener}s.
+     * 
+     * @param in
+     *            the response stream
+     * @param contentType
+     *            the multipart content type of the response
+     * @return the payload document
+     * @throws IOException
+     *             thrown, if the response cannot be read
+     * @throws XMLStreamException
+     *             thrown, if the envelope is not well-formed
+     * @throws WebServiceException
+     *             thrown, if the response has no envelope
+     */
+    private Document receiveMultipart(InputStream in, String contentType) throws IOException, XMLStreamException,
+            WebServiceException {
+
+        MultipartReader reader = new MultipartReader(in, contentType);
+        Document document = null;
+        MultipartReader.Part part;
+        int index = 0;
+
+        while ((part = reader.next()) != null) {
+
+            if (document == null && reader.isRoot(part, index)) {
+                document = this.receiveEnvelope(part.getInputStream());
+            } else {
+                this.attachmentReceived(getAttachmentStore().store(part.getContentId(), part.getContentType(), part
+                        .getInputStream()));
+            }
+            index++;
+        }
+
+        if (document == null) {
+            throw new WebServiceException("No SOAP envelope found in multipart response");
+        }
+        return document;
+    }
+
+    /**
+     * Builds the element at the current position of the reader with all its content.
+     * 
+     * @param reader
+     *            the reader positioned at a start element
+     * @param document
+     *            the owner document
+     * @param scope
+     *            the namespaces declared by the ancestors of the element
+     * @return the element
+     * @throws XMLStreamException
+     *             thrown, if the content is not well-formed
+     */
+    private static Element readElement(XMLStreamReader reader, Document document, Map<String, String> scope)
+            throws XMLStreamException {
+
+        Element root = createElement(reader, document);
+
+        for (Entry<String, String> namespace : scope.entrySet()) {
+            String prefix = namespace.getKey();
+
+            String localName = prefix.length() == 0 ? XMLConstants.XMLNS_ATTRIBUTE : prefix;
+
+            if (!root.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, localName)) {
+                root.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, toNamespaceQName(prefix),
+                        namespace.getValue());
+            }
+        }
+
+        Node current = root;
+
+        while (current != null) {
+
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element element = createElement(reader, document);
+                current.appendChild(element);
+                current = element;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                current = current == root ? null : current.getParentNode();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                current.appendChild(document.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.CDATA:
+                current.appendChild(document.createCDATASection(reader.getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                current.appendChild(document.createComment(reader.getText()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                current.appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                break;
+            default:
+                break;
+            }
+        }
+        return root;
+    }
+
+    private static Element createElement(XMLStreamReader reader, Document document) {
+
+        Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), toQName(
+                reader.getPrefix(), reader.getLocalName()));
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String uri = reader.getNamespaceURI(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, toNamespaceQName(reader.getNamespacePrefix(i)),
+                    nullToEmpty(uri));
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), toQName(
+                    reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    /**
+     * Writes the given element with all its content.
+     * 
+     * @param writer
+     *            the writer
+     * @param element
+     *            the element to write
+     * @param scope
+     *            the namespaces declared by the ancestors of the element
+     * @throws XMLStreamException
+     *             thrown, if the element cannot be written
+     */
+    private static void writeElement(XMLStreamWriter writer, Element element, Map<String, String> scope)
+            throws XMLStreamException {
+
+        String namespace = element.getNamespaceURI();
+        String localName = element.getLocalName();
+
+        // Elements created without namespace support are written as they are
+        if (localName == null) {
+            writer.writeStartElement(element.getTagName());
+        } else if (namespace == null) {
+            writer.writeStartElement(localName);
+        } else {
+            writer.writeStartElement(nullToEmpty(element.getPrefix()), localName, namespace);
+        }
+
+        NamedNodeMap attributes = element.getAttributes();
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                String prefix = XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getLocalName()) ? "" : attribute
+                        .getLocalName();
+                scope = declare(writer, scope, prefix, attribute.getValue());
+            }
+        }
+
+        if (localName != null) {
+            scope = declare(writer, scope, nullToEmpty(element.getPrefix()), nullToEmpty(namespace));
+        }
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String attributeNamespace = attribute.getNamespaceURI();
+
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attributeNamespace)) {
+                continue;
+            }
+
+            if (attribute.getLocalName() == null) {
+                writer.writeAttribute(attribute.getName(), attribute.getValue());
+            } else if (attributeNamespace == null) {
+                writer.writeAttribute(attribute.getLocalName(), attribute.getValue());
+            } else {
+                scope = declare(writer, scope, nullToEmpty(attribute.getPrefix()), attributeNamespace);
+                writer.writeAttribute(nullToEmpty(attribute.getPrefix()), attributeNamespace,
+                        attribute.getLocalName(), attribute.getValue());
+            }
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+
+            switch (child.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                writeElement(writer, (Element) child, scope);
+                break;
+            case Node.TEXT_NODE:
+                writer.writeCharacters(child.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writer.writeCData(child.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writer.writeComment(child.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                writer.writeProcessingInstruction(child.getNodeName(), child.getNodeValue());
+                break;
+            default:
+                break;
+            }
+        }
+
+        writer.writeEndElement();
+    }
+
+    /**
+     * Declares the given namespace on the current element, if it is not yet bound in scope.
+     * 
+     * @return the scope of the children of the current element
+     */
+    private static Map<String, String> declare(XMLStreamWriter writer, Map<String, String> scope, String prefix,
+            String namespace) throws XMLStreamException {
+
+        if (XML.equals(prefix) || namespace.equals(nullToEmpty(scope.get(prefix)))) {
+            return scope;
+        }
+
+        if (prefix.length() == 0) {
+            writer.writeDefaultNamespace(namespace);
+        } else {
+            writer.writeNamespace(prefix, namespace);
+        }
+
+        Map<String, String> childScope = new HashMap<String, String>(scope);
+        childScope.put(prefix, namespace);
+        return childScope;
+    }
+
+    private static Document newDocument() throws WebServiceException {
+        return XmlFactoryRegistry.getInstance().newDocument();
+    }
+
+    private static boolean isXml(String contentType) {
+        return contentType != null && contentType.toLowerCase().indexOf(XML) >= 0;
+    }
+
+    private static String toQName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    private static String toNamespaceQName(String prefix) {
+        return prefix == null || prefix.length() == 0 ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE
+                + ":" + prefix;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.length() == 0 ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Gets the value of the Authorization header for basic authentication.
+     * 
+     * @return the header value or null, if no credentials are set
+     */
+    private String getAuthorization() {
+
+        String username = getUsername();
+        String password = getPassword();
+
+        if (username == null || password == null) {
+            return null;
+        }
+        String auth = username + ":" + password;
+        return WebServiceClient.BASIC + Base64.encode(auth.getBytes());
+    }
+
+}
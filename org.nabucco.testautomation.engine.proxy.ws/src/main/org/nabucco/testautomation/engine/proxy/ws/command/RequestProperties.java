@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.command;
+
+import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.HttpCompression;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestSpec;
+import org.nabucco.testautomation.engine.proxy.ws.client.RetryPolicy;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
+
+/**
+ * RequestProperties
+ * <p>
+ * Reads the request settings shared by the REST and SOAP commands. A property of the PropertyList
+ * of the action overrides the property of the Metadata.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class RequestProperties {
+
+    /**
+     * Constructs a new instance.
+     */
+    private RequestProperties() {
+    }
+
+    /**
+     * Gets the value of a property of the given PropertyList or, if not provided, of the Metadata.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList, may be null
+     * @param name
+     *            the property name
+     * @return the value, or null if not provided
+     */
+    public static String getPropertyValue(Metadata metadata, PropertyList propertyList, String name) {
+
+        String value = getPropertyValue(propertyList, name);
+
+        if (value == null) {
+            value = getPropertyValue(metadata.getPropertyList(), name);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value of a property of the given PropertyList.
+     * 
+     * @param propertyList
+     *            the PropertyList, may be null
+     * @param name
+     *            the property name
+     * @return the value, or null if not provided
+     */
+    public static String getPropertyValue(PropertyList propertyList, String name) {
+
+        if (propertyList == null) {
+            return null;
+        }
+        Property property = PropertyHelper.getFromList(propertyList, name);
+        return property != null ? PropertyHelper.toString(property) : null;
+    }
+
+    /**
+     * Gets the compression specified in the given PropertyList or Metadata object.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @return the compression, {@link HttpCompression#NONE} if not provided
+     * @throws WebServiceException
+     *             thrown, if an unsupported compression is specified
+     */
+    public static HttpCompression getCompression(Metadata metadata, PropertyList propertyList)
+            throws WebServiceException {
+
+        String value = getPropertyValue(metadata, propertyList, WsConstants.COMPRESSION);
+
+        if (value == null) {
+            return HttpCompression.NONE;
+        }
+
+        HttpCompression compression = HttpCompression.getCompression(value);
+
+        if (compression == null) {
+            throw new WebServiceException("Unsupported " + WsConstants.COMPRESSION + ": " + value);
+        }
+        return compression;
+    }
+
+    /**
+     * Gets the timeouts specified in the given PropertyList or Metadata object and applies them to
+     * the given request.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @param spec
+     *            the request to configure
+     * @throws WebServiceException
+     *             thrown, if a timeout property is not a number
+     */
+    public static void applyTimeouts(Metadata metadata, PropertyList propertyList, RequestSpec.Builder spec)
+            throws WebServiceException {
+
+        String connectTimeout = getPropertyValue(metadata, propertyList, WsConstants.CONNECT_TIMEOUT);
+        String readTimeout = getPropertyValue(metadata, propertyList, WsConstants.READ_TIMEOUT);
+        String adaptiveTimeout = getPropertyValue(metadata, propertyList, WsConstants.ADAPTIVE_TIMEOUT);
+
+        try {
+            if (connectTimeout != null) {
+                spec.connectTimeout(Integer.parseInt(connectTimeout.trim()));
+            }
+            if (readTimeout != null) {
+                spec.readTimeout(Integer.parseInt(readTimeout.trim()));
+            }
+            if (adaptiveTimeout != null) {
+                spec.adaptiveTimeoutFactor(Double.parseDouble(adaptiveTimeout.trim()));
+            }
+        } catch (NumberFormatException ex) {
+            throw new WebServiceException("Invalid timeout configuration", ex);
+        }
+    }
+
+    /**
+     * Gets the retry policy specified in the given PropertyList or Metadata object.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @return the retry policy, {@link RetryPolicy#NONE} if no retries are configured
+     * @throws WebServiceException
+     *             thrown, if a retry property is not a number
+     */
+    public static RetryPolicy getRetryPolicy(Metadata metadata, PropertyList propertyList)
+            throws WebServiceException {
+
+        String attempts = getPropertyValue(metadata, propertyList, WsConstants.RETRY_ATTEMPTS);
+        String backoff = getPropertyValue(metadata, propertyList, WsConstants.RETRY_BACKOFF);
+        boolean hedging = Boolean.parseBoolean(getPropertyValue(metadata, propertyList, WsConstants.HEDGING));
+        boolean idempotent = Boolean.parseBoolean(getPropertyValue(metadata, propertyList, WsConstants.IDEMPOTENT));
+
+        if (attempts == null && !hedging) {
+            return RetryPolicy.NONE;
+        }
+
+        try {
+            long initialBackoff = backoff != null ? Long.parseLong(backoff.trim()) : RetryPolicy.DEFAULT_INITIAL_BACKOFF;
+            return new RetryPolicy(attempts != null ? Integer.parseInt(attempts.trim()) : 1, initialBackoff,
+                    Math.max(initialBackoff, RetryPolicy.DEFAULT_MAX_BACKOFF), hedging, idempotent);
+        } catch (NumberFormatException ex) {
+            throw new WebServiceException("Invalid retry configuration", ex);
+        }
+    }
+
+}
@@ -16,22 +16,28 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
 
-import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
 
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
-import org.nabucco.testautomation.engine.base.exception.NBCTestConfigurationException;
-import org.nabucco.testautomation.engine.base.xml.XMLToolkit;
 import org.nabucco.testautomation.engine.proxy.base.AbstractProxyCommand;
 import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestSpec;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.client.body.FileRequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.body.StringRequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.command.RequestProperties;
+import org.nabucco.testautomation.engine.proxy.ws.command.rest.client.RestResponseHandler.ResponseFormat;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
-import org.nabucco.testautomation.engine.proxy.ws.handler.XmlMessageHandler;
+import org.nabucco.testautomation.engine.proxy.ws.handler.RequestTemplate;
 import org.nabucco.testautomation.engine.proxy.ws.json.JsonMapper;
 import org.nabucco.testautomation.engine.proxy.ws.rest.RestCommand;
+import org.nabucco.testautomation.property.facade.datatype.FileProperty;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
 import org.nabucco.testautomation.property.facade.datatype.TextProperty;
 import org.nabucco.testautomation.property.facade.datatype.base.Property;
@@ -59,6 +65,8 @@ public abstract class AbstractRestCommand extends AbstractProxyCommand implement
     private boolean xml = false;
     
     private boolean json = false;
+    
+    private boolean file = false;
 
     AbstractRestCommand(WebServiceClient client, String defaultNSPrefix) {
         this.client = client;
@@ -93,6 +101,44 @@ public abstract class AbstractRestCommand extends AbstractProxyCommand implement
         return this.json;
     }
 
+    /**
+     * Creates the client executing the request of this command. The settings of the request are
+     * taken from the given PropertyList or Metadata and are not shared with other commands.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @param listener
+     *            the listener tracing the request
+     * @return the client bound to the settings of the request
+     * @throws WebServiceException
+     *             thrown, if the settings are invalid
+     */
+    protected WebServiceClient createClient(Metadata metadata, PropertyList propertyList, WebServiceListener listener)
+            throws WebServiceException {
+
+        RequestSpec.Builder spec = this.client.getRequestSpec().toBuilder()
+                .username(getUsername(metadata, propertyList))
+                .password(getPassword(metadata, propertyList))
+                .compression(RequestProperties.getCompression(metadata, propertyList))
+                .retryPolicy(RequestProperties.getRetryPolicy(metadata, propertyList))
+                .cachingEnabled(isCachingEnabled(metadata, propertyList))
+                .listener(listener);
+
+        RequestProperties.applyTimeouts(metadata, propertyList, spec);
+
+        // get http header attributes
+        List<Property> headerList = getHeaderAttributes(metadata, propertyList);
+
+        if (headerList != null) {
+            for (Property property : headerList) {
+                spec.headerAttribute(property.getName().getValue(), PropertyHelper.toString(property));
+            }
+        }
+        return this.client.forRequest(spec.build());
+    }
+
     /**
      * Gets the target URL specified in the given Metadata object.
      * 
@@ -193,58 +239,97 @@ public abstract class AbstractRestCommand extends AbstractProxyCommand implement
     }
 
     /**
-     * Tries to find the Message for the request within the properties of the given metadata. If the
-     * message is not found, null is returned.
+     * Checks whether the response cache is enabled in the given PropertyList or Metadata object.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @return true, if the response cache is enabled
+     */
+    protected boolean isCachingEnabled(Metadata metadata, PropertyList propertyList) {
+        
+        // Check PropertyList of Action and Metadata
+        Property cacheProperty = PropertyHelper.getFromList(propertyList, CACHE);
+        
+        if (cacheProperty == null) {
+            cacheProperty = PropertyHelper.getFromList(metadata.getPropertyList(), CACHE);
+        }
+        return cacheProperty != null && Boolean.parseBoolean(PropertyHelper.toString(cacheProperty));
+    }
+
+    /**
+     * Tries to find the body of the request within the given PropertyList or the properties of the
+     * given metadata. A FileProperty is streamed, a transformed XML message is serialized directly
+     * into the request. The FileProperty, XML message or JSON list of the action take precedence over
+     * a FileProperty or XML message of the metadata. If no body is found, null is returned.
      * 
      * @param metadata
      *            the metadata to get the message from
+     * @param propertyList
+     *            the PropertyList of the action
+     * @return the request body or null, if not provided
      * @throws WebServiceException
-     *             should not be thrown
+     *             thrown, if the XML message cannot be transformed
      */
-    protected String getMessage(Metadata metadata, PropertyList propertyList) throws WebServiceException {
+    protected RequestBody getRequestBody(Metadata metadata, PropertyList propertyList) throws WebServiceException {
 
         // First, check PropertyList from Action
         if (propertyList != null) {
 
-            Property messageProperty = PropertyHelper.getFromList(propertyList, PropertyType.XML);
-            
-            if (messageProperty == null) {
-                messageProperty = PropertyHelper.getFromList(metadata.getPropertyList(), PropertyType.XML);
-            }
+            RequestBody body = getRequestBody(metadata, propertyList, propertyList);
 
-            if (messageProperty != null) {
-                xml = true;
-                String message = PropertyHelper.toString(messageProperty);
-
-                // Get XPath for transformation
-                PropertyList transformProps = (PropertyList) PropertyHelper.getFromList(metadata.getPropertyList(),
-                        PropertyType.LIST, WsConstants.REQUEST_ID);
-
-                if (transformProps != null) {
-                    XmlMessageHandler messageHandler = new XmlMessageHandler(message, this.defaultNSPrefix);
-                    messageHandler.setTransformationProperties(transformProps);
-                    Document xml = messageHandler.transform(propertyList);
-                    StringWriter writer = new StringWriter();
-                    
-                    try {
-                        XMLToolkit.writeXMLDocument(xml, writer);
-                    } catch (NBCTestConfigurationException e) {
-                        throw new WebServiceException("Could not parse XML-Message", e);
-                    }
-                    return writer.toString();
-                } else {
-                    return message;
-                }
+            if (body == null && metadata.getPropertyList() != null) {
+                body = getRequestBody(metadata, metadata.getPropertyList(), propertyList);
             }
+            return body;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the request body of a FileProperty, XML message or JSON list in the given source
+     * PropertyList.
+     */
+    private RequestBody getRequestBody(Metadata metadata, PropertyList source, PropertyList propertyList)
+            throws WebServiceException {
+
+        Property fileProperty = PropertyHelper.getFromList(source, PropertyType.FILE);
+
+        if (fileProperty != null) {
+            file = true;
+            return new FileRequestBody((FileProperty) fileProperty);
+        }
+
+        Property messageProperty = PropertyHelper.getFromList(source, PropertyType.XML);
 
-            messageProperty = PropertyHelper.getFromList(propertyList, PropertyType.LIST, JSON);
+        if (messageProperty != null) {
+            xml = true;
+            String message = PropertyHelper.toString(messageProperty);
 
-            if (messageProperty != null) {
-                json = true;
-                return JsonMapper.mapToString((PropertyList) messageProperty);
+            // Get XPath for transformation
+            PropertyList transformProps = (PropertyList) PropertyHelper.getFromList(metadata.getPropertyList(),
+                    PropertyType.LIST, WsConstants.REQUEST_ID);
+
+            if (transformProps != null) {
+                RequestTemplate template = RequestTemplate.getTemplate(message, transformProps, this.defaultNSPrefix);
+                return new StringRequestBody(template.render(propertyList));
+            } else {
+                return new StringRequestBody(message);
             }
         }
 
+        if (source != propertyList) {
+            return null;
+        }
+
+        messageProperty = PropertyHelper.getFromList(source, PropertyType.LIST, JSON);
+
+        if (messageProperty != null) {
+            json = true;
+            return new StringRequestBody(JsonMapper.mapToString((PropertyList) messageProperty));
+        }
         return null;
     }
     
@@ -278,6 +363,29 @@ public abstract class AbstractRestCommand extends AbstractProxyCommand implement
         return null;
     }
     
+    /**
+     * Creates the handler mapping the response body into the returned PropertyList. The format of
+     * the response is expected to match the format of the message sent, the format of the response
+     * to a file upload is detected.
+     * 
+     * @param metadata
+     *            the Metadata holding the extraction properties
+     * @return the response handler
+     */
+    protected WebServiceResponseHandler<PropertyList> createResponseHandler(Metadata metadata) {
+
+        ResponseFormat format = ResponseFormat.NONE;
+
+        if (isXml()) {
+            format = ResponseFormat.XML;
+        } else if (isJson()) {
+            format = ResponseFormat.JSON;
+        } else if (this.file) {
+            format = ResponseFormat.DETECT;
+        }
+        return new RestResponseHandler(format, getExtractionProperties(metadata), this.defaultNSPrefix);
+    }
+    
     protected PropertyList getExtractionProperties(Metadata metadata) {
         // Get XPath for transformation
         PropertyList extractProps = (PropertyList) PropertyHelper.getFromList(metadata.getPropertyList(),
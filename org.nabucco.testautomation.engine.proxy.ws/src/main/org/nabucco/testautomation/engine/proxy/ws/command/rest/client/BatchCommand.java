@@ -0,0 +1,385 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.proxy.base.AbstractProxyCommand;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpConnectionPool;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.rest.RestCommand;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyContainer;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyType;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
+
+/**
+ * BatchCommand
+ * <p>
+ * Executes the requests of the {@link RestCommand#BATCH} list concurrently with a bounded
+ * parallelism. Each request is a PropertyList (URL variables, body, header) executed by the
+ * command of the configured {@link RestCommand#METHOD}; properties of the action not defined by a
+ * request are inherited. The results are returned in the order of the requests. The first failing
+ * request stops the batch.
+ * <p>
+ * The requests are executed on a dedicated bounded executor, since the calling thread may itself
+ * be a thread of the shared {@link WebServiceExecutor}. The traced messages of the requests are
+ * combined into the trace of the batch.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class BatchCommand extends AbstractProxyCommand implements RestCommand {
+
+    private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(BatchCommand.class);
+
+    /**
+     * The default number of concurrently executed requests.
+     */
+    public static final int DEFAULT_PARALLELISM = 10;
+
+    /**
+     * The maximum number of concurrently executed requests of all batches. Further requests are
+     * executed by the thread of the batch.
+     */
+    public static final int MAX_PARALLELISM = WebServiceExecutor.MAX_THREADS / 4;
+
+    private static final String THREAD_NAME = "WebServiceClient-Batch-";
+
+    private static WebServiceExecutor batchExecutor;
+
+    private final WebServiceClient client;
+
+    private final String defaultNSPrefix;
+
+    /**
+     * Creates a new batch command.
+     * 
+     * @param client
+     *            the client executing the requests
+     * @param defaultNSPrefix
+     *            the default namespace prefix
+     */
+    public BatchCommand(WebServiceClient client, String defaultNSPrefix) {
+        this.client = client;
+        this.defaultNSPrefix = defaultNSPrefix;
+    }
+
+    @Override
+    protected void info(String msg) {
+        logger.info(msg);
+    }
+
+    @Override
+    protected void debug(String msg) {
+        logger.debug(msg);
+    }
+
+    @Override
+    protected void error(String msg) {
+        logger.error(msg);
+    }
+
+    @Override
+    protected void warning(String msg) {
+        logger.warning(msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PropertyList execute(final Metadata metadata, PropertyList propertyList) throws WebServiceException {
+
+        if (metadata.getPropertyList() == null) {
+            throw new WebServiceException("Metadata '" + metadata.getName() + "' has no PropertyList defined !");
+        }
+
+        PropertyList batchList = (PropertyList) PropertyHelper.getFromList(propertyList, PropertyType.LIST, BATCH);
+
+        if (batchList == null) {
+            throw new WebServiceException(BATCH + " not defined");
+        }
+
+        final String method = getMethod(metadata, propertyList);
+        int parallelism = getParallelism(metadata, propertyList);
+        final Semaphore permits = new Semaphore(parallelism);
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Future<PropertyList>> futures = new ArrayList<Future<PropertyList>>();
+        List<RequestTrace> traces = new ArrayList<RequestTrace>();
+        String summary = null;
+
+        // The requests of a route must not wait for each other in the connection pool
+        HttpConnectionPool.getInstance().ensureMaxPerRoute(parallelism);
+        this.start();
+
+        try {
+            for (PropertyContainer container : batchList.getPropertyList()) {
+
+                if (!(container.getProperty() instanceof PropertyList)) {
+                    throw new WebServiceException("Requests of " + BATCH + " must be PropertyLists");
+                }
+
+                final PropertyList requestProperties = this.createRequestProperties(propertyList,
+                        (PropertyList) container.getProperty());
+
+                permits.acquire();
+
+                if (failed.get()) {
+                    permits.release();
+                    break;
+                }
+
+                RequestTrace trace = new RequestTrace();
+                traces.add(trace);
+                final WebServiceClient requestClient = this.client.forRequest(this.client.getRequestSpec()
+                        .toBuilder().listener(trace).build());
+
+                futures.add(getBatchExecutor().submit(new Callable<PropertyList>() {
+
+                    @Override
+                    public PropertyList call() throws Exception {
+                        try {
+                            return createCommand(method, requestClient).execute(metadata, requestProperties);
+                        } catch (Exception ex) {
+                            failed.set(true);
+                            throw ex;
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                }));
+            }
+
+            PropertyList result = PropertyHelper.createPropertyList(BATCH);
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    PropertyList response = futures.get(i).get();
+                    PropertyHelper.add(response != null ? response : PropertyHelper.createPropertyList(String
+                            .valueOf(i + 1)), result);
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    String message = "Request " + (i + 1) + " of " + BATCH + " failed: " + cause.getMessage();
+
+                    if (cause instanceof Exception) {
+                        throw new WebServiceException(message, (Exception) cause);
+                    }
+                    throw new WebServiceException(message);
+                }
+            }
+
+            summary = "Executed " + futures.size() + " " + method + " requests with parallelism " + parallelism;
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while executing " + BATCH);
+        } catch (WebServiceException ex) {
+            setException(ex);
+            throw ex;
+        } finally {
+            for (Future<PropertyList> future : futures) {
+                future.cancel(true);
+            }
+            this.trace(traces, summary);
+            this.stop();
+        }
+    }
+
+    /**
+     * Shuts the executor of batches down. The next batch creates a new executor.
+     */
+    public static synchronized void shutdown() {
+
+        if (batchExecutor != null) {
+            batchExecutor.close();
+            batchExecutor = null;
+        }
+    }
+
+    private static synchronized WebServiceExecutor getBatchExecutor() {
+
+        if (batchExecutor == null) {
+            batchExecutor = new WebServiceExecutor(THREAD_NAME, MAX_PARALLELISM);
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Sets the traced messages of the requests as request of the batch trace, and their responses
+     * after the summary of the batch as response.
+     * 
+     * @param traces
+     *            the traces of the requests
+     * @param summary
+     *            the summary of the batch, or null if the batch failed
+     */
+    private void trace(List<RequestTrace> traces, String summary) {
+
+        StringBuilder requests = new StringBuilder();
+        StringBuilder responses = new StringBuilder();
+
+        if (summary != null) {
+            responses.append(summary).append('\n');
+        }
+
+        for (int i = 0; i < traces.size(); i++) {
+            RequestTrace trace = traces.get(i);
+
+            if (trace.request != null) {
+                requests.append("Request ").append(i + 1).append(":\n").append(trace.request).append('\n');
+            }
+            if (trace.response != null) {
+                responses.append("Response ").append(i + 1).append(":\n").append(trace.response).append('\n');
+            }
+        }
+
+        if (requests.length() > 0) {
+            this.setRequest(requests.toString());
+        }
+        if (responses.length() > 0) {
+            this.setResponse(responses.toString());
+        }
+    }
+
+    /**
+     * Creates the command executing a single request. The commands bind their own settings to the
+     * given client, so the requests do not affect each other.
+     * 
+     * @param method
+     *            the HTTP method
+     * @param requestClient
+     *            the client of the request, tracing its messages
+     * @return the command
+     * @throws WebServiceException
+     *             thrown, if the method is not supported
+     */
+    private RestCommand createCommand(String method, WebServiceClient requestClient) throws WebServiceException {
+
+        if (method.equals("GET")) {
+            return new GetCommand(requestClient, this.defaultNSPrefix);
+        } else if (method.equals("POST")) {
+            return new PostCommand(requestClient, this.defaultNSPrefix);
+        } else if (method.equals("PUT")) {
+            return new PutCommand(requestClient, this.defaultNSPrefix);
+        } else if (method.equals("DELETE")) {
+            return new DeleteCommand(requestClient, this.defaultNSPrefix);
+        }
+        throw new WebServiceException("Unsupported " + METHOD + " for " + BATCH + ": " + method);
+    }
+
+    /**
+     * Creates the properties of a single request. Properties of the action not defined by the
+     * request are inherited.
+     */
+    private PropertyList createRequestProperties(PropertyList actionProperties, PropertyList requestProperties) {
+
+        PropertyList properties = requestProperties.cloneObject();
+
+        for (PropertyContainer container : actionProperties.getPropertyList()) {
+            Property property = container.getProperty();
+            String name = property.getName().getValue();
+
+            if (!BATCH.equals(name) && PropertyHelper.getFromList(properties, name) == null) {
+                PropertyHelper.add(property.cloneObject(), properties);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Gets the HTTP method of the requests specified in the given PropertyList or Metadata.
+     */
+    private String getMethod(Metadata metadata, PropertyList propertyList) throws WebServiceException {
+
+        Property methodProperty = PropertyHelper.getFromList(propertyList, METHOD);
+
+        if (methodProperty == null) {
+            methodProperty = PropertyHelper.getFromList(metadata.getPropertyList(), METHOD);
+        }
+
+        if (methodProperty == null) {
+            throw new WebServiceException(METHOD + " not defined");
+        }
+        return PropertyHelper.toString(methodProperty).trim().toUpperCase();
+    }
+
+    /**
+     * Gets the number of concurrently executed requests specified in the given PropertyList or
+     * Metadata.
+     */
+    private int getParallelism(Metadata metadata, PropertyList propertyList) throws WebServiceException {
+
+        Property parallelismProperty = PropertyHelper.getFromList(propertyList, PARALLELISM);
+
+        if (parallelismProperty == null) {
+            parallelismProperty = PropertyHelper.getFromList(metadata.getPropertyList(), PARALLELISM);
+        }
+
+        if (parallelismProperty == null) {
+            return DEFAULT_PARALLELISM;
+        }
+
+        try {
+            int parallelism = Integer.parseInt(PropertyHelper.toString(parallelismProperty).trim());
+            return Math.max(1, Math.min(parallelism, MAX_PARALLELISM));
+        } catch (NumberFormatException ex) {
+            throw new WebServiceException("Invalid " + PARALLELISM, ex);
+        }
+    }
+
+    /**
+     * The traced messages of a single request.
+     */
+    private static class RequestTrace implements WebServiceListener {
+
+        private volatile String request;
+
+        private volatile String response;
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void finished() {
+        }
+
+        @Override
+        public void messageSent(String request) {
+            this.request = request;
+        }
+
+        @Override
+        public void messageReceived(String response) {
+            this.response = response;
+        }
+    }
+
+}
@@ -17,7 +17,6 @@
 package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
 
 import java.net.URL;
-import java.util.List;
 
 import javax.xml.soap.SOAPException;
 
@@ -25,8 +24,6 @@ import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
-import org.nabucco.testautomation.property.facade.datatype.base.Property;
-import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
 
 /**
@@ -60,26 +57,10 @@ public class DeleteCommand extends AbstractRestCommand implements WebServiceList
 
         // get the target URL
         URL url = getURL(metadata, propertyList);
-        
-        // Get username and password
-        String username = getUsername(metadata, propertyList);
-        String password = getPassword(metadata, propertyList);
 
-        // get http header attributes
-        List<Property> headerList = getHeaderAttributes(metadata, propertyList);
-        
-        if (headerList != null) {
-            for (Property property : headerList) {
-                this.client.addHeaderAttribute(property.getName().getValue(), PropertyHelper.toString(property));
-            }
-        }
-        
         try {
-            this.client.addWebServiceListener(this);
-            this.client.setUsername(username);
-            this.client.setPassword(password);
-            this.client.sendMessage(url, COMMAND, (String) null);
-            this.client.removeWebServiceListener(this);
+            WebServiceClient client = createClient(metadata, propertyList, this);
+            client.sendMessage(url, COMMAND, (String) null);
             PropertyList responseProperties = null;
             return responseProperties;
         } catch (SOAPException ex) {
@@ -17,16 +17,12 @@
 package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
 
 import java.net.URL;
-import java.util.List;
 
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
-import org.nabucco.testautomation.engine.proxy.ws.handler.XmlMessageHandler;
-import org.nabucco.testautomation.engine.proxy.ws.json.JsonMapper;
+import org.nabucco.testautomation.engine.proxy.ws.command.rest.client.RestResponseHandler.ResponseFormat;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
-import org.nabucco.testautomation.property.facade.datatype.base.Property;
-import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
 
 /**
@@ -60,41 +56,15 @@ public class GetCommand extends AbstractRestCommand implements WebServiceListene
 
         // get the target URL
         URL url = getURL(metadata, propertyList);
-     
-        // get username and password
-        String username = getUsername(metadata, propertyList);
-        String password = getPassword(metadata, propertyList);
-        
-        // get http header attributes
-        List<Property> headerList = getHeaderAttributes(metadata, propertyList);
-        
-        if (headerList != null) {
-            for (Property property : headerList) {
-                this.client.addHeaderAttribute(property.getName().getValue(), PropertyHelper.toString(property));
-            }
-        }
 
         try {
-            this.client.addWebServiceListener(this);
-            this.client.setUsername(username);
-            this.client.setPassword(password);
-            String response = this.client.sendMessage(url, COMMAND, (String) null);
-            this.client.removeWebServiceListener(this);
-            
-            // Handle response
-            PropertyList responseProperties = null;
+            WebServiceClient client = createClient(metadata, propertyList, this);
             PropertyList extractionProperties = getExtractionProperties(metadata);
+            ResponseFormat format = extractionProperties != null ? ResponseFormat.XML : ResponseFormat.DETECT;
 
-            if (extractionProperties != null) {
-                XmlMessageHandler handler = new XmlMessageHandler(response, this.defaultNSPrefix);
-                handler.setExtractionProperties(extractionProperties);
-                responseProperties = handler.extract();
-            } else if (response.startsWith("{")) {
-                responseProperties = JsonMapper.mapFromString(response);
-            } else {
-                responseProperties = PropertyHelper.createPropertyList("");
-                PropertyHelper.add(PropertyHelper.createXmlProperty("Response", response), responseProperties);
-            }
+            // Handle response
+            PropertyList responseProperties = client.sendMessage(url, COMMAND, (String) null,
+                    new RestResponseHandler(format, extractionProperties, this.defaultNSPrefix));
             return responseProperties;
         } catch (WebServiceException ex) {
             setException(ex);
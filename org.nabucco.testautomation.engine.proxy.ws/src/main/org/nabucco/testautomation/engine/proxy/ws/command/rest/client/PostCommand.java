@@ -17,16 +17,12 @@
 package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
 
 import java.net.URL;
-import java.util.List;
 
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
-import org.nabucco.testautomation.engine.proxy.ws.handler.XmlMessageHandler;
-import org.nabucco.testautomation.engine.proxy.ws.json.JsonMapper;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
-import org.nabucco.testautomation.property.facade.datatype.base.Property;
-import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
 
 /**
@@ -63,39 +59,15 @@ public class PostCommand extends AbstractRestCommand implements WebServiceListen
         // get the target URL
         URL url = getURL(metadata, propertyList);
 
-        // get the Message to send
-        String message = getMessage(metadata, propertyList);
-        
-        // Get username and password
-        String username = getUsername(metadata, propertyList);
-        String password = getPassword(metadata, propertyList);
-
-        // get http header attributes
-        List<Property> headerList = getHeaderAttributes(metadata, propertyList);
-        
-        if (headerList != null) {
-            for (Property property : headerList) {
-                this.client.addHeaderAttribute(property.getName().getValue(), PropertyHelper.toString(property));
-            }
-        }
-        
+        // get the body to send
+        RequestBody body = getRequestBody(metadata, propertyList);
+
         try {
-            this.client.addWebServiceListener(this);
-            this.client.setUsername(username);
-            this.client.setPassword(password);
-            String response = this.client.sendMessage(url, COMMAND, message);
-            this.client.removeWebServiceListener(this);
-            
+            WebServiceClient client = createClient(metadata, propertyList, this);
+
             // Handle response
-            PropertyList responseProperties = null;
-
-            if (isXml()) {
-                XmlMessageHandler handler = new XmlMessageHandler(response, this.defaultNSPrefix);
-                handler.setExtractionProperties(getExtractionProperties(metadata));
-                responseProperties = handler.extract();
-            } else if (isJson()) {
-                responseProperties = JsonMapper.mapFromString(response);
-            }
+            PropertyList responseProperties = client.sendMessage(url, COMMAND, body,
+                    createResponseHandler(metadata));
             return responseProperties;
         } catch (WebServiceException ex) {
             setException(ex);
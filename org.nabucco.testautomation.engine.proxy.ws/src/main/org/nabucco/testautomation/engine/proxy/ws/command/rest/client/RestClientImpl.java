@@ -16,7 +16,9 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
@@ -26,10 +28,14 @@ import org.nabucco.testautomation.engine.proxy.SubEngineActionType;
 import org.nabucco.testautomation.engine.proxy.ws.WebServiceActionType;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClientFactory;
+import org.nabucco.testautomation.engine.proxy.ws.client.http.HttpVersion;
+import org.nabucco.testautomation.engine.proxy.ws.exception.CircuitOpenException;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.rest.RestClient;
 import org.nabucco.testautomation.engine.proxy.ws.rest.RestCommand;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.result.facade.datatype.ActionResponse;
 import org.nabucco.testautomation.result.facade.datatype.status.ActionStatusType;
 import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
@@ -45,7 +51,10 @@ public class RestClientImpl implements RestClient {
 
     private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(RestClientImpl.class);
 
-    private WebServiceClient client;
+    private final Map<HttpVersion, WebServiceClient> clients = new EnumMap<HttpVersion, WebServiceClient>(
+            HttpVersion.class);
+
+    private HttpVersion httpVersion;
     
     private String defaultNSPrefix;
 
@@ -56,8 +65,19 @@ public class RestClientImpl implements RestClient {
      *             thrown, if the instance cannot be created
      */
     public RestClientImpl(String defaultNSPrefix) throws WebServiceException {
-        this.client = WebServiceClientFactory.getInstance().getRestWebServiceClient();
+        this(defaultNSPrefix, HttpVersion.HTTP_1_1);
+    }
+
+    /**
+     * Constructs a new instance calling a REST-WebService with the given default HTTP version.
+     * 
+     * @throws WebServiceException
+     *             thrown, if the instance cannot be created
+     */
+    public RestClientImpl(String defaultNSPrefix, HttpVersion httpVersion) throws WebServiceException {
+        this.httpVersion = httpVersion;
         this.defaultNSPrefix = defaultNSPrefix;
+        this.getClient(httpVersion);
     }
 
     /**
@@ -79,18 +99,28 @@ public class RestClientImpl implements RestClient {
             // get the metadata to be executed
             Metadata metadata = getLeaf(metadataList);
 
+            // get the client of the requested HTTP version
+            WebServiceClient client = getClient(getHttpVersion(metadata, propertyList));
+
+            // Response messages are only buffered for the trace if tracing is enabled
+            client = client.forRequest(client.getRequestSpec().toBuilder()
+                    .tracingEnabled(context.isTracingEnabled()).build());
+
             switch ((WebServiceActionType) actionType) {
             case GET:
-                command = new GetCommand(this.client, this.defaultNSPrefix);
+                command = new GetCommand(client, this.defaultNSPrefix);
                 break;
             case POST:
-                command = new PostCommand(this.client, this.defaultNSPrefix);
+                command = new PostCommand(client, this.defaultNSPrefix);
                 break;
             case PUT:
-                command = new PutCommand(this.client, this.defaultNSPrefix);
+                command = new PutCommand(client, this.defaultNSPrefix);
                 break;
             case DELETE:
-                command = new DeleteCommand(this.client, this.defaultNSPrefix);
+                command = new DeleteCommand(client, this.defaultNSPrefix);
+                break;
+            case BATCH:
+                command = new BatchCommand(client, this.defaultNSPrefix);
                 break;
             default:
                 result.setErrorMessage("Unsupported WebServiceActionType for RestCall: " + actionType);
@@ -104,6 +134,11 @@ public class RestClientImpl implements RestClient {
             result.setReturnProperties(returnProperties);
             result.setActionStatus(ActionStatusType.EXECUTED);
             return result;
+        } catch (CircuitOpenException ex) {
+            logger.warning(ex.getMessage());
+            result.setErrorMessage("Could not execute RestCall, circuit is open. Cause: " + ex.getMessage());
+            result.setActionStatus(ActionStatusType.FAILED);
+            return result;
         } catch (WebServiceException ex) {
             logger.error(ex);
             result.setErrorMessage("Could not execute RestCall. Cause: " + ex.getMessage());
@@ -160,6 +195,60 @@ public class RestClientImpl implements RestClient {
         }
     }
 
+    /**
+     * Gets the HTTP version specified in the given PropertyList or Metadata. If none is specified,
+     * the configured version is returned.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @return the HTTP version
+     * @throws WebServiceException
+     *             thrown, if an unsupported version is specified
+     */
+    private HttpVersion getHttpVersion(Metadata metadata, PropertyList propertyList) throws WebServiceException {
+
+        // Check PropertyList of Action and Metadata
+        Property versionProperty = PropertyHelper.getFromList(propertyList, RestCommand.HTTP_VERSION);
+
+        if (versionProperty == null && metadata.getPropertyList() != null) {
+            versionProperty = PropertyHelper.getFromList(metadata.getPropertyList(), RestCommand.HTTP_VERSION);
+        }
+
+        if (versionProperty == null) {
+            return this.httpVersion;
+        }
+
+        String value = PropertyHelper.toString(versionProperty);
+        HttpVersion version = HttpVersion.getVersion(value);
+
+        if (version == null) {
+            throw new WebServiceException("Unsupported " + RestCommand.HTTP_VERSION + ": " + value);
+        }
+        return version;
+    }
+
+    /**
+     * Gets the client of the given HTTP version. Clients are created on first use.
+     * 
+     * @param version
+     *            the HTTP version
+     * @return the client
+     * @throws WebServiceException
+     *             thrown, if the client cannot be created
+     */
+    private synchronized WebServiceClient getClient(HttpVersion version) throws WebServiceException {
+
+        WebServiceClient client = this.clients.get(version);
+
+        if (client == null) {
+            client = WebServiceClientFactory.getInstance().getRestWebServiceClient(version);
+            this.clients.put(version, client);
+        }
+        return client;
+    }
+
     /**
      * Returns the metadata for the WebService-call
      * 
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.command.rest.client;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.CacheableResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.handler.StringResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.handler.XmlMessageHandler;
+import org.nabucco.testautomation.engine.proxy.ws.json.JsonMapper;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.XPathProperty;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyContainer;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyType;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+
+/**
+ * RestResponseHandler
+ * <p>
+ * Maps the body of a REST response directly from the stream into the returned PropertyList. Handlers
+ * with the same format, extraction properties and namespace prefix share their cached results.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+class RestResponseHandler implements CacheableResponseHandler<PropertyList> {
+
+    /**
+     * The expected format of a response body.
+     */
+    enum ResponseFormat {
+
+        /** The body is parsed as XML and evaluated by the extraction properties. */
+        XML,
+
+        /** The body is parsed as JSON. */
+        JSON,
+
+        /** The body is parsed as JSON if it starts with '{', otherwise it is returned as text. */
+        DETECT,
+
+        /** The body is ignored. */
+        NONE;
+    }
+
+    private static final int JSON_START = '{';
+
+    private static final String RESPONSE = "Response";
+
+    private static final char KEY_SEPARATOR = '|';
+
+    private final ResponseFormat format;
+
+    private final PropertyList extractionProperties;
+
+    private final String defaultNSPrefix;
+
+    /**
+     * Creates a new handler.
+     * 
+     * @param format
+     *            the expected format of the response body
+     * @param extractionProperties
+     *            the XPath extraction properties of the response, may be null
+     * @param defaultNSPrefix
+     *            the default namespace prefix
+     */
+    RestResponseHandler(ResponseFormat format, PropertyList extractionProperties, String defaultNSPrefix) {
+        this.format = format;
+        this.extractionProperties = extractionProperties;
+        this.defaultNSPrefix = defaultNSPrefix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PropertyList handleResponse(InputStream in, String charset) throws IOException, WebServiceException {
+
+        switch (this.format) {
+        case XML:
+            return this.handleXml(in, charset);
+        case JSON:
+            return this.handleJson(in, charset);
+        case DETECT:
+            InputStream peekable = in.markSupported() ? in : new BufferedInputStream(in);
+            peekable.mark(1);
+            int first = peekable.read();
+            peekable.reset();
+
+            if (first == JSON_START) {
+                return this.handleJson(peekable, charset);
+            }
+            PropertyList responseProperties = PropertyHelper.createPropertyList("");
+            PropertyHelper.add(
+                    PropertyHelper.createXmlProperty(RESPONSE, StringResponseHandler.toString(peekable, charset)),
+                    responseProperties);
+            return responseProperties;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCacheKey() {
+
+        StringBuilder key = new StringBuilder();
+        key.append(this.format).append(KEY_SEPARATOR).append(this.defaultNSPrefix);
+
+        if (this.extractionProperties != null) {
+            appendXPath(this.extractionProperties.getPropertyList(), key);
+        }
+        return key.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PropertyList copy(PropertyList response) {
+        return response != null ? response.cloneObject() : null;
+    }
+
+    private static void appendXPath(List<PropertyContainer> properties, StringBuilder key) {
+
+        for (PropertyContainer container : properties) {
+            Property property = container.getProperty();
+
+            if (property.getType() == PropertyType.XPATH) {
+                XPathProperty xpath = (XPathProperty) property;
+                key.append(KEY_SEPARATOR).append(xpath.getName().getValue()).append('=')
+                        .append(xpath.getValue() != null ? xpath.getValue().getValue() : null);
+                key.append('[');
+                appendXPath(xpath.getPropertyList(), key);
+                key.append(']');
+            }
+        }
+    }
+
+    private PropertyList handleXml(InputStream in, String charset) throws IOException, WebServiceException {
+        return XmlMessageHandler.extract(in, charset, this.extractionProperties, this.defaultNSPrefix);
+    }
+
+    private PropertyList handleJson(InputStream in, String charset) throws IOException {
+        return JsonMapper.mapFromReader(new InputStreamReader(in, charset != null ? charset : DEFAULT_CHARSET));
+    }
+
+}
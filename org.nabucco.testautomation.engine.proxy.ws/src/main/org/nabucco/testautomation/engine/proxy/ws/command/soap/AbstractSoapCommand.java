@@ -16,10 +16,30 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.command.soap;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
 import org.nabucco.testautomation.engine.proxy.base.AbstractProxyCommand;
+import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
+import org.nabucco.testautomation.engine.proxy.ws.client.body.FileRequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapTransport;
+import org.nabucco.testautomation.engine.proxy.ws.command.RequestProperties;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.soap.SoapCommand;
+import org.nabucco.testautomation.property.facade.datatype.FileProperty;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyContainer;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyType;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
 
 
 /**
@@ -52,4 +72,121 @@ public abstract class AbstractSoapCommand extends AbstractProxyCommand implement
 		logger.warning(msg);
 	}
 
+	/**
+	 * Gets the SOAP client implementation specified in the given PropertyList or Metadata object.
+	 * 
+	 * @param metadata
+	 *            the Metadata
+	 * @param propertyList
+	 *            the PropertyList
+	 * @return the transport, {@link SoapTransport#AXIS} if not provided
+	 * @throws WebServiceException
+	 *             thrown, if an unsupported transport is specified
+	 */
+	protected SoapTransport getTransport(Metadata metadata, PropertyList propertyList) throws WebServiceException {
+
+		String value = RequestProperties.getPropertyValue(metadata, propertyList, WsConstants.SOAP_TRANSPORT);
+
+		if (value == null) {
+			return SoapTransport.AXIS;
+		}
+
+		try {
+			return SoapTransport.valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException ex) {
+			throw new WebServiceException("Unsupported " + WsConstants.SOAP_TRANSPORT + ": " + value);
+		}
+	}
+
+	/**
+	 * Gets the attachments specified as FileProperty in the given PropertyList and Metadata object.
+	 * The name of a property is the content id of its attachment. The content of the property is
+	 * sent, only a property without content is streamed from the local file of its filename.
+	 * 
+	 * @param metadata
+	 *            the Metadata
+	 * @param propertyList
+	 *            the PropertyList
+	 * @return the attachments, empty if none are specified
+	 */
+	protected List<SoapAttachment> getAttachments(Metadata metadata, PropertyList propertyList) {
+
+		List<SoapAttachment> attachments = new ArrayList<SoapAttachment>();
+		addAttachments(propertyList, attachments);
+
+		if (metadata.getPropertyList() != null) {
+			addAttachments(metadata.getPropertyList(), attachments);
+		}
+		return attachments;
+	}
+
+	/**
+	 * Checks whether attachments are sent as MTOM/XOP package.
+	 * 
+	 * @param metadata
+	 *            the Metadata
+	 * @param propertyList
+	 *            the PropertyList
+	 * @return true, if MTOM is enabled
+	 */
+	protected boolean isMtomEnabled(Metadata metadata, PropertyList propertyList) {
+		return Boolean.parseBoolean(RequestProperties.getPropertyValue(metadata, propertyList, WsConstants.MTOM));
+	}
+
+	/**
+	 * Creates the PropertyList of received attachments, holding the path of the temporary file of
+	 * each attachment by its content id.
+	 * 
+	 * @param attachments
+	 *            the received attachments
+	 * @return the PropertyList
+	 */
+	protected PropertyList createAttachmentList(List<SoapAttachment> attachments) {
+
+		PropertyList attachmentList = PropertyHelper.createPropertyList(WsConstants.ATTACHMENTS);
+
+		for (SoapAttachment attachment : attachments) {
+			String path = attachment.getFile() != null ? attachment.getFile().getAbsolutePath() : null;
+			PropertyHelper.add(PropertyHelper.createTextProperty(attachment.getContentId(), path), attachmentList);
+		}
+		return attachmentList;
+	}
+
+	private void addAttachments(PropertyList propertyList, List<SoapAttachment> attachments) {
+
+		if (propertyList == null) {
+			return;
+		}
+
+		for (PropertyContainer container : propertyList.getPropertyList()) {
+			Property property = container.getProperty();
+
+			if (property.getType() != PropertyType.FILE) {
+				continue;
+			}
+
+			FileProperty fileProperty = (FileProperty) property;
+			String contentId = property.getName().getValue();
+			String filename = fileProperty.getFilename() != null ? fileProperty.getFilename().getValue() : null;
+			File file = FileRequestBody.getLocalFile(fileProperty);
+			String contentType = filename != null ? URLConnection.guessContentTypeFromName(filename) : null;
+
+			if (file != null) {
+				attachments.add(new SoapAttachment(contentId, contentType, file));
+			} else {
+				String content = fileProperty.getContent() != null ? fileProperty.getContent().getValue() : null;
+				attachments.add(new SoapAttachment(contentId, contentType, content != null ? getBytes(content)
+						: null));
+			}
+		}
+	}
+
+	private static byte[] getBytes(String content) {
+		try {
+			return content.getBytes(RequestBody.CHARSET);
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(RequestBody.CHARSET + " is not supported", ex);
+		}
+	}
+
 }
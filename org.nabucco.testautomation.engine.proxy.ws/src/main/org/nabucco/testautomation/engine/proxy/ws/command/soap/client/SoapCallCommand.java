@@ -20,15 +20,28 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.xml.soap.SOAPException;
 
 import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.AttachmentListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.RequestSpec;
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
-import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceListener;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapTransport;
+import org.nabucco.testautomation.engine.proxy.ws.command.RequestProperties;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.AbstractSoapCommand;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.handler.RequestTemplate;
 import org.nabucco.testautomation.engine.proxy.ws.handler.XmlMessageHandler;
+import org.nabucco.testautomation.engine.proxy.ws.server.http.BlockingHttpServer;
+import org.nabucco.testautomation.engine.proxy.ws.soap.SoapCommand;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
 import org.nabucco.testautomation.property.facade.datatype.TextProperty;
 import org.nabucco.testautomation.property.facade.datatype.XmlProperty;
@@ -41,25 +54,61 @@ import org.w3c.dom.Document;
 
 /**
  * SoapCallCommand
+ * <p>
+ * Sends the transformed XML-Message to the target URL. If a PropertyList of URLs is defined as
+ * {@link WsConstants#URLS}, the message is sent to all of them concurrently and the responses are
+ * returned per endpoint with their latency and attachments. The endpoints are called on a
+ * dedicated bounded executor, since the calling thread may itself be a thread of the shared
+ * {@link WebServiceExecutor}.
+ * <p>
+ * If {@link SoapCommand#ASYNC} is set, the request is sent with WS-Addressing headers naming the
+ * running SoapServer as {@link SoapCommand#REPLY_TO} endpoint. The MessageID of the request is
+ * returned as {@link SoapCommand#CORRELATION_ID}, by which a subsequent RECEIVE awaits the reply.
  * 
  * @author Steffen Schmidt, PRODYNA AG
  */
-public class SoapCallCommand extends AbstractSoapCommand implements WebServiceListener {
+public class SoapCallCommand extends AbstractSoapCommand implements AttachmentListener {
 
-    private WebServiceClient client;
+    private static final String LATENCY = "LATENCY";
+
+    private static final String ERROR = "ERROR";
+
+    private static final String WSA_NS = "http://www.w3.org/2005/08/addressing";
+
+    private static final String WSA = "{" + WSA_NS + "}wsa:";
+
+    /**
+     * The maximum number of endpoints called concurrently by all fan-outs. Further endpoints are
+     * called by the thread of the fan-out.
+     */
+    public static final int MAX_FAN_OUT_THREADS = 64;
+
+    private static final String THREAD_NAME = "WebServiceClient-FanOut-";
+
+    private static WebServiceExecutor fanOutExecutor;
+
+    private Map<SoapTransport, WebServiceClient> clients;
+
+    private BlockingHttpServer replyServer;
 
     private String defaultNSPrefix;
 
+    private final List<SoapAttachment> receivedAttachments = new ArrayList<SoapAttachment>();
+
     /**
-     * Creates a new command for the given {@link WebServiceClient}.
+     * Creates a new command for the given {@link WebServiceClient}s.
      * 
-     * @param client
-     *            the client to use
+     * @param clients
+     *            the clients to use per SOAP transport
+     * @param replyServer
+     *            the server receiving the replies to asynchronous calls, null if not started
      * @param defaultNSPrefix
      *            the default namespace prefix
      */
-    public SoapCallCommand(WebServiceClient client, String defaultNSPrefix) {
-        this.client = client;
+    public SoapCallCommand(Map<SoapTransport, WebServiceClient> clients, BlockingHttpServer replyServer,
+            String defaultNSPrefix) {
+        this.clients = clients;
+        this.replyServer = replyServer;
         this.defaultNSPrefix = defaultNSPrefix;
     }
 
@@ -73,8 +122,9 @@ public class SoapCallCommand extends AbstractSoapCommand implements WebServiceLi
             throw new WebServiceException("Metadata '" + metadata.getName() + "' has no PropertyList defined !");
         }
 
-        // get the target URL
-        URL url = getURL(metadata, propertyList);
+        // get the target URLs of a fan-out, otherwise the single target URL
+        PropertyList urlList = getURLList(metadata, propertyList);
+        URL url = urlList == null ? getURL(metadata, propertyList) : null;
 
         // get the XML-Message to send
         List<String> messages = getXmlMessages(metadata, propertyList);
@@ -90,30 +140,77 @@ public class SoapCallCommand extends AbstractSoapCommand implements WebServiceLi
         PropertyList extractProps = (PropertyList) PropertyHelper.getFromList(metadata.getPropertyList(),
                 PropertyType.LIST, WsConstants.RESPONSE_ID);
 
-        // Initialize XmlMessageHandler
-        XmlMessageHandler messageHandler = null;
+        // Transform the messages by their compiled templates
         List<Document> xmlList = new ArrayList<Document>();
 
         for (String message : messages) {
-            messageHandler = new XmlMessageHandler(message, this.defaultNSPrefix);
-            messageHandler.setTransformationProperties(transformProps);
-            Document xml = messageHandler.transform(propertyList);
-            xmlList.add(xml);
+            xmlList.add(RequestTemplate.getTemplate(message, transformProps, this.defaultNSPrefix).newDocument(
+                    propertyList));
+        }
+
+        // Select the client of the SOAP transport
+        SoapTransport transport = getTransport(metadata, propertyList);
+        WebServiceClient baseClient = this.clients.get(transport);
+
+        if (baseClient == null) {
+            throw new WebServiceException("No client available for " + WsConstants.SOAP_TRANSPORT + ": " + transport);
         }
 
         try {
-            this.client.addWebServiceListener(this);
-            Document rs;
+            RequestSpec.Builder spec = baseClient.getRequestSpec().toBuilder()
+                    .compression(RequestProperties.getCompression(metadata, propertyList))
+                    .retryPolicy(RequestProperties.getRetryPolicy(metadata, propertyList))
+                    .clearAttachments()
+                    .mtomEnabled(isMtomEnabled(metadata, propertyList));
 
-            if (method != null) {
-                rs = this.client.sendMessage(url, method, xmlList);
-            } else {
-                rs = this.client.sendMessage(url, xmlList);
+            RequestProperties.applyTimeouts(metadata, propertyList, spec);
+
+            for (SoapAttachment attachment : getAttachments(metadata, propertyList)) {
+                spec.attachment(attachment);
+            }
+
+            if (urlList != null) {
+
+                // The concurrent calls are not traced by this command
+                boolean copyRequest = transport == SoapTransport.AXIS;
+                FanOutListener listener = new FanOutListener();
+                WebServiceClient client = baseClient.forRequest(spec.tracingEnabled(false)
+                        .requestReused(!copyRequest).listener(listener).build());
+                return this.fanOut(client, listener, urlList, method, xmlList, extractProps, copyRequest);
+            }
+
+            String correlationId = null;
+
+            if (Boolean.parseBoolean(RequestProperties.getPropertyValue(metadata, propertyList, ASYNC))) {
+                correlationId = this.addressReply(metadata, propertyList, spec, url, method);
+            }
+
+            WebServiceClient client = baseClient.forRequest(spec.listener(this).build());
+            Document rs = null;
+
+            try {
+                if (method != null) {
+                    rs = client.sendMessage(url, method, xmlList);
+                } else {
+                    rs = client.sendMessage(url, xmlList);
+                }
+            } finally {
+                // No reply is sent to a call that failed
+                if (rs == null && correlationId != null) {
+                    this.replyServer.cancel(correlationId);
+                }
             }
-            this.client.removeWebServiceListener(this);
+            XmlMessageHandler messageHandler = new XmlMessageHandler(rs, this.defaultNSPrefix);
             messageHandler.setExtractionProperties(extractProps);
-            messageHandler.setMessage(rs);
             PropertyList responseProperties = messageHandler.extract();
+
+            if (!this.receivedAttachments.isEmpty()) {
+                PropertyHelper.add(createAttachmentList(this.receivedAttachments), responseProperties);
+            }
+            if (correlationId != null) {
+                PropertyHelper.add(PropertyHelper.createTextProperty(CORRELATION_ID, correlationId),
+                        responseProperties);
+            }
             return responseProperties;
         } catch (SOAPException ex) {
             setException(ex);
@@ -121,6 +218,247 @@ public class SoapCallCommand extends AbstractSoapCommand implements WebServiceLi
         }
     }
 
+    /**
+     * Adds the WS-Addressing headers of an asynchronous call to the request and registers its
+     * MessageID at the reply server, before the request is sent.
+     * 
+     * @param metadata
+     *            the Metadata
+     * @param propertyList
+     *            the PropertyList
+     * @param spec
+     *            the request to configure
+     * @param url
+     *            the target URL
+     * @param method
+     *            the webservice method, or null
+     * @return the MessageID of the request
+     * @throws WebServiceException
+     *             thrown, if no server is started or no ReplyTo address is defined
+     */
+    private String addressReply(Metadata metadata, PropertyList propertyList, RequestSpec.Builder spec, URL url,
+            String method) throws WebServiceException {
+
+        if (url == null) {
+            throw new WebServiceException("Asynchronous SoapCall not supported for " + WsConstants.URLS);
+        }
+        if (this.replyServer == null) {
+            throw new WebServiceException("Asynchronous SoapCall requires a started SoapServer, execute START first");
+        }
+
+        String replyTo = RequestProperties.getPropertyValue(metadata, propertyList, REPLY_TO);
+
+        if (replyTo == null) {
+            throw new WebServiceException("No Property '" + REPLY_TO + "' defined for asynchronous SoapCall");
+        }
+
+        String messageId = "urn:uuid:" + UUID.randomUUID();
+        spec.headerElement(WSA + "MessageID", messageId);
+        spec.headerElement(WSA + "ReplyTo/" + WSA + "Address", replyTo.trim());
+        spec.headerElement(WSA + "To", url.toString());
+
+        if (method != null) {
+            spec.headerElement(WSA + "Action", url + "/" + method);
+        }
+
+        this.replyServer.expect(messageId);
+        return messageId;
+    }
+
+    /**
+     * Sends the request to all URLs concurrently and extracts the response of each endpoint. The
+     * request documents are transformed once. The client serializes them once, unless they are
+     * bound to the message of each call, which requires a copy per endpoint.
+     * 
+     * @param client
+     *            the client sending the requests
+     * @param listener
+     *            the listener of the client collecting the attachments per endpoint
+     * @param urlList
+     *            the PropertyList of URLs, the name of a property names its endpoint
+     * @param method
+     *            the webservice method, or null
+     * @param xmlList
+     *            the request documents
+     * @param extractProps
+     *            the XPath-properties extracted from each response
+     * @param copyRequest
+     *            true, if each endpoint requires a copy of the request documents
+     * @return a PropertyList per endpoint with URL, latency and either the extracted response or
+     *         the error
+     * @throws WebServiceException
+     *             thrown, if a URL is invalid or all endpoints failed
+     */
+    private PropertyList fanOut(final WebServiceClient client, final FanOutListener listener, PropertyList urlList,
+            final String method, List<Document> xmlList, PropertyList extractProps, boolean copyRequest)
+            throws WebServiceException {
+
+        List<String> names = new ArrayList<String>();
+        List<URL> urls = new ArrayList<URL>();
+
+        for (PropertyContainer container : urlList.getPropertyList()) {
+            Property property = container.getProperty();
+
+            try {
+                urls.add(new URL(PropertyHelper.toString(property)));
+                names.add(property.getName().getValue());
+            } catch (MalformedURLException e) {
+                throw new WebServiceException("Invalid URL: " + e.toString());
+            }
+        }
+
+        if (urls.isEmpty()) {
+            throw new WebServiceException("No URL defined in " + WsConstants.URLS);
+        }
+
+        List<Future<EndpointResponse>> futures = new ArrayList<Future<EndpointResponse>>(urls.size());
+        this.start();
+
+        try {
+            for (final URL url : urls) {
+                final List<Document> messages = copyRequest ? copy(xmlList) : xmlList;
+
+                futures.add(getFanOutExecutor().submit(new Callable<EndpointResponse>() {
+
+                    @Override
+                    public EndpointResponse call() {
+                        return send(client, listener, url, method, messages);
+                    }
+                }));
+            }
+
+            PropertyList responseProperties = PropertyHelper.createPropertyList(WsConstants.RESPONSE_CONTAINER_ID);
+            int failures = 0;
+
+            for (int i = 0; i < futures.size(); i++) {
+                EndpointResponse response = futures.get(i).get();
+                PropertyList endpointProperties = PropertyHelper.createPropertyList(names.get(i));
+                PropertyHelper.add(PropertyHelper.createTextProperty(WsConstants.URL, urls.get(i).toString()),
+                        endpointProperties);
+                PropertyHelper.add(PropertyHelper.createNumericProperty(LATENCY, response.latency),
+                        endpointProperties);
+
+                if (response.error != null) {
+                    failures++;
+                    PropertyHelper.add(PropertyHelper.createTextProperty(ERROR, response.error.getMessage()),
+                            endpointProperties);
+                } else {
+                    XmlMessageHandler messageHandler = new XmlMessageHandler(response.document,
+                            this.defaultNSPrefix);
+                    messageHandler.setExtractionProperties(extractProps);
+
+                    for (PropertyContainer container : messageHandler.extract().getPropertyList()) {
+                        PropertyHelper.add(container.getProperty(), endpointProperties);
+                    }
+
+                    if (!response.attachments.isEmpty()) {
+                        PropertyHelper.add(createAttachmentList(response.attachments), endpointProperties);
+                    }
+                }
+                PropertyHelper.add(endpointProperties, responseProperties);
+            }
+
+            this.setResponse("Called " + urls.size() + " endpoints, " + failures + " failed");
+
+            if (failures == urls.size()) {
+                throw new WebServiceException("All " + urls.size() + " endpoints of " + WsConstants.URLS
+                        + " failed");
+            }
+            return responseProperties;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while calling " + WsConstants.URLS);
+        } catch (ExecutionException ex) {
+            throw new WebServiceException("Call of " + WsConstants.URLS + " failed", ex);
+        } catch (WebServiceException ex) {
+            setException(ex);
+            throw ex;
+        } finally {
+            for (Future<EndpointResponse> future : futures) {
+                future.cancel(true);
+            }
+            this.stop();
+        }
+    }
+
+    /**
+     * Shuts the executor of fan-outs down. The next fan-out creates a new executor.
+     */
+    public static synchronized void shutdown() {
+
+        if (fanOutExecutor != null) {
+            fanOutExecutor.close();
+            fanOutExecutor = null;
+        }
+    }
+
+    private static synchronized WebServiceExecutor getFanOutExecutor() {
+
+        if (fanOutExecutor == null) {
+            fanOutExecutor = new WebServiceExecutor(THREAD_NAME, MAX_FAN_OUT_THREADS);
+        }
+        return fanOutExecutor;
+    }
+
+    /**
+     * Sends a single request of a fan-out and measures its latency.
+     */
+    private static EndpointResponse send(WebServiceClient client, FanOutListener listener, URL url, String method,
+            List<Document> messages) {
+
+        EndpointResponse response = new EndpointResponse();
+        long start = System.currentTimeMillis();
+        listener.attachments.set(response.attachments);
+
+        try {
+            if (method != null) {
+                response.document = client.sendMessage(url, method, messages);
+            } else {
+                response.document = client.sendMessage(url, messages);
+            }
+        } catch (Exception ex) {
+            response.error = ex;
+        } finally {
+            listener.attachments.remove();
+        }
+        response.latency = System.currentTimeMillis() - start;
+        return response;
+    }
+
+    /**
+     * Copies the given documents.
+     */
+    private static List<Document> copy(List<Document> documents) {
+
+        List<Document> copies = new ArrayList<Document>(documents.size());
+
+        for (Document document : documents) {
+            copies.add((Document) document.cloneNode(true));
+        }
+        return copies;
+    }
+
+    /**
+     * Gets the PropertyList of target URLs specified in the given PropertyList or Metadata object.
+     * 
+     * @return the PropertyList of URLs, or null if not defined
+     */
+    private PropertyList getURLList(Metadata metadata, PropertyList propertyList) {
+
+        Property urlList = null;
+
+        // First, check PropertyList from Action
+        if (propertyList != null) {
+            urlList = PropertyHelper.getFromList(propertyList, PropertyType.LIST, WsConstants.URLS);
+        }
+
+        // Second, check PropertyList of Metadata
+        if (urlList == null) {
+            urlList = PropertyHelper.getFromList(metadata.getPropertyList(), PropertyType.LIST, WsConstants.URLS);
+        }
+        return (PropertyList) urlList;
+    }
+
     /**
      * Gets the target URL specified in the given Metadata object.
      * 
@@ -275,4 +613,61 @@ public class SoapCallCommand extends AbstractSoapCommand implements WebServiceLi
         this.setResponse(response);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attachmentReceived(SoapAttachment attachment) {
+        this.receivedAttachments.add(attachment);
+    }
+
+    /**
+     * The response of a single endpoint of a fan-out.
+     */
+    private static class EndpointResponse {
+
+        private Document document;
+
+        private Exception error;
+
+        private long latency;
+
+        private final List<SoapAttachment> attachments = new ArrayList<SoapAttachment>();
+    }
+
+    /**
+     * Collects the attachments received by the calls of a fan-out. Each endpoint is called by a
+     * single thread, which collects the attachments of its own response.
+     */
+    private static class FanOutListener implements AttachmentListener {
+
+        private final ThreadLocal<List<SoapAttachment>> attachments = new ThreadLocal<List<SoapAttachment>>();
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void finished() {
+        }
+
+        @Override
+        public void messageSent(String request) {
+        }
+
+        @Override
+        public void messageReceived(String response) {
+        }
+
+        @Override
+        public void attachmentReceived(SoapAttachment attachment) {
+
+            List<SoapAttachment> endpointAttachments = this.attachments.get();
+
+            if (endpointAttachments != null) {
+                endpointAttachments.add(attachment);
+            }
+        }
+    }
+
 }
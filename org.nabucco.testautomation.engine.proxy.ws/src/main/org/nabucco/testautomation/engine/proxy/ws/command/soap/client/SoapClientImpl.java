@@ -16,7 +16,9 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.command.soap.client;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
 import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
@@ -26,7 +28,11 @@ import org.nabucco.testautomation.engine.proxy.SubEngineActionType;
 import org.nabucco.testautomation.engine.proxy.ws.WebServiceActionType;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClient;
 import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceClientFactory;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapTransport;
 import org.nabucco.testautomation.engine.proxy.ws.client.soap.SoapVersion;
+import org.nabucco.testautomation.engine.proxy.ws.command.soap.server.SoapServerImpl;
+import org.nabucco.testautomation.engine.proxy.ws.exception.CircuitOpenException;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.soap.SoapClient;
 import org.nabucco.testautomation.engine.proxy.ws.soap.SoapCommand;
@@ -46,10 +52,13 @@ public class SoapClientImpl implements SoapClient {
 
     private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(SoapClientImpl.class);
 
-    private WebServiceClient client;
+    private Map<SoapTransport, WebServiceClient> clients = new EnumMap<SoapTransport, WebServiceClient>(
+            SoapTransport.class);
 
     private String defaultNSPrefix;
 
+    private SoapServerImpl replyServer;
+
     /**
      * Constructs a new instance calling a SOAP-WebService.
      * 
@@ -57,11 +66,20 @@ public class SoapClientImpl implements SoapClient {
      *            the SOAP-Version (1.1 or 1.2)
      * @param defaultNSPrefix
      *            the default namespace prefix
+     * @param replyServer
+     *            the server receiving the replies to asynchronous calls
+     * @param attachmentStore
+     *            the store of the received attachments
      * @throws WebServiceException
      */
-    public SoapClientImpl(SoapVersion version, String defaultNSPrefix) throws WebServiceException {
-        this.client = WebServiceClientFactory.getInstance().getSoapWebServiceClient(version);
+    public SoapClientImpl(SoapVersion version, String defaultNSPrefix, SoapServerImpl replyServer,
+            AttachmentStore attachmentStore) throws WebServiceException {
+        for (SoapTransport transport : SoapTransport.values()) {
+            this.clients.put(transport, WebServiceClientFactory.getInstance()
+                    .getSoapWebServiceClient(version, transport, attachmentStore));
+        }
         this.defaultNSPrefix = defaultNSPrefix;
+        this.replyServer = replyServer;
     }
 
     /**
@@ -85,7 +103,7 @@ public class SoapClientImpl implements SoapClient {
 
             switch ((WebServiceActionType) actionType) {
             case CALL:
-                command = new SoapCallCommand(this.client, this.defaultNSPrefix);
+                command = new SoapCallCommand(this.clients, this.replyServer.getHttpServer(), this.defaultNSPrefix);
                 break;
             default:
                 result.setErrorMessage("Unsupported WebServiceActionType for SoapCall: " + actionType);
@@ -99,6 +117,11 @@ public class SoapClientImpl implements SoapClient {
             result.setReturnProperties(returnProperties);
             result.setActionStatus(ActionStatusType.EXECUTED);
             return result;
+        } catch (CircuitOpenException ex) {
+            logger.warning(ex.getMessage());
+            result.setErrorMessage("Could not execute SoapCall, circuit is open. Cause: " + ex.getMessage());
+            result.setActionStatus(ActionStatusType.FAILED);
+            return result;
         } catch (WebServiceException ex) {
             logger.error(ex);
             result.setErrorMessage("Could not execute SoapCall. Cause: " + ex.getMessage());
@@ -17,13 +17,16 @@
 package org.nabucco.testautomation.engine.proxy.ws.command.soap.server;
 
 import java.io.IOException;
+import java.util.List;
 
 import javax.xml.xpath.XPathExpressionException;
 
 import org.nabucco.testautomation.engine.base.exception.InterruptionException;
 import org.nabucco.testautomation.engine.base.exception.NBCTestConfigurationException;
+import org.nabucco.testautomation.engine.proxy.ws.command.RequestProperties;
 import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.AbstractSoapCommand;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.handler.SoapMessageHandler;
@@ -49,6 +52,8 @@ public class ReceiveSoapCommand extends AbstractSoapCommand {
 
     private HttpRequest httpRequest;
 
+    private boolean correlated;
+
     private final String defaultNSPrefix;
 
     /**
@@ -82,10 +87,20 @@ public class ReceiveSoapCommand extends AbstractSoapCommand {
         PropertyList extractProps = (PropertyList) PropertyHelper.getFromList(metadata.getPropertyList(),
                 PropertyType.LIST, WsConstants.REQUEST_ID);
 
+        // The reply to an asynchronous call is received by its correlation ID
+        String correlationId = RequestProperties.getPropertyValue(metadata, propertyList, CORRELATION_ID);
+
         try {
-            this.info("Waiting to receive SOAP-Request ...");
             this.start();
-            this.httpRequest = httpServer.receive(timeout);
+
+            if (correlationId != null) {
+                this.info("Waiting to receive reply to '" + correlationId + "' ...");
+                this.httpRequest = httpServer.receive(correlationId.trim(), timeout);
+                this.correlated = true;
+            } else {
+                this.info("Waiting to receive SOAP-Request ...");
+                this.httpRequest = httpServer.receive(timeout);
+            }
             this.stop();
             this.info("Received Http-Request from client: " + this.httpRequest.getClientAddress());
 
@@ -99,7 +114,15 @@ public class ReceiveSoapCommand extends AbstractSoapCommand {
             // Extract Properties from XML-Message
             XmlMessageHandler messageHandler = new XmlMessageHandler(message, this.defaultNSPrefix);
             messageHandler.setExtractionProperties(extractProps);
-            return messageHandler.extract();
+            PropertyList requestProperties = messageHandler.extract();
+
+            // Add the files of received attachments
+            List<SoapAttachment> attachments = this.httpRequest.getAttachments();
+
+            if (!attachments.isEmpty()) {
+                PropertyHelper.add(createAttachmentList(attachments), requestProperties);
+            }
+            return requestProperties;
         } catch (InterruptedException ex) {
             this.setException(ex);
             throw new InterruptionException("Receiving SOAP-Message aborted");
@@ -127,6 +150,16 @@ public class ReceiveSoapCommand extends AbstractSoapCommand {
         return this.httpRequest;
     }
 
+    /**
+     * Checks whether the received request is the reply to an asynchronous call. Replies are
+     * acknowledged on receipt and cannot be responded.
+     * 
+     * @return true, if a reply has been received
+     */
+    public boolean isCorrelated() {
+        return this.correlated;
+    }
+
     /**
      * 
      * @param metadata
@@ -26,7 +26,7 @@ import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.AbstractSoapCommand;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.handler.SoapMessageHandler;
-import org.nabucco.testautomation.engine.proxy.ws.handler.XmlMessageHandler;
+import org.nabucco.testautomation.engine.proxy.ws.handler.RequestTemplate;
 import org.nabucco.testautomation.engine.proxy.ws.server.http.HttpRequest;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
 import org.nabucco.testautomation.property.facade.datatype.XmlProperty;
@@ -77,12 +77,9 @@ public class RespondSoapCommand extends AbstractSoapCommand {
         PropertyList transformProps = (PropertyList) PropertyHelper.getFromList(metadata.getPropertyList(),
                 PropertyType.LIST, WsConstants.RESPONSE_ID);
 
-        // Initialize XmlMessageHandler
-        XmlMessageHandler messageHandler = new XmlMessageHandler(response, this.defaultNSPrefix);
-        messageHandler.setTransformationProperties(transformProps);
-
-        // Transform ResponseMessage
-        Document xml = messageHandler.transform(propertyList);
+        // Transform ResponseMessage by its compiled template
+        Document xml = RequestTemplate.getTemplate(response, transformProps, this.defaultNSPrefix).newDocument(
+                propertyList);
 
         try {
             SoapMessageHandler soapHandler = new SoapMessageHandler(this.defaultNSPrefix);
@@ -91,7 +88,8 @@ public class RespondSoapCommand extends AbstractSoapCommand {
             String serializedMessage = soapHandler.serialize(soapResponse);
             this.setResponse(serializedMessage);
             this.start();
-            this.httpRequest.respond(serializedMessage);
+            this.httpRequest.respond(serializedMessage, getAttachments(metadata, propertyList), isMtomEnabled(
+                    metadata, propertyList));
             return null;
         } catch (IOException ex) {
             this.setException(ex);
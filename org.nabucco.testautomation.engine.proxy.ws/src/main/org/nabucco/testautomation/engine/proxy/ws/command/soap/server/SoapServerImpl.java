@@ -26,6 +26,7 @@ import org.nabucco.testautomation.engine.base.util.TestResultHelper;
 import org.nabucco.testautomation.engine.proxy.ProxyCommand;
 import org.nabucco.testautomation.engine.proxy.SubEngineActionType;
 import org.nabucco.testautomation.engine.proxy.ws.WebServiceActionType;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.server.http.BlockingHttpServer;
 import org.nabucco.testautomation.engine.proxy.ws.server.http.HttpRequest;
@@ -52,14 +53,19 @@ public class SoapServerImpl implements SoapServer {
 
     private final String defaultNSPrefix;
 
+    private final AttachmentStore attachmentStore;
+
     /**
      * Constructs a new instance providing a SOAP-WebService received by the given HttpServer.
      * 
      * @param defaultNSPrefix
      *            the default namespace prefix
+     * @param attachmentStore
+     *            the store of the attachments of received requests
      */
-    public SoapServerImpl(String defaultNSPrefix) {
+    public SoapServerImpl(String defaultNSPrefix, AttachmentStore attachmentStore) {
         this.defaultNSPrefix = defaultNSPrefix;
+        this.attachmentStore = attachmentStore;
     }
 
     /**
@@ -84,7 +90,7 @@ public class SoapServerImpl implements SoapServer {
 
             switch ((WebServiceActionType) actionType) {
             case START: {
-                StartServerCommand serverCommand = new StartServerCommand();
+                StartServerCommand serverCommand = new StartServerCommand(this.attachmentStore);
                 serverCommand.execute(metadata, propertyList);
                 this.httpServer = serverCommand.getHttpServer();
                 command = serverCommand;
@@ -93,7 +99,7 @@ public class SoapServerImpl implements SoapServer {
             case RECEIVE: {
                 ReceiveSoapCommand serverCommand = new ReceiveSoapCommand(this.httpServer, this.defaultNSPrefix);
                 returnProperties = serverCommand.execute(metadata, propertyList);
-                this.lastRequest = serverCommand.getHttpRequest();
+                this.lastRequest = serverCommand.isCorrelated() ? null : serverCommand.getHttpRequest();
                 command = serverCommand;
                 break;
             }
@@ -147,6 +153,15 @@ public class SoapServerImpl implements SoapServer {
         }
     }
 
+    /**
+     * Gets the HttpServer started by the last START action.
+     * 
+     * @return the running server, or null if not started
+     */
+    public BlockingHttpServer getHttpServer() {
+        return this.httpServer;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -19,6 +19,7 @@ package org.nabucco.testautomation.engine.proxy.ws.command.soap.server;
 import java.io.IOException;
 
 import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.AbstractSoapCommand;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
 import org.nabucco.testautomation.engine.proxy.ws.server.http.BlockingHttpServer;
@@ -38,6 +39,18 @@ public class StartServerCommand extends AbstractSoapCommand {
 
 	private BlockingHttpServer httpServer;
 	
+	private final AttachmentStore attachmentStore;
+	
+	/**
+	 * Creates a command starting a server which stores the attachments of received requests in
+	 * the given store.
+	 * 
+	 * @param attachmentStore the store of the attachments
+	 */
+	public StartServerCommand(AttachmentStore attachmentStore) {
+		this.attachmentStore = attachmentStore;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -51,6 +64,7 @@ public class StartServerCommand extends AbstractSoapCommand {
 		
 		try {
 			this.httpServer = new BlockingHttpServer(host, port, path);
+			this.httpServer.setAttachmentStore(this.attachmentStore);
 			this.start();
 			this.httpServer.start();
 			this.stop();
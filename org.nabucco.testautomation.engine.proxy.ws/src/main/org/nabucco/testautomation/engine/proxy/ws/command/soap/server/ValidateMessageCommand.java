@@ -23,13 +23,12 @@ import java.net.URL;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
 import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.engine.proxy.ws.command.soap.AbstractSoapCommand;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
 import org.nabucco.testautomation.property.facade.datatype.BooleanProperty;
 import org.nabucco.testautomation.property.facade.datatype.FileProperty;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
@@ -59,25 +58,19 @@ public class ValidateMessageCommand extends AbstractSoapCommand {
 		XmlProperty xmlProperty = getXmlMessage(metadata, propertyList);
 		BooleanProperty resultProperty = getResultProperty(propertyList);
 		String xml = xmlProperty.getValue().getValue();
-		Schema schema = null;
+		Validator validator = null;
 		
 		try {
 			this.setRequest(xml);
 			this.start();
 			
-			// Lookup a factory for the W3C XML Schema language
-			SchemaFactory factory = SchemaFactory
-					.newInstance(SCHEMA_LANGUAGE);
-
-			// Compile the schema for validation.
+			// Get a validator from the compiled schema, schemas are compiled once
 			if (url != null) {
 				URL schemaLocation = new URL(url);
-				schema = factory.newSchema(schemaLocation);
+				validator = XmlFactoryRegistry.getInstance().getValidator(schemaLocation);
 				this.info("Validating against SchemaLocation: " + url);
 			} else if (schemaFile != null) {
-				Source schemeSource = new StreamSource(new StringReader(
-						schemaFile.getContent().getValue()));
-				schema = factory.newSchema(schemeSource);
+				validator = XmlFactoryRegistry.getInstance().getValidator(schemaFile.getContent().getValue());
 				this.info("Validating against SchemaFile: " + schemaFile);
 			} else {
 				throw new WebServiceException(
@@ -95,9 +88,6 @@ public class ValidateMessageCommand extends AbstractSoapCommand {
 		}
 
 		try {
-			// Get a validator from the schema.
-			Validator validator = schema.newValidator();
-
 			// Parse the document you want to check.
 			Source source = new StreamSource(new StringReader(xml));
 
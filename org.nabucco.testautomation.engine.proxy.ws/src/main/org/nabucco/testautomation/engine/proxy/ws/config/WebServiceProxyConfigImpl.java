@@ -48,4 +48,87 @@ public class WebServiceProxyConfigImpl extends AbstractProxyEngineConfiguration
 		return this.getConfigurationValue(WebServiceProxyConfigurationType.DEFAULT_NS_PREFIX.getKey()).trim();
 	}
 
+	/**
+     * {@inheritDoc}
+     */
+	@Override
+	public Integer getMaxConnectionsPerRoute() {
+		Long value = this.getNumericValue(WebServiceProxyConfigurationType.MAX_CONNECTIONS_PER_ROUTE);
+		return value != null ? Integer.valueOf(value.intValue()) : DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	}
+
+	/**
+     * {@inheritDoc}
+     */
+	@Override
+	public Long getIdleConnectionTimeout() {
+		Long value = this.getNumericValue(WebServiceProxyConfigurationType.IDLE_CONNECTION_TIMEOUT);
+		return value != null ? value : DEFAULT_IDLE_CONNECTION_TIMEOUT;
+	}
+
+	/**
+     * {@inheritDoc}
+     */
+	@Override
+	public String getHttpVersion() {
+		String value = this.getConfigurationValue(WebServiceProxyConfigurationType.HTTP_VERSION.getKey());
+		
+		if (value == null || value.trim().length() == 0) {
+			return DEFAULT_HTTP_VERSION;
+		}
+		return value.trim();
+	}
+
+	/**
+     * {@inheritDoc}
+     */
+	@Override
+	public Integer getCircuitFailureRate() {
+		Long value = this.getNumericValue(WebServiceProxyConfigurationType.CIRCUIT_FAILURE_RATE);
+		return value != null ? Integer.valueOf(value.intValue()) : DEFAULT_CIRCUIT_FAILURE_RATE;
+	}
+
+	/**
+     * {@inheritDoc}
+     */
+	@Override
+	public Long getCircuitCoolDown() {
+		Long value = this.getNumericValue(WebServiceProxyConfigurationType.CIRCUIT_COOL_DOWN);
+		return value != null ? value : DEFAULT_CIRCUIT_COOL_DOWN;
+	}
+
+	/**
+     * {@inheritDoc}
+     */
+	@Override
+	public Boolean getLazyNamespaces() {
+		String value = this.getConfigurationValue(WebServiceProxyConfigurationType.LAZY_NAMESPACES.getKey());
+		
+		if (value == null || value.trim().length() == 0) {
+			return DEFAULT_LAZY_NAMESPACES;
+		}
+		return Boolean.valueOf(value.trim());
+	}
+
+	/**
+	 * Gets the positive numeric value configured for the given type.
+	 * 
+	 * @param type the configuration type
+	 * @return the value or null, if not configured or invalid
+	 */
+	private Long getNumericValue(WebServiceProxyConfigurationType type) {
+		String value = this.getConfigurationValue(type.getKey());
+		
+		if (value == null || value.trim().length() == 0) {
+			return null;
+		}
+		
+		try {
+			long number = Long.parseLong(value.trim());
+			return number > 0 ? Long.valueOf(number) : null;
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.handler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * CapturingInputStream
+ * <p>
+ * Captures the bytes read from the underlying stream, so that a message parsed while it is
+ * received can be read again. Up to the given number of bytes are kept in memory, a larger message
+ * is spilled to a temporary file, which is deleted by {@link #discard()}. Discarding the capture
+ * does not close the underlying stream, which remains owned by the caller.
+ *
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+final class CapturingInputStream extends FilterInputStream {
+
+    private static final String TEMP_FILE_PREFIX = "nabucco-message";
+
+    private static final String TEMP_FILE_SUFFIX = ".xml";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int maxMemorySize;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private File spillFile;
+
+    private OutputStream spill;
+
+    /**
+     * Creates a stream capturing the given stream.
+     *
+     * @param in
+     *            the stream to capture
+     * @param maxMemorySize
+     *            the maximum number of bytes kept in memory
+     */
+    CapturingInputStream(InputStream in, int maxMemorySize) {
+        super(in);
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+
+        int c = super.read();
+
+        if (c != -1) {
+            this.capture(new byte[] { (byte) c }, 0, 1);
+        }
+        return c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        int c = super.read(b, off, len);
+
+        if (c > 0) {
+            this.capture(b, off, c);
+        }
+        return c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+
+        byte[] buf = new byte[(int) Math.min(n, BUFFER_SIZE)];
+        int c = this.read(buf, 0, buf.length);
+        return c > 0 ? c : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the rest of the underlying stream, so that the complete message is captured.
+     *
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     */
+    void readToEnd() throws IOException {
+
+        byte[] buf = new byte[BUFFER_SIZE];
+
+        while (this.read(buf, 0, buf.length) != -1) {
+            continue;
+        }
+    }
+
+    /**
+     * Gets the captured bytes, if they are kept in memory.
+     *
+     * @return the captured bytes, or null if they have been spilled to a file
+     */
+    byte[] getCaptured() {
+        return this.spillFile == null ? this.memory.toByteArray() : null;
+    }
+
+    /**
+     * Opens a stream reading the bytes captured so far.
+     *
+     * @return the stream of the captured bytes
+     * @throws IOException
+     *             thrown, if the spill file cannot be read
+     */
+    InputStream openCaptured() throws IOException {
+
+        if (this.spillFile == null) {
+            return new ByteArrayInputStream(this.memory.toByteArray());
+        }
+        this.spill.flush();
+        return new BufferedInputStream(new FileInputStream(this.spillFile));
+    }
+
+    /**
+     * Discards the captured bytes and deletes the spill file.
+     *
+     * @throws IOException
+     *             thrown, if the spill file cannot be closed
+     */
+    void discard() throws IOException {
+
+        this.memory = null;
+
+        try {
+            if (this.spill != null) {
+                this.spill.close();
+                this.spill = null;
+            }
+        } finally {
+            if (this.spillFile != null && !this.spillFile.delete()) {
+                this.spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    private void capture(byte[] b, int off, int len) throws IOException {
+
+        if (this.spill == null && this.memory.size() + len > this.maxMemorySize) {
+            this.spillFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+            this.spill = new BufferedOutputStream(new FileOutputStream(this.spillFile), BUFFER_SIZE);
+            this.memory.writeTo(this.spill);
+            this.memory = null;
+        }
+
+        if (this.spill != null) {
+            this.spill.write(b, off, len);
+        } else {
+            this.memory.write(b, off, len);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * DocumentResponseHandler
+ * <p>
+ * Parses the response body directly from the stream into a namespace aware
+ * {@link org.w3c.dom.Document}.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class DocumentResponseHandler implements WebServiceResponseHandler<Document> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document handleResponse(InputStream in, String charset) throws IOException, WebServiceException {
+        return parse(in, charset);
+    }
+
+    /**
+     * Parses the given stream into a Document. If no charset is given, the encoding is detected by
+     * the parser from the XML declaration.
+     * 
+     * @param in
+     *            the stream to parse
+     * @param charset
+     *            the charset declared by the transport, or null
+     * @return the parsed document
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     * @throws WebServiceException
+     *             thrown, if the content is no well-formed XML
+     */
+    public static Document parse(InputStream in, String charset) throws IOException, WebServiceException {
+
+        InputSource source = new InputSource(in);
+
+        if (charset != null) {
+            source.setEncoding(charset);
+        }
+
+        try {
+            return XmlFactoryRegistry.getInstance().getDocumentBuilder().parse(source);
+        } catch (SAXException ex) {
+            throw new WebServiceException("XML-Message invalid: could not parse input stream to org.w3c.Document ("
+                    + ex.getMessage() + ")", ex);
+        }
+    }
+
+}
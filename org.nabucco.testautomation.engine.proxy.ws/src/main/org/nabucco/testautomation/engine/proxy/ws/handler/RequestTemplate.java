@@ -0,0 +1,548 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.body.DocumentRequestBody;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xpath.XPathProcessor;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.XPathProperty;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyContainer;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyType;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * RequestTemplate
+ * <p>
+ * Precompiled XML message template and its transformation XPath-properties. The message is parsed
+ * and the target node of each XPath-expression is resolved once per template. A transformed
+ * message is then created without parsing or XPath evaluation, either as copy of the parsed
+ * template with the values set to the resolved nodes, or as String by splicing the escaped values
+ * into the pre-serialized template. The spliced message is equivalent XML to the serialized
+ * transformation by {@link XmlMessageHandler#transform(PropertyList)}, an empty element value is
+ * however written as start and end tag instead of an empty-element tag.
+ * <p>
+ * The transformation evaluates each expression on the message changed by the previous values. If
+ * a target depends on these changes, i.e. it lies inside an earlier target, is not found before
+ * the earlier values are set, or the expression has a predicate, the template falls back to the
+ * sequential transformation of a copy of the parsed message. Templates are cached, since the steps
+ * of a suite send the same messages over and over.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class RequestTemplate {
+
+    /**
+     * The maximum number of cached templates.
+     */
+    public static final int MAX_TEMPLATES = 64;
+
+    private static final Map<Key, RequestTemplate> templates = new LinkedHashMap<Key, RequestTemplate>(16, 0.75f,
+            true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Key, RequestTemplate> eldest) {
+            return this.size() > MAX_TEMPLATES;
+        }
+    };
+
+    private final Document document;
+
+    private final PropertyList transformationProperties;
+
+    private final String defaultNSPrefix;
+
+    /** Whether the values are set by the sequential transformation. */
+    private boolean sequential;
+
+    private final List<Slot> slots = new ArrayList<Slot>();
+
+    /** The serialized template split at the slots, null if it cannot be spliced. */
+    private String[] fragments;
+
+    /** The slot of the value between two fragments. */
+    private Slot[] fragmentSlots;
+
+    /**
+     * Compiles a new template.
+     */
+    private RequestTemplate(String message, List<XPathProperty> xpathList, PropertyList transformationProperties,
+            String defaultNSPrefix) throws WebServiceException {
+
+        this.transformationProperties = transformationProperties;
+        this.defaultNSPrefix = defaultNSPrefix;
+
+        XPathProcessor processor = new XPathProcessor(defaultNSPrefix);
+        processor.setTemplate(message);
+
+        for (XPathProperty xpath : xpathList) {
+            this.resolve(processor, xpath, null, null);
+        }
+
+        if (this.sequential) {
+            this.document = processor.getDocument();
+            this.slots.clear();
+            return;
+        }
+
+        for (Slot slot : this.slots) {
+            slot.path = getPath(slot.node);
+        }
+
+        this.document = (Document) processor.getDocument().cloneNode(true);
+        this.compileFragments(processor.getDocument());
+
+        // The template only holds the paths to the nodes
+        for (Slot slot : this.slots) {
+            slot.node = null;
+        }
+    }
+
+    /**
+     * Gets the compiled template of the given message and transformation properties.
+     * 
+     * @param message
+     *            the XML message template
+     * @param transformationProperties
+     *            the XPath-properties of the transformation, may be null
+     * @param defaultNSPrefix
+     *            the default namespace prefix
+     * @return the compiled template
+     * @throws WebServiceException
+     *             thrown, if the message cannot be parsed or an XPath-expression cannot be processed
+     */
+    public static RequestTemplate getTemplate(String message, PropertyList transformationProperties,
+            String defaultNSPrefix) throws WebServiceException {
+
+        if (message == null) {
+            throw new WebServiceException("Message must not be null");
+        }
+
+        List<XPathProperty> xpathList = new ArrayList<XPathProperty>();
+
+        if (transformationProperties != null) {
+            for (PropertyContainer container : transformationProperties.getPropertyList()) {
+                Property property = container.getProperty();
+
+                if (property.getType() == PropertyType.XPATH) {
+                    xpathList.add((XPathProperty) property);
+                }
+            }
+        }
+
+        StringBuilder signature = new StringBuilder();
+        appendXPath(xpathList, signature);
+        Key key = new Key(message, signature.toString(), defaultNSPrefix);
+        RequestTemplate template;
+
+        synchronized (templates) {
+            template = templates.get(key);
+        }
+
+        if (template == null) {
+            template = new RequestTemplate(message, xpathList, transformationProperties, defaultNSPrefix);
+
+            synchronized (templates) {
+                templates.put(key, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Removes all cached templates.
+     */
+    public static void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    /**
+     * Creates a new message document transformed with the given values.
+     * 
+     * @param requestValues
+     *            the list of properties for the XPath-replacement
+     * @return the transformed document
+     * @throws WebServiceException
+     *             thrown, if the sequential transformation fails
+     */
+    public Document newDocument(PropertyList requestValues) throws WebServiceException {
+
+        Document copy;
+
+        synchronized (this.document) {
+            copy = (Document) this.document.cloneNode(true);
+        }
+
+        if (this.sequential) {
+            XmlMessageHandler handler = new XmlMessageHandler(copy, this.defaultNSPrefix);
+            handler.setTransformationProperties(this.transformationProperties);
+            return handler.transform(requestValues);
+        }
+
+        // All nodes are resolved before the first value changes the tree
+        Node[] nodes = new Node[this.slots.size()];
+
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = copy;
+
+            for (int index : this.slots.get(i).path) {
+                node = index < 0 ? node.getAttributes().item(-index - 1) : node.getChildNodes().item(index);
+            }
+            nodes[i] = node;
+        }
+
+        Map<String, Property> values = getRequestValues(requestValues);
+
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setTextContent(getValue(values, this.slots.get(i)));
+        }
+        return copy;
+    }
+
+    /**
+     * Creates the serialized message transformed with the given values, as serialized by
+     * {@link DocumentRequestBody}.
+     * 
+     * @param requestValues
+     *            the list of properties for the XPath-replacement
+     * @return the transformed message
+     * @throws WebServiceException
+     *             thrown, if the message cannot be serialized
+     */
+    public String render(PropertyList requestValues) throws WebServiceException {
+
+        if (this.fragments == null) {
+            return new DocumentRequestBody(this.newDocument(requestValues)).toTraceString();
+        }
+
+        Map<String, Property> values = getRequestValues(requestValues);
+        StringBuilder message = new StringBuilder(this.fragments[0]);
+
+        for (int i = 0; i < this.fragmentSlots.length; i++) {
+            Slot slot = this.fragmentSlots[i];
+            escape(getValue(values, slot), slot.attribute, message);
+            message.append(this.fragments[i + 1]);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Resolves the target nodes of the given property like
+     * {@link XmlMessageHandler#transform(PropertyList)} processes them.
+     */
+    private void resolve(XPathProcessor processor, XPathProperty xpathProp, String parentId, String parentXPath)
+            throws WebServiceException {
+
+        String id = parentId != null ? parentId + WsConstants.ID_SEPARATOR + xpathProp.getName().getValue()
+                : xpathProp.getName().getValue();
+        String xpath = parentXPath != null ? parentXPath + xpathProp.getValue().getValue() : xpathProp.getValue()
+                .getValue();
+
+        if (!xpathProp.getPropertyList().isEmpty()) {
+            for (PropertyContainer container : xpathProp.getPropertyList()) {
+                Property property = container.getProperty();
+
+                if (property.getType() == PropertyType.XPATH) {
+                    this.resolve(processor, (XPathProperty) property, id, xpath);
+                }
+            }
+        } else if (!this.sequential) {
+
+            // The target of a predicate may depend on the earlier values
+            if (xpath.indexOf('[') >= 0) {
+                this.sequential = true;
+                return;
+            }
+
+            Node node = processor.getNode(xpath);
+
+            if (node == null) {
+                // An earlier value may create the target, e.g. the text node of an empty element
+                this.sequential = !this.slots.isEmpty();
+            } else if (this.isNested(node)) {
+                this.sequential = true;
+            } else {
+                this.slots.add(new Slot(id, node));
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given node lies inside the target of an earlier slot, which replaces its
+     * content.
+     */
+    private boolean isNested(Node node) {
+
+        Node parent = node.getNodeType() == Node.ATTRIBUTE_NODE ? ((Attr) node).getOwnerElement() : node
+                .getParentNode();
+
+        for (; parent != null; parent = parent.getParentNode()) {
+            for (Slot slot : this.slots) {
+                if (slot.node == parent) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serializes the document with a unique marker as value of each slot and splits it at the
+     * markers. A slot overwritten or removed by a later slot has no marker left. If a value
+     * cannot be spliced as escaped text, no fragments are compiled.
+     */
+    private void compileFragments(Document document) throws WebServiceException {
+
+        String marker = "$" + UUID.randomUUID() + "-";
+
+        for (int i = 0; i < this.slots.size(); i++) {
+            Node node = this.slots.get(i).node;
+
+            if (node.getNodeType() != Node.ELEMENT_NODE && node.getNodeType() != Node.ATTRIBUTE_NODE
+                    && node.getNodeType() != Node.TEXT_NODE) {
+                return;
+            }
+            node.setTextContent(marker + i + "$");
+        }
+
+        String serialized = new DocumentRequestBody(document).toTraceString();
+        int[] positions = new int[this.slots.size()];
+        List<Integer> found = new ArrayList<Integer>();
+
+        for (int i = 0; i < this.slots.size(); i++) {
+            positions[i] = serialized.indexOf(marker + i + "$");
+
+            if (positions[i] >= 0) {
+                found.add(positions[i]);
+            }
+        }
+
+        Integer[] sorted = found.toArray(new Integer[found.size()]);
+        Arrays.sort(sorted);
+
+        this.fragments = new String[sorted.length + 1];
+        this.fragmentSlots = new Slot[sorted.length];
+        int start = 0;
+
+        for (int f = 0; f < sorted.length; f++) {
+            int slot = indexOf(positions, sorted[f]);
+            this.fragments[f] = serialized.substring(start, sorted[f]);
+            this.fragmentSlots[f] = this.slots.get(slot);
+            start = sorted[f] + (marker + slot + "$").length();
+        }
+        this.fragments[sorted.length] = serialized.substring(start);
+    }
+
+    private static int indexOf(int[] positions, int position) {
+
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] == position) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the path of child indices from the document to the given node. An attribute is
+     * addressed by its negative index, starting at -1.
+     */
+    private static int[] getPath(Node node) {
+
+        List<Integer> path = new ArrayList<Integer>();
+
+        while (node.getNodeType() != Node.DOCUMENT_NODE) {
+            Node parent;
+            int index;
+
+            if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+                parent = ((Attr) node).getOwnerElement();
+                index = -1;
+
+                while (parent.getAttributes().item(-index - 1) != node) {
+                    index--;
+                }
+            } else {
+                parent = node.getParentNode();
+                index = 0;
+
+                for (Node sibling = node.getPreviousSibling(); sibling != null; sibling = sibling
+                        .getPreviousSibling()) {
+                    index++;
+                }
+            }
+            path.add(0, index);
+            node = parent;
+        }
+
+        int[] result = new int[path.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = path.get(i);
+        }
+        return result;
+    }
+
+    private static String getValue(Map<String, Property> values, Slot slot) {
+        String value = PropertyValueMapper.getValue(values.get(slot.id));
+        return value != null ? value : WsConstants.EMPTY_STRING;
+    }
+
+    private static Map<String, Property> getRequestValues(PropertyList requestValues) {
+
+        Map<String, Property> values = new HashMap<String, Property>();
+
+        for (PropertyContainer container : requestValues.getPropertyList()) {
+            XmlMessageHandler.addRequestValue(container.getProperty(), values, null);
+        }
+        return values;
+    }
+
+    /**
+     * Escapes the given value as text or attribute value like the serializer.
+     */
+    private static void escape(String value, boolean attribute, StringBuilder out) {
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+            case '&':
+                out.append("&amp;");
+                break;
+            case '<':
+                out.append("&lt;");
+                break;
+            case '>':
+                out.append("&gt;");
+                break;
+            case '"':
+                out.append(attribute ? "&quot;" : "\"");
+                break;
+            case '\r':
+                out.append("&#13;");
+                break;
+            case '\n':
+                out.append(attribute ? "&#10;" : "\n");
+                break;
+            case '\t':
+                out.append(attribute ? "&#9;" : "\t");
+                break;
+            default:
+                out.append(c);
+            }
+        }
+    }
+
+    private static void appendXPath(List<XPathProperty> properties, StringBuilder key) {
+
+        for (XPathProperty xpath : properties) {
+            key.append('|').append(xpath.getName().getValue()).append('=')
+                    .append(xpath.getValue() != null ? xpath.getValue().getValue() : null).append('[');
+
+            List<XPathProperty> children = new ArrayList<XPathProperty>();
+
+            for (PropertyContainer container : xpath.getPropertyList()) {
+                if (container.getProperty().getType() == PropertyType.XPATH) {
+                    children.add((XPathProperty) container.getProperty());
+                }
+            }
+            appendXPath(children, key);
+            key.append(']');
+        }
+    }
+
+    /**
+     * A resolved target node of the transformation.
+     */
+    private static class Slot {
+
+        private final String id;
+
+        private final boolean attribute;
+
+        private Node node;
+
+        private int[] path;
+
+        Slot(String id, Node node) {
+            this.id = id;
+            this.node = node;
+            this.attribute = node.getNodeType() == Node.ATTRIBUTE_NODE;
+        }
+    }
+
+    /**
+     * Key of a cached template.
+     */
+    private static class Key {
+
+        private final String message;
+
+        private final String xpath;
+
+        private final String defaultNSPrefix;
+
+        Key(String message, String xpath, String defaultNSPrefix) {
+            this.message = message;
+            this.xpath = xpath;
+            this.defaultNSPrefix = defaultNSPrefix;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.message.hashCode();
+            result = 31 * result + this.xpath.hashCode();
+            result = 31 * result + (this.defaultNSPrefix != null ? this.defaultNSPrefix.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return this.message.equals(other.message) && this.xpath.equals(other.xpath)
+                    && (this.defaultNSPrefix == null ? other.defaultNSPrefix == null : this.defaultNSPrefix
+                            .equals(other.defaultNSPrefix));
+        }
+    }
+
+}
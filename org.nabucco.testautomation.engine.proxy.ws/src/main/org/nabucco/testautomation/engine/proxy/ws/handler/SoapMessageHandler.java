@@ -19,7 +19,6 @@ package org.nabucco.testautomation.engine.proxy.ws.handler;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
-import javax.xml.soap.MessageFactory;
 import javax.xml.soap.SOAPBody;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
@@ -28,6 +27,7 @@ import javax.xml.xpath.XPathExpressionException;
 import org.nabucco.testautomation.engine.base.exception.NBCTestConfigurationException;
 import org.nabucco.testautomation.engine.base.xml.XMLToolkit;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
 import org.nabucco.testautomation.engine.proxy.ws.xpath.XPathProcessor;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -90,8 +90,7 @@ public class SoapMessageHandler {
 	
 	public SOAPMessage addToSoapMessage(Document message) throws SOAPException {
 		
-        MessageFactory mf = MessageFactory.newInstance(); //"SOAP 1.2 Protocol"
-        SOAPMessage soapMessage = mf.createMessage();
+        SOAPMessage soapMessage = XmlFactoryRegistry.getInstance().getMessageFactory().createMessage();
         SOAPBody soapBody = soapMessage.getSOAPBody();
         soapBody.addDocument(message);
         return soapMessage;
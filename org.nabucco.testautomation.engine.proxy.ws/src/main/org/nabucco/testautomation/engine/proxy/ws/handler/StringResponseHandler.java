@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceResponseHandler;
+
+/**
+ * StringResponseHandler
+ * <p>
+ * Decodes the response body into a String using the charset of the response.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class StringResponseHandler implements WebServiceResponseHandler<String> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String handleResponse(InputStream in, String charset) throws IOException {
+        return toString(in, charset);
+    }
+
+    /**
+     * Reads the given stream to its end and decodes the content using the given charset.
+     * 
+     * @param in
+     *            the stream to read
+     * @param charset
+     *            the charset, or null for {@link WebServiceResponseHandler#DEFAULT_CHARSET}
+     * @return the decoded content
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     */
+    public static String toString(InputStream in, String charset) throws IOException {
+        return new String(toByteArray(in), charset != null ? charset : DEFAULT_CHARSET);
+    }
+
+    /**
+     * Reads the given stream to its end.
+     * 
+     * @param in
+     *            the stream to read
+     * @return the content of the stream
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     */
+    public static byte[] toByteArray(InputStream in) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int c;
+
+        while ((c = in.read(buf)) != -1) {
+            out.write(buf, 0, c);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -17,6 +17,8 @@
 package org.nabucco.testautomation.engine.proxy.ws.handler;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +27,7 @@ import java.util.Map;
 import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
 import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
 import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xpath.StreamingExtractor;
 import org.nabucco.testautomation.engine.proxy.ws.xpath.XPathProcessor;
 import org.nabucco.testautomation.property.facade.datatype.PropertyList;
 import org.nabucco.testautomation.property.facade.datatype.XPathProperty;
@@ -42,6 +45,15 @@ import org.w3c.dom.Document;
  */
 public class XmlMessageHandler {
 
+    /**
+     * The maximum size in bytes of a message returned as MSG by
+     * {@link #extract(InputStream, String, PropertyList, String)}. Larger messages are captured in a
+     * temporary file for the DOM evaluation only.
+     */
+    public static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
     private final XPathProcessor processor;
 
     private final List<XPathProperty> transformationXPath = new ArrayList<XPathProperty>();
@@ -70,6 +82,34 @@ public class XmlMessageHandler {
         this.processor.setDocument(message);
     }
     
+    /**
+     * Constructs a new XmlMessageHandler instance initialized by the given XML-Message, which is
+     * parsed directly from the given stream.
+     * 
+     * @param message
+     *            the stream of the XML message to handle
+     * @param charset
+     *            the charset of the message, or null to detect it from the XML declaration
+     * @param defaultNSPrefix
+     *            the default namespace prefix
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     * @throws WebServiceException
+     *             thrown, if an error occurs during this initialization
+     */
+    public XmlMessageHandler(InputStream message, String charset, String defaultNSPrefix) throws IOException,
+            WebServiceException {
+    
+    	if (message == null) {
+    		throw new WebServiceException("Message must not be null");
+    	}
+    	
+    	this.processor = new XPathProcessor(defaultNSPrefix);
+    	
+    	// Parse the XML-Document from the stream into the XPathProcessor
+        this.processor.setDocument(DocumentResponseHandler.parse(message, charset));
+    }
+    
     /**
      * Constructs a new XmlMessageHandler instance initialized by the given XML-Message.
      * 
@@ -178,15 +218,21 @@ public class XmlMessageHandler {
      *             thrown, if an error occurs during the process
      */
     public PropertyList extract() throws WebServiceException {
+        return this.extract(processor.getDocumentAsString());
+    }
+
+    private PropertyList extract(String message) throws WebServiceException {
 
         // the PropertyMap for the response-properties
 		PropertyList propertyList = PropertyHelper
 				.createPropertyList(WsConstants.RESPONSE_CONTAINER_ID);
 		
 		// Add response message as RS to returnProperties
-		XmlProperty responseProperty = PropertyHelper.createXmlProperty(
-				WsConstants.MESSAGE_ID, processor.getDocumentAsString());
-		PropertyHelper.add(responseProperty, propertyList);
+		if (message != null) {
+			XmlProperty responseProperty = PropertyHelper.createXmlProperty(
+					WsConstants.MESSAGE_ID, message);
+			PropertyHelper.add(responseProperty, propertyList);
+		}
         
         // process the xpath-expression and put the rs-values into the PropertyMap
         for (XPathProperty xpath : this.extractionXPath) {
@@ -195,6 +241,85 @@ public class XmlMessageHandler {
         return propertyList;
     }
 
+    /**
+     * Extracts the values of the given XPath-properties from the message read from the given stream.
+     * The properties are extracted in a single streaming pass without building a DOM of the
+     * message, if all expressions are supported by the {@link StreamingExtractor}. Otherwise the
+     * message is parsed and evaluated like by {@link #extract()}. The pull parser reads the stream
+     * directly, the bytes read are captured in memory up to {@link #MAX_MESSAGE_SIZE} and in a
+     * temporary file beyond. On both paths a message up to this size is returned as received,
+     * larger messages are not returned as MSG.
+     * 
+     * @param message
+     *            the stream of the XML message
+     * @param charset
+     *            the charset of the message, or null to detect it from the XML declaration
+     * @param extractionProperties
+     *            the XPath-properties of the response, may be null
+     * @param defaultNSPrefix
+     *            the default namespace prefix
+     * @return a PropertyList containing the message and all values defined by the XPath-expressions
+     * @throws IOException
+     *             thrown, if the stream cannot be read
+     * @throws WebServiceException
+     *             thrown, if an error occurs during the process
+     */
+    public static PropertyList extract(InputStream message, String charset, PropertyList extractionProperties,
+            String defaultNSPrefix) throws IOException, WebServiceException {
+
+        List<XPathProperty> xpathList = new ArrayList<XPathProperty>();
+        addXPathProperties(extractionProperties, xpathList);
+        StreamingExtractor extractor = StreamingExtractor.compile(xpathList, defaultNSPrefix);
+
+        // The message is captured to be returned as MSG or evaluated on the DOM
+        CapturingInputStream capture = new CapturingInputStream(message, MAX_MESSAGE_SIZE);
+
+        try {
+            StreamingExtractor.Result result = null;
+
+            if (extractor != null) {
+                result = extractor.extract(capture, charset);
+            }
+            capture.readToEnd();
+
+            if (result == null) {
+                XmlMessageHandler handler;
+                InputStream captured = capture.openCaptured();
+
+                try {
+                    handler = new XmlMessageHandler(captured, charset, defaultNSPrefix);
+                } finally {
+                    captured.close();
+                }
+                handler.setExtractionProperties(extractionProperties);
+                return handler.extract(getCapturedMessage(capture, getEncoding(handler.getMessage(), charset)));
+            }
+
+            PropertyList propertyList = PropertyHelper.createPropertyList(WsConstants.RESPONSE_CONTAINER_ID);
+            String content = getCapturedMessage(capture, result.getEncoding());
+
+            if (content != null) {
+                PropertyHelper.add(PropertyHelper.createXmlProperty(WsConstants.MESSAGE_ID, content), propertyList);
+            }
+
+            for (Property property : result.getProperties()) {
+                PropertyHelper.add(property, propertyList);
+            }
+            return propertyList;
+        } finally {
+            capture.discard();
+        }
+    }
+
+    /**
+     * Gets the captured message, if it is small enough to be returned.
+     */
+    private static String getCapturedMessage(CapturingInputStream capture, String encoding) throws IOException {
+
+        byte[] content = capture.getCaptured();
+        return content != null ? new String(content, encoding) : null;
+    }
+
     /**
      * Tries to get the PropertyMap with the id defined in {@link WsConstants.REQUEST_ID} from the
      * given metadata and extracts all XPath-properties from it.
@@ -225,13 +350,31 @@ public class XmlMessageHandler {
      *            the metadata to get the XPath-expressions from
      */
     public void setExtractionProperties(PropertyList propertyList) {
+		addXPathProperties(propertyList, extractionXPath);
+    }
+
+    /**
+     * Gets the encoding the given document has been parsed with.
+     */
+    private static String getEncoding(Document document, String charset) {
+
+        if (charset != null) {
+            return charset;
+        }
+        if (document.getInputEncoding() != null) {
+            return document.getInputEncoding();
+        }
+        return document.getXmlEncoding() != null ? document.getXmlEncoding() : DEFAULT_ENCODING;
+    }
+
+    private static void addXPathProperties(PropertyList propertyList, List<XPathProperty> xpathList) {
 		
 		if (propertyList != null) {
 			for (PropertyContainer container : propertyList.getPropertyList()) {
 				Property property = container.getProperty();
 				
 				if (property.getType() == PropertyType.XPATH) {
-					extractionXPath.add((XPathProperty) property);
+					xpathList.add((XPathProperty) property);
 				}
 			}
 		}
@@ -248,7 +391,7 @@ public class XmlMessageHandler {
      * @param parentId
      *            the id of the parent property
      */
-    private void addRequestValue(Property requestValue, Map<String, Property> requestValueMap,
+    static void addRequestValue(Property requestValue, Map<String, Property> requestValueMap,
             String parentId) {
 
         String id = parentId != null ? parentId + WsConstants.ID_SEPARATOR + requestValue.getName().getValue()
@@ -16,6 +16,7 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.json;
 
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -60,9 +61,23 @@ public class JsonMapper {
      */
     @SuppressWarnings("unchecked")
     public static PropertyList mapFromString(String json) {
+        return mapFromMap((Map<String, Object>) JSON.getDefault().fromJSON(json));
+    }
+
+    /**
+     * Parses the JSON-content of the given reader and maps it into a PropertyList.
+     * 
+     * @param reader the reader providing the JSON-content
+     * @return the mapped PropertyList
+     */
+    @SuppressWarnings("unchecked")
+    public static PropertyList mapFromReader(Reader reader) {
+        return mapFromMap((Map<String, Object>) JSON.getDefault().parse(new JSON.ReaderSource(reader)));
+    }
+
+    private static PropertyList mapFromMap(Map<String, Object> map) {
 
         PropertyList propertyList = PropertyHelper.createPropertyList("JSON");
-        Map<String, Object> map = (Map<String, Object>) JSON.getDefault().fromJSON(json);
         Iterator<Entry<String, Object>> it = map.entrySet().iterator();
 
         while (it.hasNext()) {
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.load;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.base.util.TestResultHelper;
+import org.nabucco.testautomation.engine.proxy.exception.SubEngineException;
+import org.nabucco.testautomation.engine.proxy.ws.WsConstants;
+import org.nabucco.testautomation.engine.proxy.ws.client.WebServiceExecutor;
+import org.nabucco.testautomation.engine.proxy.ws.command.RequestProperties;
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+import org.nabucco.testautomation.result.facade.datatype.ActionResponse;
+import org.nabucco.testautomation.result.facade.datatype.status.ActionStatusType;
+import org.nabucco.testautomation.script.facade.datatype.metadata.Metadata;
+
+/**
+ * LoadGenerator
+ * <p>
+ * Executes a webservice action repeatedly by a number of concurrent workers and returns the
+ * throughput, error rate and latency percentiles of the executions. The load ends after the
+ * configured number of iterations or duration, whichever comes first. Optionally the start of the
+ * executions is limited to a target rate.
+ * <p>
+ * The workers run on an executor of their own, so the asynchronous, batched and hedged calls of
+ * the actions do not compete with them for threads. Every execution binds its own client to the
+ * request settings of the action, the workers share no mutable client state.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public class LoadGenerator {
+
+    private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(LoadGenerator.class);
+
+    /**
+     * The maximum number of concurrent workers.
+     */
+    public static final int MAX_CONCURRENCY = WebServiceExecutor.MAX_THREADS / 4;
+
+    private static final String THREAD_NAME = "WebServiceClient-Load-";
+
+    private static final String ERRORS = "ERRORS";
+
+    private static final String ERROR_RATE = "ERROR_RATE";
+
+    private static final String THROUGHPUT = "THROUGHPUT";
+
+    private static final String P50 = "P50";
+
+    private static final String P90 = "P90";
+
+    private static final String P99 = "P99";
+
+    private static final String MAX = "MAX";
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final int iterations;
+
+    private final long duration;
+
+    private final int concurrency;
+
+    private final double rate;
+
+    /**
+     * Creates a new load generator.
+     * 
+     * @param iterations
+     *            the maximum number of executions, 0 for no limit
+     * @param duration
+     *            the maximum duration in milliseconds, 0 for no limit
+     * @param concurrency
+     *            the number of concurrent workers
+     * @param rate
+     *            the target rate of executions per second, 0 for no limit
+     */
+    public LoadGenerator(int iterations, long duration, int concurrency, double rate) {
+        this.iterations = iterations;
+        this.duration = duration;
+        this.concurrency = Math.max(1, Math.min(concurrency, MAX_CONCURRENCY));
+        this.rate = rate;
+    }
+
+    /**
+     * Creates the load generator configured in the given PropertyList of the action or, if not
+     * provided there, in the Metadata of the action. All load properties are read from the same
+     * source, the PropertyList or the innermost Metadata declaring iterations or duration.
+     * 
+     * @param metadataList
+     *            the Metadata of the action, from the root to the leaf
+     * @param propertyList
+     *            the PropertyList of the action
+     * @return the load generator, or null if neither iterations nor duration are configured
+     * @throws WebServiceException
+     *             thrown, if a load property is not a number
+     */
+    public static LoadGenerator getLoadGenerator(List<Metadata> metadataList, PropertyList propertyList)
+            throws WebServiceException {
+
+        PropertyList source = isLoadConfigured(propertyList) ? propertyList : null;
+
+        for (int i = metadataList.size() - 1; source == null && i >= 0; i--) {
+            PropertyList metadataProperties = metadataList.get(i).getPropertyList();
+
+            if (isLoadConfigured(metadataProperties)) {
+                source = metadataProperties;
+            }
+        }
+
+        if (source == null) {
+            return null;
+        }
+
+        String iterations = RequestProperties.getPropertyValue(source, WsConstants.LOAD_ITERATIONS);
+        String duration = RequestProperties.getPropertyValue(source, WsConstants.LOAD_DURATION);
+        String concurrency = RequestProperties.getPropertyValue(source, WsConstants.LOAD_CONCURRENCY);
+        String rate = RequestProperties.getPropertyValue(source, WsConstants.LOAD_RATE);
+
+        try {
+            return new LoadGenerator(iterations != null ? Integer.parseInt(iterations.trim()) : 0,
+                    duration != null ? Long.parseLong(duration.trim()) : 0,
+                    concurrency != null ? Integer.parseInt(concurrency.trim()) : 1,
+                    rate != null ? Double.parseDouble(rate.trim()) : 0);
+        } catch (NumberFormatException ex) {
+            throw new WebServiceException("Invalid load configuration", ex);
+        }
+    }
+
+    /**
+     * Executes the given action under load.
+     * 
+     * @param action
+     *            the action to execute repeatedly
+     * @return the response holding the load statistics as return properties
+     * @throws SubEngineException
+     *             thrown, if the load cannot be generated
+     */
+    public ActionResponse execute(final LoadAction action) throws SubEngineException {
+
+        final AtomicInteger remaining = new AtomicInteger(this.iterations > 0 ? this.iterations : Integer.MAX_VALUE);
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicLong nextStart = new AtomicLong(System.nanoTime());
+        final long interval = this.rate > 0 ? (long) (NANOS_PER_SECOND / this.rate) : 0;
+        final long start = System.nanoTime();
+        final long deadline = this.duration > 0 ? start + this.duration * NANOS_PER_MILLI : Long.MAX_VALUE;
+        final LatencyRecorder latencies = new LatencyRecorder(this.iterations > 0 ? this.iterations : 1024);
+        final AtomicReference<String> lastError = new AtomicReference<String>();
+
+        logger.info("Starting load with " + this.concurrency + " worker(s), iterations=" + this.iterations
+                + ", duration=" + this.duration + " ms, rate=" + this.rate + "/s");
+
+        WebServiceExecutor executor = new WebServiceExecutor(THREAD_NAME, this.concurrency);
+        List<Future<Void>> workers = new ArrayList<Future<Void>>(this.concurrency);
+
+        for (int i = 0; i < this.concurrency; i++) {
+            workers.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+
+                    while (remaining.getAndDecrement() > 0 && !Thread.currentThread().isInterrupted()) {
+
+                        if (interval > 0) {
+                            long delay = nextStart.getAndAdd(interval) - System.nanoTime();
+
+                            if (delay > 0) {
+                                Thread.sleep(delay / NANOS_PER_MILLI, (int) (delay % NANOS_PER_MILLI));
+                            }
+                        }
+
+                        if (System.nanoTime() >= deadline) {
+                            break;
+                        }
+
+                        long begin = System.nanoTime();
+                        ActionResponse response;
+
+                        try {
+                            response = action.execute();
+                        } catch (Exception ex) {
+                            response = null;
+                            lastError.set(ex.toString());
+                        }
+                        latencies.record((System.nanoTime() - begin) / NANOS_PER_MILLI);
+
+                        if (response == null || response.getActionStatus() == ActionStatusType.FAILED) {
+                            errors.incrementAndGet();
+
+                            if (response != null) {
+                                lastError.set(response.getErrorMessage());
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while generating load");
+        } catch (ExecutionException ex) {
+            throw new WebServiceException("Error while generating load: " + ex.getCause());
+        } finally {
+            for (Future<Void> worker : workers) {
+                worker.cancel(true);
+            }
+            executor.close();
+        }
+
+        long elapsed = Math.max(1, (System.nanoTime() - start) / NANOS_PER_MILLI);
+        return this.createResponse(latencies.getLatencies(), errors.get(), elapsed, lastError.get());
+    }
+
+    /**
+     * Creates the response of the load holding the statistics as return properties.
+     */
+    private ActionResponse createResponse(long[] latencies, int errors, long elapsed, String lastError) {
+
+        ActionResponse response = TestResultHelper.createActionResponse();
+        PropertyList properties = PropertyHelper.createPropertyList(WsConstants.LOAD);
+        int count = latencies.length;
+        Arrays.sort(latencies);
+
+        PropertyHelper.add(PropertyHelper.createNumericProperty(WsConstants.LOAD_ITERATIONS, count), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(WsConstants.LOAD_DURATION, elapsed), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(ERRORS, errors), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(ERROR_RATE, divide(errors, count)), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(THROUGHPUT, divide(count * 1000L, elapsed)),
+                properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(P50, percentile(latencies, 0.50)), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(P90, percentile(latencies, 0.90)), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(P99, percentile(latencies, 0.99)), properties);
+        PropertyHelper.add(PropertyHelper.createNumericProperty(MAX, count > 0 ? latencies[count - 1] : 0L),
+                properties);
+
+        String message = "Executed " + count + " iteration(s) in " + elapsed + " ms with " + errors + " error(s)";
+        logger.info(message);
+        response.setMessage(message);
+        response.setReturnProperties(properties);
+
+        if (count > 0 && errors == count) {
+            response.setErrorMessage("All iterations failed. Last error: " + lastError);
+            response.setActionStatus(ActionStatusType.FAILED);
+        } else {
+            response.setActionStatus(ActionStatusType.EXECUTED);
+        }
+        return response;
+    }
+
+    private static BigDecimal divide(long dividend, long divisor) {
+
+        if (divisor == 0) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(dividend).divide(BigDecimal.valueOf(divisor), 2, RoundingMode.HALF_UP);
+    }
+
+    private static Long percentile(long[] sorted, double percentile) {
+
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static boolean isLoadConfigured(PropertyList propertyList) {
+        return RequestProperties.getPropertyValue(propertyList, WsConstants.LOAD_ITERATIONS) != null
+                || RequestProperties.getPropertyValue(propertyList, WsConstants.LOAD_DURATION) != null;
+    }
+
+    /**
+     * A single execution of the action under load.
+     */
+    public interface LoadAction {
+
+        /**
+         * Executes the action once.
+         * 
+         * @return the response of the action
+         * @throws SubEngineException
+         *             thrown, if the action fails
+         */
+        ActionResponse execute() throws SubEngineException;
+    }
+
+    /**
+     * Growing buffer of the latencies recorded by all workers.
+     */
+    private static class LatencyRecorder {
+
+        private long[] latencies;
+
+        private int count;
+
+        LatencyRecorder(int capacity) {
+            this.latencies = new long[Math.min(Math.max(capacity, 16), 1 << 20)];
+        }
+
+        synchronized void record(long latency) {
+
+            if (this.count == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            }
+            this.latencies[this.count++] = latency;
+        }
+
+        synchronized long[] getLatencies() {
+            return Arrays.copyOf(this.latencies, this.count);
+        }
+    }
+
+}
@@ -18,19 +18,40 @@ package org.nabucco.testautomation.engine.proxy.ws.server.http;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLogger;
+import org.nabucco.framework.base.facade.datatype.logger.NabuccoLoggingFactory;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+
 import com.sun.net.httpserver.HttpServer;
 
 /**
  * BlockingHttpServer
+ * <p>
+ * Queues the received requests for {@link #receive(long)}. Replies to asynchronous calls are
+ * correlated by their WS-Addressing RelatesTo header: a request relating to an expected message ID
+ * is acknowledged immediately and kept for {@link #receive(String, long)}. An expected reply is
+ * forgotten once it has been received, has timed out or its call has been cancelled. At most
+ * {@link #MAX_EXPECTED_REPLIES} replies are expected at a time, the oldest is dropped beyond.
  * 
  * @author Steffen Schmidt, PRODYNA AG
  */
 public class BlockingHttpServer implements HttpRequestListener {
 
+	/**
+	 * The maximum number of expected replies to asynchronous calls.
+	 */
+	public static final int MAX_EXPECTED_REPLIES = 256;
+
+	private static final NabuccoLogger logger = NabuccoLoggingFactory.getInstance().getLogger(
+			BlockingHttpServer.class);
+
 	private static final String DEFAULT_HOST = "0.0.0.0";
 
 	private static final String DEFAULT_PATH = "/";
@@ -45,6 +66,17 @@ public class BlockingHttpServer implements HttpRequestListener {
 	
 	private BlockingQueue<HttpRequest> requestQueue;
 	
+	private final Map<String, BlockingQueue<HttpRequest>> replies = 
+			new LinkedHashMap<String, BlockingQueue<HttpRequest>>() {
+		
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<String, BlockingQueue<HttpRequest>> eldest) {
+			return this.size() > MAX_EXPECTED_REPLIES;
+		}
+	};
+	
 	private int queueSize = DEFAULT_QUEUE_SIZE;
 	
 	private String host = DEFAULT_HOST;
@@ -53,6 +85,8 @@ public class BlockingHttpServer implements HttpRequestListener {
 	
 	private String path = DEFAULT_PATH;
 	
+	private AttachmentStore attachmentStore = AttachmentStore.getDefault();
+	
 	public BlockingHttpServer() {
 		this(DEFAULT_HOST, DEFAULT_PORT);
 	}
@@ -74,7 +108,7 @@ public class BlockingHttpServer implements HttpRequestListener {
 	public void start() throws IOException {
 
 		InetSocketAddress addr = new InetSocketAddress(host, port);
-		HttpRequestHandler httpRequestHandler = new HttpRequestHandler();
+		HttpRequestHandler httpRequestHandler = new HttpRequestHandler(this.attachmentStore);
 	    httpRequestHandler.addHttpRequestListener(this);
 		
 		this.server = HttpServer.create(addr, 0);
@@ -84,6 +118,9 @@ public class BlockingHttpServer implements HttpRequestListener {
 	}
 	
 	public void stop() {
+		synchronized (this.replies) {
+			this.replies.clear();
+		}
 		this.requestQueue.clear();
 		this.requestQueue = null;
 		this.server.stop(0);
@@ -104,9 +141,74 @@ public class BlockingHttpServer implements HttpRequestListener {
 		return request;
 	}
 
+	/**
+	 * Registers the message ID of an asynchronous call, so its reply is kept for
+	 * {@link #receive(String, long)}. Must be called before the call is sent.
+	 * 
+	 * @param messageId the WS-Addressing MessageID of the call
+	 */
+	public void expect(String messageId) {
+		synchronized (this.replies) {
+			if (!this.replies.containsKey(messageId)) {
+				this.replies.put(messageId, new ArrayBlockingQueue<HttpRequest>(1));
+			}
+		}
+	}
+	
+	/**
+	 * Forgets the message ID of an asynchronous call registered by {@link #expect(String)}, e.g.
+	 * because the call could not be sent.
+	 * 
+	 * @param messageId the WS-Addressing MessageID of the call
+	 */
+	public void cancel(String messageId) {
+		synchronized (this.replies) {
+			this.replies.remove(messageId);
+		}
+	}
+	
+	/**
+	 * Waits for the reply to an asynchronous call registered by {@link #expect(String)}. Replies
+	 * received meanwhile are kept, other calls and requests are not blocked. The call is forgotten
+	 * afterwards, whether its reply has been received or not.
+	 * 
+	 * @param messageId the WS-Addressing MessageID of the call
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the reply
+	 * @throws InterruptedException thrown, if the thread is interrupted while waiting
+	 * @throws HttpException thrown, if no call is registered for the ID or no reply is received in time
+	 */
+	public HttpRequest receive(String messageId, long timeout) throws InterruptedException, HttpException {
+		
+		BlockingQueue<HttpRequest> reply;
+		
+		synchronized (this.replies) {
+			reply = this.replies.get(messageId);
+		}
+		
+		if (reply == null) {
+			throw new HttpException("No asynchronous call registered for MessageID '" + messageId + "'");
+		}
+		
+		try {
+			HttpRequest request = reply.poll(timeout, TimeUnit.MILLISECONDS);
+			
+			if (request == null) {
+				throw new HttpException("No reply to MessageID '" + messageId + "' received in time");
+			}
+			return request;
+		} finally {
+			this.cancel(messageId);
+		}
+	}
+
 	@Override
 	public void httpRequestreceived(HttpRequest request) {
 		
+		if (this.isExpectingReplies() && this.correlate(request)) {
+			return;
+		}
+		
 		try {
 			this.requestQueue.offer(request, 30000, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException ex) {
@@ -114,6 +216,48 @@ public class BlockingHttpServer implements HttpRequestListener {
 		}		
 	}
 	
+	private boolean isExpectingReplies() {
+		synchronized (this.replies) {
+			return !this.replies.isEmpty();
+		}
+	}
+	
+	/**
+	 * Keeps the given request, if it is the reply to an expected asynchronous call.
+	 * 
+	 * @return true, if the request has been correlated
+	 */
+	private boolean correlate(HttpRequest request) {
+		
+		String relatesTo;
+		
+		try {
+			relatesTo = request.getRelatesTo();
+		} catch (IOException ex) {
+			logger.warning("Could not read RelatesTo header of request: " + ex.getMessage());
+			return false;
+		}
+		
+		BlockingQueue<HttpRequest> reply = null;
+		
+		if (relatesTo != null) {
+			synchronized (this.replies) {
+				reply = this.replies.get(relatesTo);
+			}
+		}
+		
+		if (reply == null || !reply.offer(request)) {
+			return false;
+		}
+		
+		try {
+			request.acknowledge();
+		} catch (IOException ex) {
+			logger.error(ex);
+		}
+		return true;
+	}
+	
 	public int getQueueSize() {
 		return this.queueSize;
 	}
@@ -165,5 +309,23 @@ public class BlockingHttpServer implements HttpRequestListener {
 			this.path = path;
 		}
 	}
+
+	public AttachmentStore getAttachmentStore() {
+		return this.attachmentStore;
+	}
+
+	/**
+	 * Sets the store of the attachments of requests received after the next {@link #start()}.
+	 * 
+	 * @param attachmentStore the store, or null for the default store
+	 */
+	public void setAttachmentStore(AttachmentStore attachmentStore) {
+		
+		if (attachmentStore == null) {
+			this.attachmentStore = AttachmentStore.getDefault();
+		} else {
+			this.attachmentStore = attachmentStore;
+		}
+	}
 	
 }
@@ -16,10 +16,25 @@
  */
 package org.nabucco.testautomation.engine.proxy.ws.server.http;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.nabucco.testautomation.engine.proxy.ws.client.HttpCompression;
+import org.nabucco.testautomation.engine.proxy.ws.client.SoapAttachment;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.MultipartReader;
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.MultipartWriter;
 
 import com.sun.net.httpserver.HttpExchange;
 
@@ -31,6 +46,22 @@ import com.sun.net.httpserver.HttpExchange;
 public class HttpRequest {
 
 	public static final String DEFAULT_ENCODING = "ISO-8859-1";
+	
+	private static final String CONTENT_TYPE = "Content-Type";
+	
+	private static final String DEFAULT_SOAP_MEDIA_TYPE = "text/xml";
+	
+	private static final String SOAP_12_MEDIA_TYPE = "application/soap+xml";
+	
+	private static final String RELATES_TO = "RelatesTo";
+	
+	private static final String BODY = "Body";
+	
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	
+	static {
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	}
 
 	private final HttpExchange exchange;
 	
@@ -38,17 +69,34 @@ public class HttpRequest {
 	
 	private String requestBody;
 	
+	private String soapContentType;
+	
+	private final List<SoapAttachment> attachments = new ArrayList<SoapAttachment>();
+	
+	private final AttachmentStore attachmentStore;
+	
 	/**
 	 * 
 	 * @param exchange
 	 * @throws NullpointerException thrown, if no HttpExchange is provided
 	 */
 	public HttpRequest(HttpExchange exchange) {
+		this(exchange, AttachmentStore.getDefault());
+	}
+	
+	/**
+	 * 
+	 * @param exchange
+	 * @param attachmentStore the store of the attachments of the request
+	 * @throws NullpointerException thrown, if no HttpExchange is provided
+	 */
+	public HttpRequest(HttpExchange exchange, AttachmentStore attachmentStore) {
 		
 		if (exchange == null) {
 			throw new NullPointerException("No HttpExchange provided");
 		}
 		this.exchange = exchange;
+		this.attachmentStore = attachmentStore;
 	}
 	
 	public String getRequestMethod() {
@@ -60,29 +108,221 @@ public class HttpRequest {
 		return this.exchange.getRemoteAddress().toString();
 	}
 	
+	/**
+	 * Gets the request body. A compressed body is decompressed according to its Content-Encoding.
+	 * Of a multipart request the root part is returned, the other parts are stored as attachments.
+	 * 
+	 * @return the request body
+	 * @throws UnsupportedEncodingException thrown, if the encoding is not supported
+	 * @throws IOException thrown, if the body cannot be read or the content coding is not supported
+	 */
 	public String getRequestBody() throws UnsupportedEncodingException, IOException {
 		
 		if (this.requestBody == null) {
-			InputStream in = this.exchange.getRequestBody();
-			StringBuffer request = new StringBuffer();
-			byte[] buf = new byte[1024];
-			int c;
+			String contentEncoding = this.exchange.getRequestHeaders().getFirst(HttpCompression.CONTENT_ENCODING);
+			HttpCompression compression = HttpCompression.forContentEncoding(contentEncoding);
 			
-			while ((c = in.read(buf)) != -1) {
-				request.append(new String(buf, 0, c, this.encoding));
+			if (compression == null) {
+				throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+			}
+			
+			InputStream in = compression.decompress(this.exchange.getRequestBody());
+			String contentType = this.exchange.getRequestHeaders().getFirst(CONTENT_TYPE);
+			
+			try {
+				if (MultipartReader.isMultipart(contentType)) {
+					this.readMultipart(in, contentType);
+				} else {
+					this.soapContentType = contentType;
+					this.requestBody = new String(readFully(in), this.encoding);
+				}
+			} finally {
+				in.close();
 			}
-			this.requestBody = request.toString();
 		}
 		return this.requestBody;
 	}
 	
+	/**
+	 * Gets the attachments of a multipart request. The content of each attachment has been stored
+	 * to a temporary file.
+	 * 
+	 * @return the attachments, empty if the request is not a multipart request
+	 * @throws IOException thrown, if the request cannot be read
+	 */
+	public List<SoapAttachment> getAttachments() throws IOException {
+		this.getRequestBody();
+		return Collections.unmodifiableList(this.attachments);
+	}
+	
+	/**
+	 * Gets the message ID a SOAP request replies to by its WS-Addressing RelatesTo header. Only the
+	 * SOAP header is read.
+	 * 
+	 * @return the message ID or null, if the request is no reply
+	 * @throws IOException thrown, if the request cannot be read
+	 */
+	public String getRelatesTo() throws IOException {
+		
+		String body = this.getRequestBody();
+		
+		try {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(body));
+			
+			try {
+				while (reader.hasNext()) {
+					
+					if (reader.next() == XMLStreamReader.START_ELEMENT) {
+						
+						if (RELATES_TO.equals(reader.getLocalName())) {
+							return reader.getElementText().trim();
+						} else if (BODY.equals(reader.getLocalName())) {
+							return null;
+						}
+					}
+				}
+				return null;
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException ex) {
+			return null;
+		}
+	}
+	
+	private void readMultipart(InputStream in, String contentType) throws IOException {
+		
+		MultipartReader reader = new MultipartReader(in, contentType);
+		MultipartReader.Part part;
+		int index = 0;
+		
+		while ((part = reader.next()) != null) {
+			
+			if (this.requestBody == null && reader.isRoot(part, index)) {
+				this.soapContentType = part.getContentType();
+				this.requestBody = new String(readFully(part.getInputStream()), this.encoding);
+			} else {
+				this.attachments.add(this.attachmentStore.store(part.getContentId(), part.getContentType(), 
+						part.getInputStream()));
+			}
+			index++;
+		}
+		
+		if (this.requestBody == null) {
+			throw new IOException("No root part found in multipart request");
+		}
+	}
+	
+	private static byte[] readFully(InputStream in) throws IOException {
+		
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int c;
+		
+		while ((c = in.read(buf)) != -1) {
+			request.write(buf, 0, c);
+		}
+		return request.toByteArray();
+	}
+	
+	/**
+	 * Sends the given response. The response is compressed, if the client accepts a supported
+	 * content coding.
+	 * 
+	 * @param response the response to send
+	 * @throws UnsupportedEncodingException thrown, if the encoding is not supported
+	 * @throws IOException thrown, if the response cannot be sent
+	 */
 	public void respond(String response) throws UnsupportedEncodingException, IOException {
 		
+		String acceptEncoding = this.exchange.getRequestHeaders().getFirst(HttpCompression.ACCEPT_ENCODING);
+		HttpCompression compression = HttpCompression.negotiate(acceptEncoding);
+		
+		if (compression != HttpCompression.NONE) {
+			this.exchange.getResponseHeaders().set(HttpCompression.CONTENT_ENCODING, compression.getContentCoding());
+		}
+		
 		this.exchange.sendResponseHeaders(200, 0);
-		OutputStream out = this.exchange.getResponseBody();
+		OutputStream out = compression.compress(this.exchange.getResponseBody());
 		out.write(response.getBytes(this.encoding));
 		out.close();
 	}
+	
+	/**
+	 * Acknowledges the request with status 202 (Accepted) and no body, like an asynchronous reply
+	 * sent to a ReplyTo endpoint is answered.
+	 * 
+	 * @throws IOException thrown, if the acknowledgement cannot be sent
+	 */
+	public void acknowledge() throws IOException {
+		this.exchange.sendResponseHeaders(202, -1);
+		this.exchange.close();
+	}
+	
+	/**
+	 * Sends the given response with attachments as multipart message. The attachments are streamed
+	 * from their files, the response is compressed like by {@link #respond(String)}.
+	 * 
+	 * @param response the SOAP envelope to send as root part
+	 * @param attachments the attachments to send
+	 * @param mtom true for a MTOM/XOP package, false for SOAP with attachments
+	 * @throws UnsupportedEncodingException thrown, if the encoding is not supported
+	 * @throws IOException thrown, if the response cannot be sent
+	 */
+	public void respond(String response, List<SoapAttachment> attachments, boolean mtom)
+			throws UnsupportedEncodingException, IOException {
+		
+		if (attachments == null || attachments.isEmpty()) {
+			this.respond(response);
+			return;
+		}
+		
+		String acceptEncoding = this.exchange.getRequestHeaders().getFirst(HttpCompression.ACCEPT_ENCODING);
+		HttpCompression compression = HttpCompression.negotiate(acceptEncoding);
+		MultipartWriter multipart = new MultipartWriter(this.getSoapMediaType() + ";charset=" + this.encoding, mtom);
+		
+		if (compression != HttpCompression.NONE) {
+			this.exchange.getResponseHeaders().set(HttpCompression.CONTENT_ENCODING, compression.getContentCoding());
+		}
+		this.exchange.getResponseHeaders().set(CONTENT_TYPE, multipart.getContentType());
+		
+		this.exchange.sendResponseHeaders(200, 0);
+		OutputStream out = compression.compress(this.exchange.getResponseBody());
+		
+		try {
+			multipart.startRoot(out);
+			out.write(response.getBytes(this.encoding));
+			
+			for (SoapAttachment attachment : attachments) {
+				multipart.writeAttachment(out, attachment);
+			}
+			multipart.finish(out);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Gets the media type of the SOAP envelope of the request, text/xml if unknown.
+	 */
+	private String getSoapMediaType() {
+		
+		String contentType = this.soapContentType;
+		
+		if (contentType == null) {
+			return DEFAULT_SOAP_MEDIA_TYPE;
+		}
+		
+		int index = contentType.indexOf(';');
+		String mediaType = (index < 0 ? contentType : contentType.substring(0, index)).trim();
+		
+		// The envelope of a MTOM/XOP package declares its media type as parameter
+		if (mediaType.equalsIgnoreCase(MultipartWriter.XOP_XML)) {
+			return contentType.toLowerCase().indexOf(SOAP_12_MEDIA_TYPE) >= 0 ? SOAP_12_MEDIA_TYPE 
+					: DEFAULT_SOAP_MEDIA_TYPE;
+		}
+		return mediaType;
+	}
 
 	/**
 	 * @param encoding the encoding to set
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.nabucco.testautomation.engine.proxy.ws.client.mime.AttachmentStore;
+
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
@@ -32,8 +34,11 @@ class HttpRequestHandler implements HttpHandler {
 
 	private List<HttpRequestListener> listener;
 	
-	HttpRequestHandler() {
+	private final AttachmentStore attachmentStore;
+	
+	HttpRequestHandler(AttachmentStore attachmentStore) {
 		this.listener = new ArrayList<HttpRequestListener>();
+		this.attachmentStore = attachmentStore;
 	}
 	
 	/**
@@ -41,7 +46,7 @@ class HttpRequestHandler implements HttpHandler {
 	 */
 	@Override
 	public void handle(HttpExchange exchange) throws IOException {
-		HttpRequest request = new HttpRequest(exchange);
+		HttpRequest request = new HttpRequest(exchange, this.attachmentStore);
 		requestreceived(request);
 	}
 	
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.xml;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * XmlFactoryRegistry
+ * <p>
+ * Resolves each XML factory once instead of a service lookup per call. XPath, DocumentBuilder,
+ * Transformer and Validator instances are not thread-safe, they are pooled per thread and reset
+ * before being handed out again. A caller must not keep an instance beyond the current operation.
+ * Compiled schemas are cached, so validating against the same schema reuses its validators.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class XmlFactoryRegistry {
+
+    /**
+     * The maximum number of cached schemas.
+     */
+    public static final int MAX_SCHEMAS = 16;
+
+    private static XmlFactoryRegistry instance;
+
+    private final XPathFactory xpathFactory;
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+
+    private final TransformerFactory transformerFactory;
+
+    private final SchemaFactory schemaFactory;
+
+    private MessageFactory messageFactory;
+
+    private SOAPFactory soapFactory;
+
+    private final Pool<XPath> xpaths = new Pool<XPath>(new Counter());
+
+    private final Pool<DocumentBuilder> documentBuilders = new Pool<DocumentBuilder>(new Counter());
+
+    private final Pool<Transformer> transformers = new Pool<Transformer>(new Counter());
+
+    private final Counter validators = new Counter();
+
+    private final Map<String, SchemaEntry> schemas = new LinkedHashMap<String, SchemaEntry>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, SchemaEntry> eldest) {
+            return this.size() > MAX_SCHEMAS;
+        }
+    };
+
+    private final AtomicLong schemaHits = new AtomicLong();
+
+    private final AtomicLong schemaMisses = new AtomicLong();
+
+    /**
+     * Constructs the registry and resolves the JAXP factories.
+     */
+    private XmlFactoryRegistry() {
+        this.xpathFactory = XPathFactory.newInstance();
+        this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        this.documentBuilderFactory.setNamespaceAware(true);
+        this.transformerFactory = TransformerFactory.newInstance();
+        this.schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    }
+
+    /**
+     * Gets the registry instance shared by all commands and clients.
+     * 
+     * @return the registry instance
+     */
+    public static synchronized XmlFactoryRegistry getInstance() {
+
+        if (instance == null) {
+            instance = new XmlFactoryRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the XPath of the current thread.
+     * 
+     * @return the reset XPath
+     */
+    public XPath getXPath() {
+
+        XPath xpath = this.xpaths.get();
+
+        if (xpath != null) {
+            xpath.reset();
+            return xpath;
+        }
+
+        synchronized (this.xpathFactory) {
+            return this.xpaths.put(this.xpathFactory.newXPath());
+        }
+    }
+
+    /**
+     * Gets the namespace aware DocumentBuilder of the current thread.
+     * 
+     * @return the reset DocumentBuilder
+     * @throws WebServiceException
+     *             thrown, if the DocumentBuilder could not be created
+     */
+    public DocumentBuilder getDocumentBuilder() throws WebServiceException {
+
+        DocumentBuilder builder = this.documentBuilders.get();
+
+        if (builder != null) {
+            builder.reset();
+            return builder;
+        }
+
+        try {
+            synchronized (this.documentBuilderFactory) {
+                return this.documentBuilders.put(this.documentBuilderFactory.newDocumentBuilder());
+            }
+        } catch (ParserConfigurationException ex) {
+            throw new WebServiceException("Could not create DocumentBuilder", ex);
+        }
+    }
+
+    /**
+     * Creates a new empty document.
+     * 
+     * @return the new document
+     * @throws WebServiceException
+     *             thrown, if the DocumentBuilder could not be created
+     */
+    public Document newDocument() throws WebServiceException {
+        return this.getDocumentBuilder().newDocument();
+    }
+
+    /**
+     * Gets the identity Transformer of the current thread.
+     * 
+     * @return the reset Transformer
+     * @throws WebServiceException
+     *             thrown, if the Transformer could not be created
+     */
+    public Transformer getTransformer() throws WebServiceException {
+
+        Transformer transformer = this.transformers.get();
+
+        if (transformer != null) {
+            transformer.reset();
+            return transformer;
+        }
+
+        try {
+            synchronized (this.transformerFactory) {
+                return this.transformers.put(this.transformerFactory.newTransformer());
+            }
+        } catch (TransformerConfigurationException ex) {
+            throw new WebServiceException("Could not create Transformer", ex);
+        }
+    }
+
+    /**
+     * Gets the Validator of the current thread for the W3C XML Schema at the given location.
+     * 
+     * @param schemaLocation
+     *            the location of the schema
+     * @return the reset Validator
+     * @throws SAXException
+     *             thrown, if the schema could not be compiled
+     */
+    public Validator getValidator(URL schemaLocation) throws SAXException {
+        String systemId = schemaLocation.toExternalForm();
+        return this.getValidator(systemId, new StreamSource(systemId));
+    }
+
+    /**
+     * Gets the Validator of the current thread for the given W3C XML Schema.
+     * 
+     * @param schema
+     *            the content of the schema
+     * @return the reset Validator
+     * @throws SAXException
+     *             thrown, if the schema could not be compiled
+     */
+    public Validator getValidator(String schema) throws SAXException {
+        return this.getValidator(schema, new StreamSource(new StringReader(schema)));
+    }
+
+    private Validator getValidator(String key, Source source) throws SAXException {
+
+        SchemaEntry entry;
+
+        synchronized (this.schemas) {
+            entry = this.schemas.get(key);
+        }
+
+        if (entry != null) {
+            this.schemaHits.incrementAndGet();
+        } else {
+            this.schemaMisses.incrementAndGet();
+
+            synchronized (this.schemaFactory) {
+                entry = new SchemaEntry(this.schemaFactory.newSchema(source), this.validators);
+            }
+            synchronized (this.schemas) {
+                this.schemas.put(key, entry);
+            }
+        }
+
+        Validator validator = entry.validators.get();
+
+        if (validator != null) {
+            validator.reset();
+            return validator;
+        }
+        return entry.validators.put(entry.schema.newValidator());
+    }
+
+    /**
+     * Gets the SAAJ MessageFactory, resolved on first use.
+     * 
+     * @return the MessageFactory
+     * @throws SOAPException
+     *             thrown, if no MessageFactory is available
+     */
+    public synchronized MessageFactory getMessageFactory() throws SOAPException {
+
+        if (this.messageFactory == null) {
+            this.messageFactory = MessageFactory.newInstance();
+        }
+        return this.messageFactory;
+    }
+
+    /**
+     * Gets the SAAJ SOAPFactory, resolved on first use.
+     * 
+     * @return the SOAPFactory
+     * @throws SOAPException
+     *             thrown, if no SOAPFactory is available
+     */
+    public synchronized SOAPFactory getSOAPFactory() throws SOAPException {
+
+        if (this.soapFactory == null) {
+            this.soapFactory = SOAPFactory.newInstance();
+        }
+        return this.soapFactory;
+    }
+
+    /**
+     * @return the number of pooled instances created
+     */
+    public long getCreated() {
+        return this.xpaths.counter.created.get() + this.documentBuilders.counter.created.get()
+                + this.transformers.counter.created.get() + this.validators.created.get();
+    }
+
+    /**
+     * @return the number of pooled instances handed out again
+     */
+    public long getReused() {
+        return this.xpaths.counter.reused.get() + this.documentBuilders.counter.reused.get()
+                + this.transformers.counter.reused.get() + this.validators.reused.get();
+    }
+
+    /**
+     * Removes all cached schemas and resets the counters. Instances pooled by threads are kept.
+     */
+    public void clear() {
+        synchronized (this.schemas) {
+            this.schemas.clear();
+        }
+        this.schemaHits.set(0);
+        this.schemaMisses.set(0);
+        this.xpaths.counter.reset();
+        this.documentBuilders.counter.reset();
+        this.transformers.counter.reset();
+        this.validators.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[xpath=" + this.xpaths.counter + ", documentBuilder=" + this.documentBuilders.counter
+                + ", transformer=" + this.transformers.counter + ", validator=" + this.validators + ", schemaHits="
+                + this.schemaHits.get() + ", schemaMisses=" + this.schemaMisses.get() + "]";
+    }
+
+    /**
+     * A compiled schema with the validators of each thread. The validators are released with the
+     * entry, once it is evicted.
+     */
+    private static class SchemaEntry {
+
+        private final Schema schema;
+
+        private final Pool<Validator> validators;
+
+        SchemaEntry(Schema schema, Counter counter) {
+            this.schema = schema;
+            this.validators = new Pool<Validator>(counter);
+        }
+    }
+
+    /**
+     * The instances of the current thread.
+     */
+    private static class Pool<T> {
+
+        private final ThreadLocal<T> instances = new ThreadLocal<T>();
+
+        private final Counter counter;
+
+        Pool(Counter counter) {
+            this.counter = counter;
+        }
+
+        T get() {
+            T instance = this.instances.get();
+
+            if (instance != null) {
+                this.counter.reused.incrementAndGet();
+            }
+            return instance;
+        }
+
+        T put(T instance) {
+            this.instances.set(instance);
+            this.counter.created.incrementAndGet();
+            return instance;
+        }
+    }
+
+    /**
+     * The number of created and reused instances.
+     */
+    private static class Counter {
+
+        private final AtomicLong created = new AtomicLong();
+
+        private final AtomicLong reused = new AtomicLong();
+
+        void reset() {
+            this.created.set(0);
+            this.reused.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return "created " + this.created.get() + ", reused " + this.reused.get();
+        }
+    }
+
+}
@@ -22,18 +22,60 @@ import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
 
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
 /**
  * GenericNamespaceContext
+ * <p>
+ * Holds the namespaces added to the context. A context created for a document resolves the
+ * namespaces lazily instead: a prefix is looked up in the document when it is first requested,
+ * and the search stops at the first matching namespace declaration.
  * 
  * @author Steffen Schmidt, PRODYNA AG
  * 
  */
 public class GenericNamespaceContext implements NamespaceContext {
 
+    private static final String XMLNS = "xmlns";
+
+    private static final String XMLNS_PREFIX = "xmlns:";
+
     private final Map<String, String> prefixMap = new HashMap<String, String>();
 
     private final Map<String, String> namespaceMap = new HashMap<String, String>();
 
+    private final Node root;
+
+    private final String defaultPrefix;
+
+    private final Map<String, String> templateBindings;
+
+    /**
+     * Creates a new context holding the namespaces added to it.
+     */
+    public GenericNamespaceContext() {
+        this(null, null, null);
+    }
+
+    /**
+     * Creates a new context resolving the namespaces of the given document on demand.
+     * 
+     * @param root
+     *            the document or element to search for namespaces
+     * @param defaultPrefix
+     *            the prefix of the default namespace
+     * @param templateBindings
+     *            the prefixes resolved for the message template of the document, shared by all
+     *            contexts of this template and completed by this context, may be null
+     */
+    public GenericNamespaceContext(Node root, String defaultPrefix, Map<String, String> templateBindings) {
+        this.root = root;
+        this.defaultPrefix = defaultPrefix;
+        this.templateBindings = templateBindings;
+    }
+
     /**
      * Adds a namespace to the context.
      * 
@@ -52,7 +94,25 @@ public class GenericNamespaceContext implements NamespaceContext {
      */
     @Override
     public String getNamespaceURI(String prefix) {
-        return prefixMap.get(prefix);
+
+        if (root == null || prefixMap.containsKey(prefix)) {
+            return prefixMap.get(prefix);
+        }
+
+        String uri = templateBindings != null ? templateBindings.get(prefix) : null;
+
+        if (uri == null) {
+            String[] binding = this.find(prefix, null);
+            uri = binding != null ? binding[1] : null;
+
+            if (uri != null && templateBindings != null) {
+                templateBindings.put(prefix, uri);
+            }
+        }
+
+        // Unresolved prefixes are remembered as well
+        prefixMap.put(prefix, uri);
+        return uri;
     }
 
     /**
@@ -60,7 +120,15 @@ public class GenericNamespaceContext implements NamespaceContext {
      */
     @Override
     public String getPrefix(String uri) {
-        return namespaceMap.get(uri);
+
+        if (root == null || namespaceMap.containsKey(uri)) {
+            return namespaceMap.get(uri);
+        }
+
+        String[] binding = this.find(null, uri);
+        String prefix = binding != null ? binding[0] : null;
+        namespaceMap.put(uri, prefix);
+        return prefix;
     }
 
     /**
@@ -71,11 +139,90 @@ public class GenericNamespaceContext implements NamespaceContext {
         return null;
     }
 
+    /**
+     * Searches the elements of the document in document order for the first namespace declaration
+     * binding the given prefix or uri. Elements created without declarations are matched by their
+     * own namespace. Elements without prefix are bound to the default prefix.
+     * 
+     * @param prefix
+     *            the prefix to search for, or null
+     * @param uri
+     *            the namespace uri to search for, or null
+     * @return the prefix and uri of the binding, or null if not found
+     */
+    private String[] find(String prefix, String uri) {
+
+        Node node = root;
+
+        while (node != null) {
+
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                NamedNodeMap attributes = node.getAttributes();
+
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Attr attribute = (Attr) attributes.item(i);
+                    String name = attribute.getName();
+                    String declaredPrefix;
+
+                    if (name.equals(XMLNS)) {
+                        declaredPrefix = defaultPrefix;
+                    } else if (name.startsWith(XMLNS_PREFIX)) {
+                        declaredPrefix = name.substring(XMLNS_PREFIX.length());
+                    } else {
+                        continue;
+                    }
+
+                    String declaredUri = attribute.getValue();
+
+                    if (declaredUri.length() > 0 && matches(declaredPrefix, declaredUri, prefix, uri)) {
+                        return new String[] { declaredPrefix, declaredUri };
+                    }
+                }
+
+                String elementUri = node.getNamespaceURI();
+                String elementPrefix = node.getPrefix() != null ? node.getPrefix() : defaultPrefix;
+
+                if (elementUri != null && matches(elementPrefix, elementUri, prefix, uri)) {
+                    return new String[] { elementPrefix, elementUri };
+                }
+            }
+            node = next(node);
+        }
+        return null;
+    }
+
+    private static boolean matches(String declaredPrefix, String declaredUri, String prefix, String uri) {
+        return prefix != null ? prefix.equals(declaredPrefix) : uri.equals(declaredUri);
+    }
+
+    /**
+     * Gets the next node of the subtree of the root in document order.
+     */
+    private Node next(Node node) {
+
+        if (node.hasChildNodes()) {
+            return node.getFirstChild();
+        }
+
+        while (node != root) {
+
+            if (node.getNextSibling() != null) {
+                return node.getNextSibling();
+            }
+            node = node.getParentNode();
+        }
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public String toString() {
+
+        if (this.prefixMap.isEmpty()) {
+            return "[]";
+        }
         String s = "[";
         for (String prefix : this.prefixMap.keySet()) {
             s += prefix + "=" + this.prefixMap.get(prefix) + ", ";
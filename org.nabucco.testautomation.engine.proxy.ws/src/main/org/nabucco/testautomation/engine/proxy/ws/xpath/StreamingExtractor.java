@@ -0,0 +1,685 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.xpath;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.nabucco.testautomation.engine.proxy.ws.exception.WebServiceException;
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+import org.nabucco.testautomation.property.facade.datatype.PropertyList;
+import org.nabucco.testautomation.property.facade.datatype.XPathProperty;
+import org.nabucco.testautomation.property.facade.datatype.base.Property;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyContainer;
+import org.nabucco.testautomation.property.facade.datatype.base.PropertyType;
+import org.nabucco.testautomation.property.facade.datatype.util.PropertyHelper;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * StreamingExtractor
+ * <p>
+ * Evaluates the extraction XPath-properties of a message in a single pull-parser pass, without
+ * building a DOM of the message. All expressions are compiled into one matcher, only the subtrees
+ * of matching elements are built as DOM fragments and mapped like by {@link XPathProcessor}.
+ * <p>
+ * Supported are absolute location paths of child ('/') and descendant ('//') steps with an
+ * element name test (<code>name</code>, <code>prefix:name</code>, <code>prefix:*</code> or
+ * <code>*</code>), optionally followed by a positional predicate like <code>[2]</code>, and a
+ * final attribute step <code>@name</code>. Messages of other expressions are evaluated on the DOM.
+ * <p>
+ * A prefix is bound to its declaration in the message. The DOM evaluation binds a prefix bound
+ * more than once either to the first (lazy namespace resolution) or to the last declaration, so a
+ * message binding a used prefix to a second namespace is evaluated on the DOM as well.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class StreamingExtractor {
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private final List<XPathProperty> properties;
+
+    private final String defaultNSPrefix;
+
+    private final List<Step[]> paths;
+
+    private final int[] offsets;
+
+    private final int stateCount;
+
+    private final Set<String> prefixes = new HashSet<String>();
+
+    /**
+     * Creates a new extractor of the compiled paths.
+     */
+    private StreamingExtractor(List<XPathProperty> properties, String defaultNSPrefix, List<Step[]> paths) {
+        this.properties = properties;
+        this.defaultNSPrefix = defaultNSPrefix;
+        this.paths = paths;
+        this.offsets = new int[paths.size()];
+
+        int offset = 0;
+
+        for (int i = 0; i < paths.size(); i++) {
+            this.offsets[i] = offset;
+            offset += paths.get(i).length + 1;
+
+            for (Step step : paths.get(i)) {
+
+                if (step.prefix != null) {
+                    this.prefixes.add(step.prefix);
+                }
+            }
+        }
+        this.stateCount = offset;
+    }
+
+    /**
+     * Compiles the given extraction properties into one matcher.
+     * 
+     * @param properties
+     *            the XPath-properties to extract
+     * @param defaultNSPrefix
+     *            the prefix bound to the default namespace
+     * @return the extractor, or null if an expression is not supported for streaming
+     */
+    public static StreamingExtractor compile(List<XPathProperty> properties, String defaultNSPrefix) {
+
+        List<Step[]> paths = new ArrayList<Step[]>();
+
+        for (XPathProperty property : properties) {
+
+            if (!compile(property, null, paths)) {
+                return null;
+            }
+        }
+        return new StreamingExtractor(properties, defaultNSPrefix, paths);
+    }
+
+    /**
+     * Compiles the leaf expressions of the given property in the order they are extracted.
+     */
+    private static boolean compile(XPathProperty property, String parentXPath, List<Step[]> paths) {
+
+        if (property.getValue() == null || property.getValue().getValue() == null) {
+            return false;
+        }
+
+        String xpath = parentXPath != null ? parentXPath + property.getValue().getValue() : property.getValue()
+                .getValue();
+
+        if (property.getPropertyList().isEmpty()) {
+            Step[] path = parse(xpath);
+
+            if (path == null) {
+                return false;
+            }
+            paths.add(path);
+            return true;
+        }
+
+        for (PropertyContainer child : property.getPropertyList()) {
+
+            if (child.getProperty().getType() != PropertyType.XPATH
+                    || !compile((XPathProperty) child.getProperty(), xpath, paths)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a location path of the supported subset.
+     * 
+     * @return the steps, or null if the expression is not supported
+     */
+    private static Step[] parse(String xpath) {
+
+        List<Step> steps = new ArrayList<Step>();
+        int i = 0;
+
+        while (i < xpath.length()) {
+
+            if (xpath.charAt(i) != '/') {
+                return null;
+            }
+
+            Step step = new Step();
+            i++;
+
+            if (i < xpath.length() && xpath.charAt(i) == '/') {
+                step.descendant = true;
+                i++;
+            }
+            if (i < xpath.length() && xpath.charAt(i) == '@') {
+                step.attribute = true;
+                i++;
+            }
+
+            int start = i;
+
+            while (i < xpath.length() && xpath.charAt(i) != '/' && xpath.charAt(i) != '[') {
+                i++;
+            }
+            if (!parseNameTest(xpath.substring(start, i), step)) {
+                return null;
+            }
+
+            if (i < xpath.length() && xpath.charAt(i) == '[') {
+                int end = xpath.indexOf(']', i);
+
+                if (step.attribute || end < 0) {
+                    return null;
+                }
+                try {
+                    step.position = Integer.parseInt(xpath.substring(i + 1, end));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+                if (step.position < 1) {
+                    return null;
+                }
+                i = end + 1;
+            }
+
+            // An attribute must be the last step
+            if (!steps.isEmpty() && steps.get(steps.size() - 1).attribute) {
+                return null;
+            }
+            steps.add(step);
+        }
+        return steps.isEmpty() ? null : steps.toArray(new Step[steps.size()]);
+    }
+
+    private static boolean parseNameTest(String nameTest, Step step) {
+
+        int colon = nameTest.indexOf(':');
+        String localName = colon < 0 ? nameTest : nameTest.substring(colon + 1);
+
+        if (colon >= 0) {
+
+            if (!isNCName(nameTest.substring(0, colon))) {
+                return false;
+            }
+            step.prefix = nameTest.substring(0, colon);
+        }
+
+        if (localName.equals("*")) {
+            return !step.attribute;
+        }
+        if (!isNCName(localName)) {
+            return false;
+        }
+        step.localName = localName;
+        return true;
+    }
+
+    private static boolean isNCName(String name) {
+
+        if (name.length() == 0 || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the properties from the given message in a single pass.
+     * 
+     * @param message
+     *            the message stream
+     * @param charset
+     *            the charset declared by the transport, or null to detect it from the XML
+     *            declaration
+     * @return the extracted properties, or null if a prefix is bound too late in the message to be
+     *         matched by streaming, so that the message must be evaluated on the DOM
+     * @throws WebServiceException
+     *             thrown, if the message is no well-formed XML
+     */
+    public Result extract(InputStream message, String charset) throws WebServiceException {
+        try {
+            XMLStreamReader reader = charset != null ? inputFactory.createXMLStreamReader(message, charset)
+                    : inputFactory.createXMLStreamReader(message);
+
+            try {
+                String encoding = charset != null ? charset : reader.getCharacterEncodingScheme() != null ? reader
+                        .getCharacterEncodingScheme() : reader.getEncoding() != null ? reader.getEncoding()
+                        : DEFAULT_ENCODING;
+
+                Pass pass = new Pass(reader);
+
+                if (!pass.run()) {
+                    return null;
+                }
+
+                List<Property> result = new ArrayList<Property>();
+                int[] leaf = { 0 };
+
+                for (XPathProperty property : this.properties) {
+                    result.add(this.createProperty(property, pass.matches, leaf));
+                }
+                return new Result(result, encoding);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new WebServiceException("XML-Message invalid: could not parse input stream ("
+                    + ex.getMessage() + ")", ex);
+        }
+    }
+
+    /**
+     * Maps the matches of the leaves of the given property like
+     * {@link XPathProcessor#getValue(String, String)}.
+     */
+    private Property createProperty(XPathProperty property, List<List<Node>> matches, int[] leaf) {
+
+        if (property.getPropertyList().isEmpty()) {
+            return XPathProcessor.getPropertyList(new NodeListImpl(matches.get(leaf[0]++)), property.getName()
+                    .getValue());
+        }
+
+        PropertyList propertyList = PropertyHelper.createPropertyList(property.getName().getValue());
+
+        for (PropertyContainer child : property.getPropertyList()) {
+            PropertyHelper.add(this.createProperty((XPathProperty) child.getProperty(), matches, leaf), propertyList);
+        }
+        return propertyList;
+    }
+
+    /**
+     * The result of an extraction.
+     */
+    public static class Result {
+
+        private final List<Property> properties;
+
+        private final String encoding;
+
+        Result(List<Property> properties, String encoding) {
+            this.properties = properties;
+            this.encoding = encoding;
+        }
+
+        /**
+         * @return the extracted properties in the order of the XPath-properties
+         */
+        public List<Property> getProperties() {
+            return this.properties;
+        }
+
+        /**
+         * @return the encoding of the message
+         */
+        public String getEncoding() {
+            return this.encoding;
+        }
+    }
+
+    /**
+     * A step of a location path.
+     */
+    private static class Step {
+
+        private boolean descendant;
+
+        private boolean attribute;
+
+        /** The prefix, or null for no namespace. */
+        private String prefix;
+
+        /** The local name, or null for any element. */
+        private String localName;
+
+        /** The position among the matching siblings, or 0. */
+        private int position;
+    }
+
+    /**
+     * An element open during the pass. A state is the index of the next step of a path, offset by
+     * the first state of the path. Reached states have been matched by this element, inherited
+     * states by an ancestor followed by a descendant step.
+     */
+    private static class Frame {
+
+        private final BitSet reached;
+
+        private final BitSet inherited;
+
+        private final Element node;
+
+        private int[] counters;
+
+        Frame(BitSet reached, BitSet inherited, Element node) {
+            this.reached = reached;
+            this.inherited = inherited;
+            this.node = node;
+        }
+    }
+
+    /**
+     * The state of a single extraction.
+     */
+    private class Pass {
+
+        private final XMLStreamReader reader;
+
+        private final List<List<Node>> matches = new ArrayList<List<Node>>();
+
+        private final LinkedList<Frame> stack = new LinkedList<Frame>();
+
+        private final Map<String, String> bindings = new HashMap<String, String>();
+
+        /** The namespaces of elements tested against an unbound prefix. */
+        private final Map<String, Set<String>> unboundTests = new HashMap<String, Set<String>>();
+
+        private boolean lateBinding;
+
+        /** Whether a used prefix is bound to more than one namespace. */
+        private boolean rebound;
+
+        private Document fragments;
+
+        Pass(XMLStreamReader reader) {
+            this.reader = reader;
+
+            for (int i = 0; i < paths.size(); i++) {
+                this.matches.add(new ArrayList<Node>());
+            }
+        }
+
+        /**
+         * Runs the pass over the message.
+         * 
+         * @return false, if the result may differ from the DOM evaluation
+         */
+        boolean run() throws XMLStreamException, WebServiceException {
+
+            BitSet start = new BitSet(stateCount);
+
+            for (int offset : offsets) {
+                start.set(offset);
+            }
+            this.stack.addLast(new Frame(start, new BitSet(stateCount), null));
+
+            while (this.reader.hasNext()) {
+
+                switch (this.reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    this.startElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    this.stack.removeLast();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    Element node = this.stack.getLast().node;
+
+                    if (node != null) {
+                        node.appendChild(this.fragments.createTextNode(this.reader.getText()));
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            return !this.lateBinding && !this.rebound && this.bindings.keySet().containsAll(prefixes);
+        }
+
+        private void startElement() throws WebServiceException {
+
+            for (int i = 0; i < this.reader.getNamespaceCount(); i++) {
+                this.bind(this.reader.getNamespacePrefix(i), this.reader.getNamespaceURI(i));
+            }
+            this.bind(this.reader.getPrefix(), this.reader.getNamespaceURI());
+
+            Frame parent = this.stack.getLast();
+            String uri = emptyToNull(this.reader.getNamespaceURI());
+            String localName = this.reader.getLocalName();
+
+            BitSet active = (BitSet) parent.reached.clone();
+            active.or(parent.inherited);
+
+            BitSet reached = new BitSet(stateCount);
+            BitSet inherited = new BitSet(stateCount);
+
+            for (int state = active.nextSetBit(0); state >= 0; state = active.nextSetBit(state + 1)) {
+                int path = this.getPath(state);
+                Step[] steps = paths.get(path);
+                int index = state - offsets[path];
+
+                if (index == steps.length) {
+                    continue;
+                }
+
+                Step step = steps[index];
+
+                if (step.descendant) {
+                    inherited.set(state);
+                }
+                if (step.attribute || (!step.descendant && !parent.reached.get(state))
+                        || !this.matches(step, uri, localName)) {
+                    continue;
+                }
+                if (step.position > 0) {
+
+                    if (parent.counters == null) {
+                        parent.counters = new int[stateCount];
+                    }
+                    if (++parent.counters[state] != step.position) {
+                        continue;
+                    }
+                }
+                reached.set(state + 1);
+            }
+
+            Element node = null;
+
+            for (int path = 0; path < paths.size(); path++) {
+                Step[] steps = paths.get(path);
+                int last = offsets[path] + steps.length - 1;
+                Step step = steps[steps.length - 1];
+
+                if (step.attribute) {
+
+                    if (reached.get(last) || (step.descendant && inherited.get(last))) {
+                        Attr attribute = this.getAttribute(step);
+
+                        if (attribute != null) {
+                            this.matches.get(path).add(attribute);
+                        }
+                    }
+                } else if (reached.get(last + 1)) {
+
+                    if (node == null) {
+                        node = this.createElement(parent.node);
+                    }
+                    this.matches.get(path).add(node);
+                }
+            }
+
+            // Descendants of a matching element are part of its subtree
+            if (node == null && parent.node != null) {
+                node = this.createElement(parent.node);
+            }
+            this.stack.addLast(new Frame(reached, inherited, node));
+        }
+
+        private int getPath(int state) {
+
+            int path = offsets.length - 1;
+
+            while (offsets[path] > state) {
+                path--;
+            }
+            return path;
+        }
+
+        private void bind(String prefix, String uri) {
+
+            if (uri == null || uri.length() == 0) {
+                return;
+            }
+            if (prefix == null || prefix.length() == 0) {
+                prefix = defaultNSPrefix;
+            }
+            if (!prefixes.contains(prefix)) {
+                return;
+            }
+
+            String bound = this.bindings.get(prefix);
+
+            if (bound != null) {
+                this.rebound |= !bound.equals(uri);
+                return;
+            }
+            this.bindings.put(prefix, uri);
+
+            // An element tested before the binding would have matched on the DOM
+            Set<String> tested = this.unboundTests.get(prefix);
+
+            if (tested != null && tested.contains(uri)) {
+                this.lateBinding = true;
+            }
+        }
+
+        private boolean matches(Step step, String uri, String localName) {
+
+            if (step.localName != null && !step.localName.equals(localName)) {
+                return false;
+            }
+            if (step.prefix == null) {
+                return step.localName == null || uri == null;
+            }
+
+            String bound = this.bindings.get(step.prefix);
+
+            if (bound == null) {
+                Set<String> tested = this.unboundTests.get(step.prefix);
+
+                if (tested == null) {
+                    tested = new HashSet<String>();
+                    this.unboundTests.put(step.prefix, tested);
+                }
+                tested.add(uri);
+                return false;
+            }
+            return bound.equals(uri);
+        }
+
+        private Attr getAttribute(Step step) throws WebServiceException {
+
+            for (int i = 0; i < this.reader.getAttributeCount(); i++) {
+
+                if (this.matches(step, emptyToNull(this.reader.getAttributeNamespace(i)),
+                        this.reader.getAttributeLocalName(i))) {
+                    Attr attribute = this.getFragments().createAttributeNS(
+                            emptyToNull(this.reader.getAttributeNamespace(i)), getQualifiedName(
+                                    this.reader.getAttributePrefix(i), this.reader.getAttributeLocalName(i)));
+                    attribute.setValue(this.reader.getAttributeValue(i));
+                    return attribute;
+                }
+            }
+            return null;
+        }
+
+        private Element createElement(Element parent) throws WebServiceException {
+
+            Element element = this.getFragments().createElementNS(emptyToNull(this.reader.getNamespaceURI()),
+                    getQualifiedName(this.reader.getPrefix(), this.reader.getLocalName()));
+
+            for (int i = 0; i < this.reader.getAttributeCount(); i++) {
+                element.setAttributeNS(emptyToNull(this.reader.getAttributeNamespace(i)), getQualifiedName(
+                        this.reader.getAttributePrefix(i), this.reader.getAttributeLocalName(i)), this.reader
+                        .getAttributeValue(i));
+            }
+            if (parent != null) {
+                parent.appendChild(element);
+            }
+            return element;
+        }
+
+        private Document getFragments() throws WebServiceException {
+
+            if (this.fragments == null) {
+                this.fragments = XmlFactoryRegistry.getInstance().newDocument();
+            }
+            return this.fragments;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value != null && value.length() > 0 ? value : null;
+    }
+
+    private static String getQualifiedName(String prefix, String localName) {
+        return prefix != null && prefix.length() > 0 ? prefix + ":" + localName : localName;
+    }
+
+    /**
+     * A NodeList of the matched nodes.
+     */
+    private static class NodeListImpl implements NodeList {
+
+        private final List<Node> nodes;
+
+        NodeListImpl(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Node item(int index) {
+            return index >= 0 && index < this.nodes.size() ? this.nodes.get(index) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return this.nodes.size();
+        }
+    }
+
+}
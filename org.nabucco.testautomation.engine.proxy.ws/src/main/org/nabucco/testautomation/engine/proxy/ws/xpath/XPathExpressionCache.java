@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012 PRODYNA AG
+ *
+ * Licensed under the Eclipse Public License (EPL), Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/eclipse-1.0.php or
+ * http://www.nabucco.org/License.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nabucco.testautomation.engine.proxy.ws.xpath;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.nabucco.testautomation.engine.proxy.ws.xml.XmlFactoryRegistry;
+
+/**
+ * XPathExpressionCache
+ * <p>
+ * Size-bounded LRU cache of compiled XPath-expressions shared by all {@link XPathProcessor}s. The
+ * prefixes of an expression are resolved at compile time, so expressions are cached per
+ * expression text and the namespaces bound to the prefixes used by the expression. An expression
+ * is compiled against a context holding only these bindings, so that a cached expression does not
+ * keep the document of the caller's context. A compiled expression is not guaranteed to be
+ * thread-safe, callers evaluate it while holding its lock.
+ * 
+ * @author Steffen Schmidt, PRODYNA AG
+ */
+public final class XPathExpressionCache {
+
+    /**
+     * The maximum number of cached expressions.
+     */
+    public static final int MAX_EXPRESSIONS = 512;
+
+    private static XPathExpressionCache instance;
+
+    private final Map<Key, XPathExpression> expressions = new LinkedHashMap<Key, XPathExpression>(16, 0.75f,
+            true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Key, XPathExpression> eldest) {
+            return this.size() > MAX_EXPRESSIONS;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new cache instance.
+     */
+    private XPathExpressionCache() {
+    }
+
+    /**
+     * Gets the cache instance shared by all XPathProcessors.
+     * 
+     * @return the cache instance
+     */
+    public static synchronized XPathExpressionCache getInstance() {
+
+        if (instance == null) {
+            instance = new XPathExpressionCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the compiled expression for the given expression text and namespace context. On a cache
+     * miss the expression is compiled by the XPath of the current thread against the namespaces the
+     * given context binds to the prefixes of the expression.
+     * 
+     * @param expression
+     *            the XPath-expression
+     * @param context
+     *            the namespace context resolving the prefixes of the expression
+     * @return the compiled expression
+     * @throws XPathExpressionException
+     *             thrown, if the expression cannot be compiled
+     */
+    public XPathExpression getExpression(String expression, GenericNamespaceContext context)
+            throws XPathExpressionException {
+
+        Map<String, String> bindings = getBindings(expression, context);
+        Key key = new Key(expression, bindings);
+        XPathExpression compiled;
+
+        synchronized (this.expressions) {
+            compiled = this.expressions.get(key);
+        }
+
+        if (compiled != null) {
+            this.hits.incrementAndGet();
+            return compiled;
+        }
+
+        this.misses.incrementAndGet();
+        XPath xpath = XmlFactoryRegistry.getInstance().getXPath();
+        xpath.setNamespaceContext(createContext(bindings));
+        compiled = xpath.compile(expression);
+
+        synchronized (this.expressions) {
+            this.expressions.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Resolves the prefixes used by the given expression. Prefixes are the names preceding a
+     * single colon outside of string literals.
+     * 
+     * @param expression
+     *            the XPath-expression
+     * @param context
+     *            the namespace context, may be null
+     * @return the namespace uri per prefix, or null if the expression uses no prefix
+     */
+    private static Map<String, String> getBindings(String expression, NamespaceContext context) {
+
+        Map<String, String> bindings = null;
+        char quote = 0;
+
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                quote = c;
+                continue;
+            }
+            if (c != ':' || (i + 1 < expression.length() && expression.charAt(i + 1) == ':')
+                    || (i > 0 && expression.charAt(i - 1) == ':')) {
+                continue;
+            }
+
+            int start = i;
+
+            while (start > 0 && isNameChar(expression.charAt(start - 1))) {
+                start--;
+            }
+
+            if (start < i) {
+                String prefix = expression.substring(start, i);
+
+                if (bindings == null) {
+                    bindings = new HashMap<String, String>();
+                }
+                bindings.put(prefix, context != null ? context.getNamespaceURI(prefix) : null);
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * Creates a context holding only the given bindings, referencing neither a document nor the
+     * context of the caller.
+     * 
+     * @param bindings
+     *            the namespace uri per prefix, may be null
+     * @return the new context
+     */
+    private static GenericNamespaceContext createContext(Map<String, String> bindings) {
+
+        GenericNamespaceContext context = new GenericNamespaceContext();
+
+        if (bindings != null) {
+            for (Entry<String, String> binding : bindings.entrySet()) {
+                if (binding.getValue() != null) {
+                    context.addNamespace(binding.getValue(), binding.getKey());
+                }
+            }
+        }
+        return context;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups that compiled the expression
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of cached expressions
+     */
+    public int size() {
+        synchronized (this.expressions) {
+            return this.expressions.size();
+        }
+    }
+
+    /**
+     * Removes all cached expressions and resets the counters.
+     */
+    public void clear() {
+        synchronized (this.expressions) {
+            this.expressions.clear();
+        }
+        this.hits.set(0);
+        this.misses.set(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[size=" + this.size() + ", hits=" + this.getHits() + ", misses=" + this.getMisses() + "]";
+    }
+
+    /**
+     * Key of a compiled expression.
+     */
+    private static class Key {
+
+        private final String expression;
+
+        private final Map<String, String> bindings;
+
+        Key(String expression, Map<String, String> bindings) {
+            this.expression = expression;
+            this.bindings = bindings;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.expression.hashCode() + (this.bindings != null ? this.bindings.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return this.expression.equals(other.expression)
+                    && (this.bindings == null ? other.bindings == null : this.bindings.equals(other.bindings));
+        }
+    }
+
+}
@@ -19,12 +19,16 @@ package org.nabucco.testautomation.engine.proxy.ws.xpath;
 import java.io.File;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.xml.xpath.XPath;
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.nabucco.testautomation.engine.base.exception.NBCTestConfigurationException;
 import org.nabucco.testautomation.engine.base.xml.XMLToolkit;
@@ -39,6 +43,11 @@ import org.w3c.dom.NodeList;
 
 /**
  * XPathProcessor
+ * <p>
+ * By default all namespaces of a document are collected when it is set. With lazy namespace
+ * resolution enabled, a prefix is resolved from the document only when an expression uses it. The
+ * prefixes resolved for a request template set by {@link #setTemplate(String)} are cached, so the
+ * transformed messages of the same template need no search. Received messages are never cached.
  * 
  * @author Steffen Schmidt, PRODYNA AG
  * 
@@ -49,16 +58,58 @@ public class XPathProcessor {
 
     private static final String COUNT = "count(";
 
-    private final XPath xpath = XPathFactory.newInstance().newXPath();
+    /**
+     * The maximum number of message templates with cached prefixes.
+     */
+    public static final int MAX_TEMPLATES = 64;
+
+    /**
+     * The maximum length of a message caching its prefixes as template.
+     */
+    private static final int MAX_TEMPLATE_LENGTH = 64 * 1024;
+
+    private static final Map<String, Map<String, String>> templates = new LinkedHashMap<String, Map<String, String>>(
+            16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, Map<String, String>> eldest) {
+            return this.size() > MAX_TEMPLATES;
+        }
+    };
+
+    private static volatile boolean lazyNamespaces;
 
     private Document document;
 
     private GenericNamespaceContext context;
+
+    private final XPathExpressionCache expressionCache = XPathExpressionCache.getInstance();
     
     public XPathProcessor(String defaultNSPrefix) {
         this.defaultNSPrefix = defaultNSPrefix;
     }
 
+    /**
+     * Enables or disables the lazy namespace resolution of all processors.
+     * 
+     * @param lazy
+     *            true to resolve prefixes on demand, false to collect all namespaces of a document
+     */
+    public static void setLazyNamespaces(boolean lazy) {
+        lazyNamespaces = lazy;
+    }
+
+    /**
+     * Removes the cached prefixes of all message templates.
+     */
+    public static void clearTemplates() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
     /**
      * Set the XML-message to the processor.
      * 
@@ -68,10 +119,27 @@ public class XPathProcessor {
      *             thrown, if the XML message cannot be parsed
      */
     public void setDocument(String xml) throws WebServiceException {
+        document = parse(xml);
+        context = createContext(null);
+    }
+
+    /**
+     * Set the XML-message template of a request to the processor. The prefixes resolved for the
+     * template are cached with lazy namespace resolution.
+     * 
+     * @param template
+     *            the XML message template as string
+     * @throws WebServiceException
+     *             thrown, if the XML message cannot be parsed
+     */
+    public void setTemplate(String template) throws WebServiceException {
+        document = parse(template);
+        context = createContext(template.length() <= MAX_TEMPLATE_LENGTH ? getTemplateBindings(template) : null);
+    }
+
+    private static Document parse(String xml) throws WebServiceException {
         try {
-            document = XMLToolkit.loadXMLDocument(xml);
-            context = new GenericNamespaceContext();
-            addNamespaceToContext(document.getFirstChild(), context);
+            return XMLToolkit.loadXMLDocument(xml);
         } catch (NBCTestConfigurationException ex) {
             throw new WebServiceException("XML-Message invalid: could not parse input string to org.w3c.Document ("
                     + ex.getMessage() + ")", ex);
@@ -89,8 +157,7 @@ public class XPathProcessor {
     public void setDocument(File xmlFile) throws WebServiceException {
         try {
             document = XMLToolkit.loadXMLDocument(xmlFile);
-            context = new GenericNamespaceContext();
-            addNamespaceToContext(document.getFirstChild(), context);
+            context = createContext(null);
         } catch (NBCTestConfigurationException ex) {
             throw new WebServiceException("Could not load input file " + xmlFile.getName(), ex);
         }
@@ -104,8 +171,7 @@ public class XPathProcessor {
      */
     public void setDocument(Document document) {
         this.document = document;
-        context = new GenericNamespaceContext();
-        addNamespaceToContext(document.getFirstChild(), context);
+        context = createContext(null);
     }
 
     /**
@@ -145,8 +211,7 @@ public class XPathProcessor {
      */
     public void setValue(String xpathExpression, String value) throws WebServiceException {
         try {
-            xpath.setNamespaceContext(context);
-            Node result = (Node) xpath.evaluate(xpathExpression, document, XPathConstants.NODE);
+            Node result = (Node) evaluate(xpathExpression, XPathConstants.NODE);
 
             if (result != null) {
                 result.setTextContent(value);
@@ -156,6 +221,23 @@ public class XPathProcessor {
         }
     }
 
+    /**
+     * Gets the first node specified by the given XPath-expression.
+     * 
+     * @param xpathExpression
+     *            the XPath-expression defining the target element or attribute
+     * @return the node or null, if the expression matches no node
+     * @throws WebServiceException
+     *             thrown, if the XPath-expression cannot be processed
+     */
+    public Node getNode(String xpathExpression) throws WebServiceException {
+        try {
+            return (Node) evaluate(xpathExpression, XPathConstants.NODE);
+        } catch (XPathExpressionException ex) {
+            throw new WebServiceException("Could not process XPath-expression: " + xpathExpression, ex);
+        }
+    }
+
     /**
      * Gets the value from an element or attribute specified by the given XPath-expression as
      * string.
@@ -166,8 +248,7 @@ public class XPathProcessor {
      */
     public String getSimpleValue(String xpathExpression) {
         try {
-            xpath.setNamespaceContext(context);
-            return xpath.evaluate(xpathExpression, document);
+            return (String) evaluate(xpathExpression, XPathConstants.STRING);
         } catch (XPathExpressionException ex) {
             ex.printStackTrace();
         }
@@ -184,8 +265,7 @@ public class XPathProcessor {
      */
     public Property getValue(String xpathExpression, String id) {
         try {
-            xpath.setNamespaceContext(context);
-            NodeList nodeList = (NodeList) xpath.evaluate(xpathExpression, document, XPathConstants.NODESET);
+            NodeList nodeList = (NodeList) evaluate(xpathExpression, XPathConstants.NODESET);
             return getPropertyList(nodeList, id);
         } catch (XPathExpressionException ex) {
             String value = getSimpleValue(xpathExpression);
@@ -207,8 +287,7 @@ public class XPathProcessor {
             xpathExpression = COUNT + xpathExpression + ")";
         }
         try {
-            xpath.setNamespaceContext(context);
-            String count = xpath.evaluate(xpathExpression, document);
+            String count = (String) evaluate(xpathExpression, XPathConstants.STRING);
             if (count != null && !count.equals("")) {
                 return Integer.parseInt(count);
             }
@@ -226,8 +305,7 @@ public class XPathProcessor {
      */
     public Element getFirstElement(String xpathExpression) throws XPathExpressionException {
 
-        xpath.setNamespaceContext(context);
-        NodeList nodeList = (NodeList) xpath.evaluate(xpathExpression, document, XPathConstants.NODESET);
+        NodeList nodeList = (NodeList) evaluate(xpathExpression, XPathConstants.NODESET);
 
         if (nodeList != null) {
 
@@ -250,8 +328,7 @@ public class XPathProcessor {
      */
     public List<Element> getElements(String xpathExpression) throws XPathExpressionException {
 
-        xpath.setNamespaceContext(context);
-        NodeList nodeList = (NodeList) xpath.evaluate(xpathExpression, document, XPathConstants.NODESET);
+        NodeList nodeList = (NodeList) evaluate(xpathExpression, XPathConstants.NODESET);
         List<Element> elementList = new ArrayList<Element>();
 
         if (nodeList != null) {
@@ -267,6 +344,69 @@ public class XPathProcessor {
         return elementList;
     }
 
+    /**
+     * Evaluates the given XPath-expression on the document set to this processor. The compiled
+     * expression is taken from the {@link XPathExpressionCache}.
+     * 
+     * @param xpathExpression
+     *            the XPath-expression
+     * @param returnType
+     *            the expected return type as defined by {@link XPathConstants}
+     * @return the result of the evaluation
+     * @throws XPathExpressionException
+     *             thrown, if the expression cannot be compiled or evaluated
+     */
+    private Object evaluate(String xpathExpression, QName returnType) throws XPathExpressionException {
+
+        XPathExpression expression = expressionCache.getExpression(xpathExpression, context);
+
+        synchronized (expression) {
+            return expression.evaluate(document, returnType);
+        }
+    }
+
+    /**
+     * Creates the namespace context of the current document.
+     * 
+     * @param templateBindings
+     *            the cached prefixes of the message template, or null
+     * @return the namespace context
+     */
+    private GenericNamespaceContext createContext(Map<String, String> templateBindings) {
+
+        if (lazyNamespaces) {
+            return new GenericNamespaceContext(document, defaultNSPrefix, templateBindings);
+        }
+
+        GenericNamespaceContext context = new GenericNamespaceContext();
+        addNamespaceToContext(document.getFirstChild(), context);
+        return context;
+    }
+
+    /**
+     * Gets the prefixes cached for the given message template.
+     * 
+     * @param template
+     *            the XML message template
+     * @return the prefixes, or null if lazy namespace resolution is disabled
+     */
+    private static Map<String, String> getTemplateBindings(String template) {
+
+        if (!lazyNamespaces) {
+            return null;
+        }
+
+        synchronized (templates) {
+            Map<String, String> bindings = templates.get(template);
+
+            if (bindings == null) {
+                bindings = new ConcurrentHashMap<String, String>();
+                templates.put(template, bindings);
+            }
+            return bindings;
+        }
+    }
+
     /**
      * This operation iterates through this node and all of its subnodes in order to find all
      * defined namespaces and adds them to the given namespace context.
@@ -312,7 +452,7 @@ public class XPathProcessor {
      *            the id of the returned property
      * @return a PropertyList or TextProperty with the given id
      */
-    private Property getPropertyList(NodeList nodeList, String id) {
+    static Property getPropertyList(NodeList nodeList, String id) {
 
         if (nodeList == null || nodeList.getLength() == 0) {
             return null;
@@ -361,7 +501,7 @@ public class XPathProcessor {
      *            the node to check
      * @return true, if the node has child element, otherwise false
      */
-    private boolean hasChildren(Node node) {
+    private static boolean hasChildren(Node node) {
 
         if (node == null || !node.hasChildNodes()) {
             return false;